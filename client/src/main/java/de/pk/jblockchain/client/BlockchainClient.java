@@ -13,6 +13,7 @@ import java.security.NoSuchProviderException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -29,6 +30,7 @@ import org.apache.commons.cli.OptionGroup;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.codec.binary.Base64;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -38,6 +40,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import de.pk.jblockchain.common.SignatureUtils;
 import de.pk.jblockchain.common.domain.Address;
 import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockHeader;
+import de.pk.jblockchain.common.domain.MerkleProof;
 import de.pk.jblockchain.common.domain.Transaction;
 
 /**
@@ -57,6 +61,12 @@ public class BlockchainClient {
 
 	private static String storePath;
 
+	private static int miningDifficulty;
+
+	private static long blockInterval;
+
+	private static int retargetWindow;
+
 	public static void main(String args[]) throws Exception {
 		Properties props = new Properties();
 		// System.out.println(BlockchainClient.class.getResource("/."));
@@ -65,6 +75,9 @@ public class BlockchainClient {
 		serverPort = props.getProperty("server.port");
 		sslEnabled = Boolean.valueOf(props.getProperty("server.ssl.enabled"));
 		storePath = props.getProperty("storage.path");
+		miningDifficulty = Integer.parseInt(props.getProperty("blockchain.mining.difficulty"));
+		blockInterval = Long.parseLong(props.getProperty("blockchain.mining.blockInterval"));
+		retargetWindow = Integer.parseInt(props.getProperty("blockchain.mining.retargetWindow"));
 
 		CommandLineParser parser = new DefaultParser();
 		Options options = getOptions();
@@ -223,6 +236,12 @@ public class BlockchainClient {
 				throw new ParseException("city is required");
 			}
 			showBirthDeathRate(city);
+		} else if (line.hasOption("verify-transaction")) {
+			String hash = line.getOptionValue("hash");
+			if (hash == null) {
+				throw new ParseException("hash is required");
+			}
+			verifyTransaction(Base64.decodeBase64(hash));
 		}
 
 		// TODO: extend for additional commands
@@ -248,6 +267,7 @@ public class BlockchainClient {
 		actions.addOption(new Option("scz", "show-citizens", false, "show all citizen of a city"));
 		actions.addOption(new Option("scd", "show-citizen-details", false, "show details of a citizen"));
 		actions.addOption(new Option("sbd", "show-birth-death-rate", false, "show birth death rate of a city"));
+		actions.addOption(new Option("vt", "verify-transaction", false, "verify a transaction is confirmed"));
 		actions.setRequired(true);
 
 		Options options = new Options();
@@ -274,6 +294,8 @@ public class BlockchainClient {
 		options.addOption(Option.builder("cty").longOpt("city").hasArg().argName("city").desc("").build());
 		options.addOption(Option.builder("str").longOpt("street").hasArg().argName("street").desc("").build());
 		options.addOption(Option.builder("hnr").longOpt("houseNr").hasArg().argName("houseNr").desc("").build());
+		options.addOption(
+				Option.builder("tx").longOpt("hash").hasArg().argName("transaction hash (Base64)").desc("").build());
 		return options;
 	}
 
@@ -734,6 +756,45 @@ public class BlockchainClient {
 		}
 	}
 
+	/**
+	 * verifyTransaction
+	 *
+	 * @description check a transaction is confirmed by downloading its
+	 *              MerkleProof and the block headers instead of the whole
+	 *              blockchain
+	 * @param hash
+	 * @throws Exception
+	 */
+	private static void verifyTransaction(byte[] hash) throws Exception {
+		String protocol = sslEnabled ? "https" : "http";
+		String blockUrl = protocol + "://" + serverAddr + ":" + serverPort + "/block";
+		RestTemplate restTemplate = new RestTemplate();
+		MerkleProof proof;
+		try {
+			proof = restTemplate.getForObject(blockUrl + "/proof?hash={hash}", MerkleProof.class,
+					Base64.encodeBase64String(hash));
+		} catch (HttpClientErrorException e) {
+			System.out.println("Transaction is not confirmed by any block");
+			return;
+		}
+		BlockHeader[] headers = restTemplate.getForObject(blockUrl + "/headers/from/0", BlockHeader[].class);
+
+		// every header has to reference its predecessor and carry valid proof of work
+		int validHeight = BlockHeader.verifyChain(Arrays.asList(headers), miningDifficulty, blockInterval,
+				retargetWindow);
+		if (validHeight < headers.length) {
+			System.out.println("Invalid chain of block headers at height " + validHeight);
+			return;
+		}
+		if (proof.getHeight() >= headers.length || !proof.verify(headers[(int) proof.getHeight()])) {
+			System.out.println("Invalid proof for transaction " + Base64.encodeBase64String(hash));
+			return;
+		}
+		System.out.println("Transaction confirmed by block " + Base64.encodeBase64String(proof.getBlockHash())
+				+ " at height " + proof.getHeight() + " with " + (headers.length - proof.getHeight())
+				+ " confirmations");
+	}
+
 	private static List<Block> getBlockchain() throws Exception {
 		String protocol = sslEnabled ? "https" : "http";
 		URL url = new URL(protocol + "://" + serverAddr + ":" + serverPort + "/block");
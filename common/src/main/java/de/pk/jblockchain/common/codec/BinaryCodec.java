@@ -0,0 +1,335 @@
+package de.pk.jblockchain.common.codec;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+import de.pk.jblockchain.common.domain.Address;
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockHeader;
+import de.pk.jblockchain.common.domain.Transaction;
+
+/**
+ * Compact binary format for Blocks, Transactions and Addresses as
+ * alternative to JSON. Hashes, keys and signatures are stored as raw bytes
+ * instead of Base64 text. Every encoded value starts with the format version
+ * and a tag telling its type, followed by the length-prefixed fields in a
+ * fixed order. Collections are tagged with TAG_LIST, the element tag and the
+ * number of elements.
+ */
+public abstract class BinaryCodec {
+
+	/**
+	 * Version of the format, increased on every incompatible change
+	 */
+	public static final byte VERSION = 3;
+
+	/**
+	 * Oldest version which can still be decoded. Version 1 Blocks have no
+	 * hash version and are read as HashEngine version 0, Blocks before
+	 * version 3 have no compact target.
+	 */
+	public static final byte MIN_VERSION = 1;
+
+	/**
+	 * Content type used to negotiate the format over HTTP
+	 */
+	public static final String MEDIA_TYPE = "application/x-jblockchain";
+
+	static final byte TAG_NONE = 0;
+	static final byte TAG_BLOCK = 1;
+	static final byte TAG_TRANSACTION = 2;
+	static final byte TAG_ADDRESS = 3;
+	static final byte TAG_LIST = 0x10;
+
+	/**
+	 * Can values of this type be encoded and decoded? Collections are
+	 * supported as well if their elements are, but their element type is not
+	 * known from the class alone.
+	 *
+	 * @param type
+	 *            Block, Transaction or Address or an array of them
+	 * @return true if the type is supported
+	 */
+	public static boolean supports(Class<?> type) {
+		if (type.isArray()) {
+			return tagOf(type.getComponentType()) != TAG_NONE;
+		}
+		return tagOf(type) != TAG_NONE;
+	}
+
+	/**
+	 * Encode a single value or a Collection or array of values
+	 *
+	 * @param value
+	 *            Block, Transaction, Address or Collection/array of them
+	 * @return encoded bytes
+	 */
+	public static byte[] encode(Object value) {
+		BinaryOutput out = new BinaryOutput();
+		out.writeByte(VERSION);
+		if (value instanceof Object[]) {
+			writeList(out, value.getClass().getComponentType(), Arrays.asList((Object[]) value));
+		} else if (value instanceof Collection) {
+			Collection<?> values = (Collection<?>) value;
+			writeList(out, values.isEmpty() ? null : values.iterator().next().getClass(), values);
+		} else {
+			byte tag = tagOf(value.getClass());
+			if (tag == TAG_NONE) {
+				throw new IllegalArgumentException("Unsupported type " + value.getClass().getName());
+			}
+			out.writeByte(tag);
+			writeValue(out, tag, value);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decode bytes written by encode(Object)
+	 *
+	 * @param data
+	 *            encoded bytes
+	 * @param type
+	 *            expected type, arrays and Collections of the domain classes
+	 *            are decoded from a list
+	 * @return decoded value
+	 * @throws IOException
+	 *             if the data is corrupt, of another version or another type
+	 */
+	public static <T> T decode(byte[] data, Class<T> type) throws IOException {
+		return decode(new BinaryInput(data), type);
+	}
+
+	/**
+	 * Decode bytes written by encode(Object) from a slice of an array
+	 */
+	public static <T> T decode(byte[] data, int offset, int length, Class<T> type) throws IOException {
+		return decode(new BinaryInput(data, offset, length), type);
+	}
+
+	/**
+	 * Read only the header of a Block encoded by encode(Object) and skip its
+	 * Transactions
+	 *
+	 * @param data
+	 *            array holding the encoded Block
+	 * @param offset
+	 *            start of the encoded Block
+	 * @param length
+	 *            number of bytes of the encoded Block
+	 * @return header of the Block
+	 * @throws IOException
+	 *             if the data is corrupt, of another version or no Block
+	 */
+	public static BlockHeader decodeHeader(byte[] data, int offset, int length) throws IOException {
+		BinaryInput in = new BinaryInput(data, offset, length);
+		readFormatVersion(in);
+		byte tag = in.readByte();
+		if (tag != TAG_BLOCK) {
+			throw new IOException("Cannot decode tag " + tag + " as block header");
+		}
+		BlockHeader header = new BlockHeader();
+		header.setHash(in.readBytes());
+		header.setPreviousBlockHash(in.readBytes());
+		header.setMerkleRoot(in.readBytes());
+		header.setTries(in.readLong());
+		header.setTimestamp(in.readLong());
+		header.setVersion(in.getFormatVersion() >= 2 ? in.readVarInt() : 0);
+		header.setBits(in.getFormatVersion() >= 3 ? in.readVarInt() : 0);
+		header.setTransactionCount(Math.max(in.readVarInt() - 1, 0));
+		return header;
+	}
+
+	/**
+	 * Write the fields of a Block without version and tag
+	 */
+	public static void writeBlock(BinaryOutput out, Block block) {
+		out.writeBytes(block.getHash());
+		out.writeBytes(block.getPreviousBlockHash());
+		out.writeBytes(block.getMerkleRoot());
+		out.writeLong(block.getTries());
+		out.writeLong(block.getTimestamp());
+		out.writeVarInt(block.getVersion());
+		out.writeVarInt(block.getBits());
+		List<Transaction> transactions = block.getTransactions();
+		if (transactions == null) {
+			out.writeVarInt(0);
+		} else {
+			out.writeVarInt(transactions.size() + 1);
+			transactions.forEach(transaction -> writeTransaction(out, transaction));
+		}
+	}
+
+	/**
+	 * Read the fields of a Block written by writeBlock
+	 */
+	public static Block readBlock(BinaryInput in) throws IOException {
+		Block block = new Block();
+		block.setHash(in.readBytes());
+		block.setPreviousBlockHash(in.readBytes());
+		block.setMerkleRoot(in.readBytes());
+		block.setTries(in.readLong());
+		block.setTimestamp(in.readLong());
+		block.setVersion(in.getFormatVersion() >= 2 ? in.readVarInt() : 0);
+		block.setBits(in.getFormatVersion() >= 3 ? in.readVarInt() : 0);
+		// count + 1, 0 stands for no list at all
+		int count = in.readVarInt() - 1;
+		if (count > in.remaining()) {
+			throw new IOException("Invalid transaction count " + count);
+		}
+		if (count >= 0) {
+			List<Transaction> transactions = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				transactions.add(readTransaction(in));
+			}
+			block.setTransactions(transactions);
+		}
+		return block;
+	}
+
+	/**
+	 * Write the fields of a Transaction without version and tag
+	 */
+	public static void writeTransaction(BinaryOutput out, Transaction transaction) {
+		out.writeBytes(transaction.getHash());
+		out.writeString(transaction.getText());
+		out.writeBytes(transaction.getSenderHash());
+		out.writeBytes(transaction.getSignature());
+		out.writeLong(transaction.getTimestamp());
+	}
+
+	/**
+	 * Read the fields of a Transaction written by writeTransaction
+	 */
+	public static Transaction readTransaction(BinaryInput in) throws IOException {
+		Transaction transaction = new Transaction();
+		transaction.setHash(in.readBytes());
+		transaction.setText(in.readString());
+		transaction.setSenderHash(in.readBytes());
+		transaction.setSignature(in.readBytes());
+		transaction.setTimestamp(in.readLong());
+		return transaction;
+	}
+
+	/**
+	 * Write the fields of an Address without version and tag
+	 */
+	public static void writeAddress(BinaryOutput out, Address address) {
+		out.writeBytes(address.getHash());
+		out.writeBytes(address.getPublicKey());
+	}
+
+	/**
+	 * Read the fields of an Address written by writeAddress
+	 */
+	public static Address readAddress(BinaryInput in) throws IOException {
+		Address address = new Address();
+		address.setHash(in.readBytes());
+		address.setPublicKey(in.readBytes());
+		return address;
+	}
+
+	private static void readFormatVersion(BinaryInput in) throws IOException {
+		byte version = in.readByte();
+		if (version < MIN_VERSION || version > VERSION) {
+			throw new IOException("Unsupported binary format version " + version);
+		}
+		in.setFormatVersion(version);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T decode(BinaryInput in, Class<T> type) throws IOException {
+		readFormatVersion(in);
+		byte tag = in.readByte();
+		Object value;
+		if (tag == TAG_LIST) {
+			List<Object> values = readList(in, type.isArray() ? tagOf(type.getComponentType()) : TAG_NONE);
+			if (type.isArray()) {
+				value = values.toArray((Object[]) Array.newInstance(type.getComponentType(), values.size()));
+			} else if (type.isAssignableFrom(ArrayList.class)) {
+				value = values;
+			} else if (type.isAssignableFrom(HashSet.class)) {
+				value = new HashSet<>(values);
+			} else {
+				throw new IOException("Cannot decode a list as " + type.getName());
+			}
+		} else {
+			if (tag != tagOf(type)) {
+				throw new IOException("Cannot decode tag " + tag + " as " + type.getName());
+			}
+			value = readValue(in, tag);
+		}
+		if (in.remaining() > 0) {
+			throw new IOException(in.remaining() + " unexpected bytes after binary value");
+		}
+		return (T) value;
+	}
+
+	private static void writeList(BinaryOutput out, Class<?> elementType, Collection<?> values) {
+		byte tag = elementType != null ? tagOf(elementType) : TAG_NONE;
+		if (tag == TAG_NONE && !values.isEmpty()) {
+			throw new IllegalArgumentException("Unsupported element type " + elementType.getName());
+		}
+		out.writeByte(TAG_LIST);
+		out.writeByte(tag);
+		out.writeVarInt(values.size());
+		values.forEach(value -> writeValue(out, tag, value));
+	}
+
+	private static List<Object> readList(BinaryInput in, byte expectedTag) throws IOException {
+		byte tag = in.readByte();
+		int count = in.readCount();
+		if (count > 0 && (tag == TAG_NONE || (expectedTag != TAG_NONE && tag != expectedTag))) {
+			throw new IOException("Unexpected list element tag " + tag);
+		}
+		List<Object> values = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			values.add(readValue(in, tag));
+		}
+		return values;
+	}
+
+	private static void writeValue(BinaryOutput out, byte tag, Object value) {
+		switch (tag) {
+		case TAG_BLOCK:
+			writeBlock(out, (Block) value);
+			break;
+		case TAG_TRANSACTION:
+			writeTransaction(out, (Transaction) value);
+			break;
+		case TAG_ADDRESS:
+			writeAddress(out, (Address) value);
+			break;
+		default:
+			throw new IllegalArgumentException("Unsupported tag " + tag);
+		}
+	}
+
+	private static Object readValue(BinaryInput in, byte tag) throws IOException {
+		switch (tag) {
+		case TAG_BLOCK:
+			return readBlock(in);
+		case TAG_TRANSACTION:
+			return readTransaction(in);
+		case TAG_ADDRESS:
+			return readAddress(in);
+		default:
+			throw new IOException("Unknown tag " + tag);
+		}
+	}
+
+	private static byte tagOf(Class<?> type) {
+		if (type == Block.class) {
+			return TAG_BLOCK;
+		} else if (type == Transaction.class) {
+			return TAG_TRANSACTION;
+		} else if (type == Address.class) {
+			return TAG_ADDRESS;
+		}
+		return TAG_NONE;
+	}
+}
@@ -0,0 +1,120 @@
+package de.pk.jblockchain.common.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader for data written by BinaryOutput. Every length is checked against
+ * the remaining input, so corrupt data fails with an IOException instead of
+ * huge allocations.
+ */
+public final class BinaryInput {
+
+	private final byte[] buffer;
+	private final int limit;
+	private int position;
+	private byte formatVersion = BinaryCodec.VERSION;
+
+	public BinaryInput(byte[] buffer) {
+		this(buffer, 0, buffer.length);
+	}
+
+	public BinaryInput(byte[] buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+
+	/**
+	 * @return format version of the data, read by BinaryCodec from its first
+	 *         byte
+	 */
+	public byte getFormatVersion() {
+		return formatVersion;
+	}
+
+	public void setFormatVersion(byte formatVersion) {
+		this.formatVersion = formatVersion;
+	}
+
+	public byte readByte() throws IOException {
+		require(1);
+		return buffer[position++];
+	}
+
+	public int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = readByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+
+	public long readLong() throws IOException {
+		require(8);
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (buffer[position++] & 0xff);
+		}
+		return value;
+	}
+
+	/**
+	 * Read a length-prefixed byte array
+	 *
+	 * @return array or null
+	 * @throws IOException
+	 */
+	public byte[] readBytes() throws IOException {
+		int length = readVarInt() - 1;
+		if (length < 0) {
+			return null;
+		}
+		require(length);
+		byte[] bytes = new byte[length];
+		System.arraycopy(buffer, position, bytes, 0, length);
+		position += length;
+		return bytes;
+	}
+
+	/**
+	 * Read a length-prefixed UTF-8 string
+	 *
+	 * @return string or null
+	 * @throws IOException
+	 */
+	public String readString() throws IOException {
+		byte[] bytes = readBytes();
+		return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+	}
+
+	/**
+	 * Read a count of following elements, which each take at least one byte
+	 *
+	 * @return count
+	 * @throws IOException
+	 *             if the input cannot hold that many elements
+	 */
+	public int readCount() throws IOException {
+		int count = readVarInt();
+		if (count < 0 || count > remaining()) {
+			throw new IOException("Invalid element count " + count);
+		}
+		return count;
+	}
+
+	public int remaining() {
+		return limit - position;
+	}
+
+	private void require(int length) throws IOException {
+		if (length > limit - position) {
+			throw new EOFException("Unexpected end of binary data");
+		}
+	}
+}
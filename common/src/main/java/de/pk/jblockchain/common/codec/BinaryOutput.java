@@ -0,0 +1,93 @@
+package de.pk.jblockchain.common.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer for the binary format. Lengths and counts are written
+ * as unsigned variable-length integers (7 bits per byte), byte arrays and
+ * strings are prefixed with their length + 1, so 0 encodes null.
+ */
+public final class BinaryOutput {
+
+	private byte[] buffer;
+	private int size;
+
+	public BinaryOutput() {
+		this(256);
+	}
+
+	public BinaryOutput(int initialCapacity) {
+		buffer = new byte[Math.max(initialCapacity, 16)];
+	}
+
+	public BinaryOutput writeByte(int value) {
+		ensureCapacity(1);
+		buffer[size++] = (byte) value;
+		return this;
+	}
+
+	public BinaryOutput writeVarInt(int value) {
+		ensureCapacity(5);
+		while ((value & ~0x7f) != 0) {
+			buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		buffer[size++] = (byte) value;
+		return this;
+	}
+
+	public BinaryOutput writeLong(long value) {
+		ensureCapacity(8);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			buffer[size++] = (byte) (value >>> shift);
+		}
+		return this;
+	}
+
+	/**
+	 * Write a length-prefixed byte array
+	 *
+	 * @param bytes
+	 *            array to write, may be null
+	 * @return this
+	 */
+	public BinaryOutput writeBytes(byte[] bytes) {
+		if (bytes == null) {
+			return writeVarInt(0);
+		}
+		writeVarInt(bytes.length + 1);
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, size, bytes.length);
+		size += bytes.length;
+		return this;
+	}
+
+	/**
+	 * Write a length-prefixed UTF-8 string
+	 *
+	 * @param value
+	 *            string to write, may be null
+	 * @return this
+	 */
+	public BinaryOutput writeString(String value) {
+		return writeBytes(value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return copy of all bytes written so far
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, size);
+	}
+
+	private void ensureCapacity(int additional) {
+		if (size + additional > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+		}
+	}
+}
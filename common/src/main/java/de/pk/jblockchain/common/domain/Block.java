@@ -1,18 +1,13 @@
 package de.pk.jblockchain.common.domain;
 
-import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Properties;
 import java.util.Queue;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.ArrayUtils;
-
-import com.google.common.primitives.Longs;
-import com.lambdaworks.crypto.SCrypt;
+import de.pk.jblockchain.common.hash.HashEngine;
 
 public class Block {
 
@@ -48,47 +43,33 @@ public class Block {
 	private long timestamp;
 
 	/**
-	 * Parameters for SCrypt hash algorithm
+	 * Version of the HashEngine used for the hash and the Merkle root, 0 for
+	 * Blocks mined before Blocks carried a version
 	 */
-	private int cpuCostParam;
-	private int memoryCostParam;
-	private int parallelizationParam;
-	private int dkLen;
-	private byte[] salt;
+	private int version;
+
+	/**
+	 * Compact proof of work target of HashEngine versions with target, see
+	 * Target, 0 for other versions
+	 */
+	private int bits;
 
 	public Block() {
-		Properties props = new Properties();
-		// System.out.println("Resource path: " +
-		// Block.class.getResource("/."));
-		try {
-			props.load(Block.class.getResourceAsStream("/application.properties"));
-			this.cpuCostParam = Integer.valueOf(props.getProperty("hashing.scrypt.cpuCostParam"));
-			this.memoryCostParam = Integer.valueOf(props.getProperty("hashing.scrypt.memoryCostParam"));
-			this.parallelizationParam = Integer.valueOf(props.getProperty("hashing.scrypt.parallelizationParam"));
-			this.dkLen = Integer.valueOf(props.getProperty("hashing.scrypt.dkLen"));
-			/*
-			 * System.out.println("cpuCostParam: " + this.cpuCostParam);
-			 * System.out.println("memoryCostParam: " + this.memoryCostParam);
-			 * System.out.println("parallelizationParam: " +
-			 * this.parallelizationParam); System.out.println("dkLen: " +
-			 * this.dkLen); System.out.println("salt: " +
-			 * props.getProperty("hashing.scrypt.salt"));
-			 */
-			String[] saltArr = props.getProperty("hashing.scrypt.salt").split(",");
-			this.salt = new byte[16];
-			int i = 0;
-			for (String saltByte : saltArr) {
-				this.salt[i] = Byte.valueOf(saltByte.trim());
-				i++;
-			}
-		} catch (IOException e) {
-			System.err.println("Error at reading properties file");
-			e.printStackTrace();
-		}
 	}
 
 	public Block(byte[] previousBlockHash, List<Transaction> transactions, long tries) throws GeneralSecurityException {
-		this();
+		this(previousBlockHash, transactions, tries, HashEngine.getDefaultVersion());
+	}
+
+	public Block(byte[] previousBlockHash, List<Transaction> transactions, long tries, int version)
+			throws GeneralSecurityException {
+		this(previousBlockHash, transactions, tries, version, 0);
+	}
+
+	public Block(byte[] previousBlockHash, List<Transaction> transactions, long tries, int version, int bits)
+			throws GeneralSecurityException {
+		this.version = version;
+		this.bits = bits;
 		this.previousBlockHash = previousBlockHash;
 		this.transactions = transactions;
 		this.tries = tries;
@@ -145,43 +126,47 @@ public class Block {
 		this.timestamp = timestamp;
 	}
 
+	public int getVersion() {
+		return version;
+	}
+
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
+	public int getBits() {
+		return bits;
+	}
+
+	public void setBits(int bits) {
+		this.bits = bits;
+	}
+
 	/**
 	 * Calculates the hash using relevant fields of this type
 	 *
-	 * @return SCrypt-hash as raw bytes
+	 * @return proof of work hash of the HashEngine version as raw bytes
 	 * @throws GeneralSecurityException
 	 */
 	public byte[] calculateHash() throws GeneralSecurityException {
-		byte[] hashableData = ArrayUtils.addAll(previousBlockHash, merkleRoot);
-		hashableData = ArrayUtils.addAll(hashableData, Longs.toByteArray(tries));
-		hashableData = ArrayUtils.addAll(hashableData, Longs.toByteArray(timestamp));
-		// byte[] salt = new byte[16];
-		// SecureRandom.getInstance("SHA1PRNG").nextBytes(salt);
-
-		/*
-		 * String hashedPaddedData = StringUtils.leftPad(SCrypt
-		 * .scrypt(hashableData, salt, cpuCostParam, memoryCostParam,
-		 * parallelizationParam, dkLen).toString(), dkLen, "0");
-		 */
-		return SCrypt.scrypt(hashableData, salt, cpuCostParam, memoryCostParam, parallelizationParam, dkLen);
+		HashEngine engine = HashEngine.forVersion(version);
+		return engine.hashHeader(engine.header(previousBlockHash, merkleRoot, tries, timestamp, bits));
 	}
 
 	/**
 	 * Calculates the Hash of all transactions as hash tree.
 	 * https://en.wikipedia.org/wiki/Merkle_tree
 	 *
-	 * @return SCrypt hash as raw bytes
+	 * @return Merkle hash of the HashEngine version as raw bytes
 	 * @throws GeneralSecurityException
 	 */
 	public byte[] calculateMerkleRoot() throws GeneralSecurityException {
+		HashEngine engine = HashEngine.forVersion(version);
 		Queue<byte[]> hashQueue = new LinkedList<>(
 				transactions.stream().map(Transaction::getHash).collect(Collectors.toList()));
 		while (hashQueue.size() > 1) {
-			// take 2 hashes from queue
-			byte[] hashableData = ArrayUtils.addAll(hashQueue.poll(), hashQueue.poll());
-			// put new hash at end of queue
-			hashQueue
-					.add(SCrypt.scrypt(hashableData, salt, cpuCostParam, memoryCostParam, parallelizationParam, dkLen));
+			// take 2 hashes from queue and put new hash at end of queue
+			hashQueue.add(engine.hashMerkleNode(hashQueue.poll(), hashQueue.poll()));
 		}
 		return hashQueue.poll();
 	}
@@ -0,0 +1,235 @@
+package de.pk.jblockchain.common.domain;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.pk.jblockchain.common.hash.HashEngine;
+
+/**
+ * Fields of a Block without its Transactions, small enough to keep the whole
+ * chain in memory
+ */
+public class BlockHeader {
+
+	/**
+	 * Hash of the Block
+	 */
+	private byte[] hash;
+
+	/**
+	 * Hash of previous block in chain
+	 */
+	private byte[] previousBlockHash;
+
+	/**
+	 * Hash of all Transaction hashes of the Block
+	 */
+	private byte[] merkleRoot;
+
+	/**
+	 * Self-chosen number to manipulate the Block hash
+	 */
+	private long tries;
+
+	/**
+	 * Creation time of the Block
+	 */
+	private long timestamp;
+
+	/**
+	 * Number of Transactions in the Block
+	 */
+	private int transactionCount;
+
+	/**
+	 * Version of the HashEngine of the Block
+	 */
+	private int version;
+
+	/**
+	 * Compact proof of work target, 0 for HashEngine versions without target
+	 */
+	private int bits;
+
+	public BlockHeader() {
+	}
+
+	public BlockHeader(Block block) {
+		this.hash = block.getHash();
+		this.previousBlockHash = block.getPreviousBlockHash();
+		this.merkleRoot = block.getMerkleRoot();
+		this.tries = block.getTries();
+		this.timestamp = block.getTimestamp();
+		this.transactionCount = block.getTransactions() != null ? block.getTransactions().size() : 0;
+		this.version = block.getVersion();
+		this.bits = block.getBits();
+	}
+
+	public byte[] getHash() {
+		return hash;
+	}
+
+	public void setHash(byte[] hash) {
+		this.hash = hash;
+	}
+
+	public byte[] getPreviousBlockHash() {
+		return previousBlockHash;
+	}
+
+	public void setPreviousBlockHash(byte[] previousBlockHash) {
+		this.previousBlockHash = previousBlockHash;
+	}
+
+	public byte[] getMerkleRoot() {
+		return merkleRoot;
+	}
+
+	public void setMerkleRoot(byte[] merkleRoot) {
+		this.merkleRoot = merkleRoot;
+	}
+
+	public long getTries() {
+		return tries;
+	}
+
+	public void setTries(long tries) {
+		this.tries = tries;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	public int getTransactionCount() {
+		return transactionCount;
+	}
+
+	public void setTransactionCount(int transactionCount) {
+		this.transactionCount = transactionCount;
+	}
+
+	/**
+	 * Calculates the hash of the Block like Block.calculateHash(), which only
+	 * needs the fields of the header
+	 *
+	 * @return proof of work hash of the HashEngine version as raw bytes
+	 * @throws GeneralSecurityException
+	 */
+	public byte[] calculateHash() throws GeneralSecurityException {
+		HashEngine engine = HashEngine.forVersion(version);
+		return engine.hashHeader(engine.header(previousBlockHash, merkleRoot, tries, timestamp, bits));
+	}
+
+	/**
+	 * Does the hash meet the proof of work target? Checks the claimed hash
+	 * only, compare it with calculateHash() as well.
+	 *
+	 * @param difficulty
+	 *            number of leading zero bytes required from HashEngine
+	 *            versions without target
+	 * @return true if the hash meets the compact target of the header or, for
+	 *         versions without target, has enough leading zero bytes
+	 */
+	public boolean meetsTarget(int difficulty) {
+		HashEngine engine = HashEngine.getEngines().get(version);
+		if (engine == null) {
+			return false;
+		}
+		if (!engine.hasTarget()) {
+			return Target.meets(hash, Target.fromLeadingZeroBytes(difficulty));
+		}
+		try {
+			return Target.meets(hash, Target.toBytes(bits));
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Check a chain of headers from the first Block on, as a client without
+	 * the Transactions can: every header references its predecessor, has a
+	 * valid hash which meets its target, does not go back to an older
+	 * HashEngine version and carries the retargeted target if its version has
+	 * one.
+	 *
+	 * @param headers
+	 *            headers in order of the chain, starting at height 0
+	 * @param difficulty
+	 *            number of leading zero bytes, see Target.nextBits()
+	 * @param blockInterval
+	 *            milliseconds expected between two Blocks
+	 * @param retargetWindow
+	 *            number of Blocks the target is adjusted over
+	 * @return height of the first invalid header or the number of headers if
+	 *         all are valid
+	 * @throws GeneralSecurityException
+	 */
+	public static int verifyChain(List<BlockHeader> headers, int difficulty, long blockInterval, int retargetWindow)
+			throws GeneralSecurityException {
+		ArrayDeque<BlockHeader> window = new ArrayDeque<>();
+		BlockHeader previous = null;
+		for (int height = 0; height < headers.size(); height++) {
+			BlockHeader header = headers.get(height);
+			HashEngine engine = HashEngine.getEngines().get(header.getVersion());
+			if (engine == null
+					|| !Arrays.equals(header.getPreviousBlockHash(), previous != null ? previous.getHash() : null)
+					|| previous != null && header.getVersion() < previous.getVersion()
+					|| !header.meetsTarget(difficulty) || !Arrays.equals(header.getHash(), header.calculateHash())) {
+				return height;
+			}
+			if (engine.hasTarget()
+					&& header.getBits() != Target.nextBits(new ArrayList<>(window), blockInterval, difficulty)) {
+				return height;
+			}
+			window.addLast(header);
+			if (window.size() > retargetWindow + 1) {
+				window.removeFirst();
+			}
+			previous = header;
+		}
+		return headers.size();
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
+	public int getBits() {
+		return bits;
+	}
+
+	public void setBits(int bits) {
+		this.bits = bits;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+
+		BlockHeader header = (BlockHeader) o;
+
+		return Arrays.equals(hash, header.hash);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(hash);
+	}
+}
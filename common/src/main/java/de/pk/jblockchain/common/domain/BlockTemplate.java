@@ -0,0 +1,225 @@
+package de.pk.jblockchain.common.domain;
+
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import de.pk.jblockchain.common.hash.HashEngine;
+
+/**
+ * Everything of a new Block which does not change while searching its nonce.
+ * The Merkle root and the hashable header are calculated once, a Hasher only
+ * rewrites the tries bytes of its own copy of the header before hashing it,
+ * so a nonce attempt costs a single proof of work hash. The header is laid out
+ * by the HashEngine of the Block version, as in Block.calculateHash().
+ */
+public class BlockTemplate {
+
+	private final HashEngine engine;
+	private final byte[] previousBlockHash;
+	private final List<Transaction> transactions;
+	private final byte[] merkleRoot;
+	private final long timestamp;
+	private final int bits;
+
+	private final byte[] header;
+	private final int triesOffset;
+
+	/**
+	 * @param previousBlockHash
+	 *            hash of the last Block in chain, null for the first Block
+	 * @param transactions
+	 *            Transactions of the new Block
+	 * @throws GeneralSecurityException
+	 */
+	public BlockTemplate(byte[] previousBlockHash, List<Transaction> transactions) throws GeneralSecurityException {
+		this(previousBlockHash, transactions, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param previousBlockHash
+	 *            hash of the last Block in chain, null for the first Block
+	 * @param transactions
+	 *            Transactions of the new Block
+	 * @param timestamp
+	 *            creation time of the new Block
+	 * @throws GeneralSecurityException
+	 */
+	public BlockTemplate(byte[] previousBlockHash, List<Transaction> transactions, long timestamp)
+			throws GeneralSecurityException {
+		this(HashEngine.getDefaultVersion(), previousBlockHash, transactions,
+				calculateMerkleRoot(transactions, HashEngine.getDefaultVersion()), timestamp);
+	}
+
+	/**
+	 * @param version
+	 *            HashEngine version of the new Block
+	 * @param previousBlockHash
+	 *            hash of the last Block in chain, null for the first Block
+	 * @param transactions
+	 *            Transactions of the new Block
+	 * @param merkleRoot
+	 *            Merkle root of the Transactions, calculated by the caller
+	 * @param timestamp
+	 *            creation time of the new Block
+	 * @throws NoSuchAlgorithmException
+	 *             if the version is unknown
+	 */
+	public BlockTemplate(int version, byte[] previousBlockHash, List<Transaction> transactions, byte[] merkleRoot,
+			long timestamp) throws NoSuchAlgorithmException {
+		this(version, previousBlockHash, transactions, merkleRoot, timestamp, 0);
+	}
+
+	/**
+	 * @param version
+	 *            HashEngine version of the new Block
+	 * @param previousBlockHash
+	 *            hash of the last Block in chain, null for the first Block
+	 * @param transactions
+	 *            Transactions of the new Block
+	 * @param merkleRoot
+	 *            Merkle root of the Transactions, calculated by the caller
+	 * @param timestamp
+	 *            creation time of the new Block
+	 * @param bits
+	 *            compact target of the new Block if the version has one
+	 * @throws NoSuchAlgorithmException
+	 *             if the version is unknown
+	 */
+	public BlockTemplate(int version, byte[] previousBlockHash, List<Transaction> transactions, byte[] merkleRoot,
+			long timestamp, int bits) throws NoSuchAlgorithmException {
+		this.engine = HashEngine.forVersion(version);
+		this.previousBlockHash = previousBlockHash;
+		this.transactions = transactions;
+		this.merkleRoot = merkleRoot;
+		this.timestamp = timestamp;
+		this.bits = engine.hasTarget() ? bits : 0;
+		this.header = engine.header(previousBlockHash, merkleRoot, 0, timestamp, this.bits);
+		this.triesOffset = (previousBlockHash != null ? previousBlockHash.length : 0)
+				+ (merkleRoot != null ? merkleRoot.length : 0);
+	}
+
+	public byte[] getMerkleRoot() {
+		return merkleRoot;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public int getBits() {
+		return bits;
+	}
+
+	/**
+	 * @return length of the proof of work hash, the size of buffers passed to
+	 *         Hasher.hash(long, byte[])
+	 */
+	public int getHashLength() {
+		return engine.getHashLength();
+	}
+
+	/**
+	 * Create a Hasher with its own header buffer. A Hasher must not be shared
+	 * between threads, every mining thread needs one.
+	 *
+	 * @return new Hasher
+	 */
+	public Hasher newHasher() {
+		return new Hasher(header.clone());
+	}
+
+	/**
+	 * Build the Block for a nonce found by a Hasher
+	 *
+	 * @param tries
+	 *            the nonce
+	 * @param hash
+	 *            hash of the header with this nonce
+	 * @return Block equal to new Block(previousBlockHash, transactions, tries)
+	 *         created at the time of this template
+	 */
+	public Block toBlock(long tries, byte[] hash) {
+		Block block = new Block();
+		block.setPreviousBlockHash(previousBlockHash);
+		block.setTransactions(transactions);
+		block.setMerkleRoot(merkleRoot);
+		block.setTries(tries);
+		block.setTimestamp(timestamp);
+		block.setHash(hash);
+		block.setVersion(engine.getVersion());
+		block.setBits(bits);
+		return block;
+	}
+
+	private static byte[] calculateMerkleRoot(List<Transaction> transactions, int version)
+			throws GeneralSecurityException {
+		Block block = new Block();
+		block.setTransactions(transactions);
+		block.setVersion(version);
+		return block.calculateMerkleRoot();
+	}
+
+	/**
+	 * Count the number of bytes in a hash, which are zero at the beginning
+	 *
+	 * @param hash
+	 *            raw hash
+	 * @return number of leading zero bytes
+	 */
+	public static int getLeadingZerosCount(byte[] hash) {
+		for (int i = 0; i < hash.length; i++) {
+			if (hash[i] != 0) {
+				return i;
+			}
+		}
+		return hash.length;
+	}
+
+	/**
+	 * Hashes the header of a BlockTemplate for one nonce after another
+	 */
+	public class Hasher {
+
+		private final byte[] header;
+
+		private Hasher(byte[] header) {
+			this.header = header;
+		}
+
+		/**
+		 * Hash the header with the given nonce
+		 *
+		 * @param tries
+		 *            the nonce
+		 * @return proof of work hash as raw bytes
+		 * @throws GeneralSecurityException
+		 */
+		public byte[] hash(long tries) throws GeneralSecurityException {
+			setTries(tries);
+			return engine.hashHeader(header);
+		}
+
+		/**
+		 * Hash the header with the given nonce into a buffer of the caller,
+		 * without allocating
+		 *
+		 * @param tries
+		 *            the nonce
+		 * @param out
+		 *            receives the proof of work hash, getHashLength() bytes
+		 * @throws GeneralSecurityException
+		 */
+		public void hash(long tries, byte[] out) throws GeneralSecurityException {
+			setTries(tries);
+			engine.hashHeader(header, out);
+		}
+
+		private void setTries(long tries) {
+			for (int i = Long.BYTES - 1; i >= 0; i--) {
+				header[triesOffset + i] = (byte) tries;
+				tries >>>= 8;
+			}
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package de.pk.jblockchain.common.domain;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.pk.jblockchain.common.hash.HashEngine;
+
+/**
+ * Proof that a Transaction is part of a Block: the hashes along the path from
+ * the Transaction to the Merkle root. Together with the header of the Block a
+ * client can check the Transaction is confirmed without downloading any other
+ * Transaction.
+ */
+public class MerkleProof {
+
+	/**
+	 * Hash of the proven Transaction
+	 */
+	private byte[] transactionHash;
+
+	/**
+	 * Hash of the Block containing the Transaction
+	 */
+	private byte[] blockHash;
+
+	/**
+	 * Position of the Block in the chain
+	 */
+	private long height;
+
+	/**
+	 * Sibling of every node on the path from the Transaction to the Merkle
+	 * root, starting at the Transaction
+	 */
+	private List<Sibling> path = new ArrayList<>();
+
+	public byte[] getTransactionHash() {
+		return transactionHash;
+	}
+
+	public void setTransactionHash(byte[] transactionHash) {
+		this.transactionHash = transactionHash;
+	}
+
+	public byte[] getBlockHash() {
+		return blockHash;
+	}
+
+	public void setBlockHash(byte[] blockHash) {
+		this.blockHash = blockHash;
+	}
+
+	public long getHeight() {
+		return height;
+	}
+
+	public void setHeight(long height) {
+		this.height = height;
+	}
+
+	public List<Sibling> getPath() {
+		return path;
+	}
+
+	public void setPath(List<Sibling> path) {
+		this.path = path;
+	}
+
+	/**
+	 * Calculates the Merkle root by hashing the Transaction hash with every
+	 * sibling of its path
+	 *
+	 * @param engine
+	 *            HashEngine of the Block version
+	 * @return Merkle hash as raw bytes
+	 * @throws GeneralSecurityException
+	 */
+	public byte[] calculateMerkleRoot(HashEngine engine) throws GeneralSecurityException {
+		byte[] hash = transactionHash;
+		for (Sibling sibling : path) {
+			hash = sibling.isLeft() ? engine.hashMerkleNode(sibling.getHash(), hash)
+					: engine.hashMerkleNode(hash, sibling.getHash());
+		}
+		return hash;
+	}
+
+	/**
+	 * Check the Transaction is confirmed by the given header: the header has
+	 * a valid hash, it is the header of the proven Block and the path leads to
+	 * its Merkle root. Whether the header is part of the chain and carries
+	 * valid proof of work has to be checked by the caller, see
+	 * BlockHeader.verifyChain().
+	 *
+	 * @param header
+	 *            header of the Block at the height of this proof
+	 * @return true if the proof is valid
+	 * @throws GeneralSecurityException
+	 */
+	public boolean verify(BlockHeader header) throws GeneralSecurityException {
+		if (transactionHash == null || path == null || !Arrays.equals(blockHash, header.getHash())) {
+			return false;
+		}
+		if (!Arrays.equals(header.getHash(), header.calculateHash())) {
+			return false;
+		}
+		return Arrays.equals(header.getMerkleRoot(), calculateMerkleRoot(HashEngine.forVersion(header.getVersion())));
+	}
+
+	/**
+	 * Hash next to a node on the path to the Merkle root
+	 */
+	public static class Sibling {
+
+		private byte[] hash;
+
+		/**
+		 * true if the sibling is hashed in front of the node
+		 */
+		private boolean left;
+
+		public Sibling() {
+		}
+
+		public Sibling(byte[] hash, boolean left) {
+			this.hash = hash;
+			this.left = left;
+		}
+
+		public byte[] getHash() {
+			return hash;
+		}
+
+		public void setHash(byte[] hash) {
+			this.hash = hash;
+		}
+
+		public boolean isLeft() {
+			return left;
+		}
+
+		public void setLeft(boolean left) {
+			this.left = left;
+		}
+	}
+}
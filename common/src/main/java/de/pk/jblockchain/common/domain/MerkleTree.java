@@ -0,0 +1,168 @@
+package de.pk.jblockchain.common.domain;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+import de.pk.jblockchain.common.hash.HashEngine;
+
+/**
+ * Calculates Merkle roots like Block.calculateMerkleRoot() with a memo cache
+ * of inner node hashes keyed by the hashes of their two children. It is not a
+ * tree with fixed leaf positions: the pairs follow the queue shape of the
+ * Block, so a node is only found again if the same two children meet again.
+ * Replacing a Transaction hashes the nodes on its path only. Removing one at
+ * the end keeps the pairs of leaves in front of it, while removing one at the
+ * head or in the middle shifts every later pairing, so every node behind the
+ * removal is hashed again. Fixed leaf slots would avoid this, but would change the
+ * Merkle root of the Block. Once the cache grows beyond its capacity, all
+ * nodes which neither the current nor the previous calculation used are
+ * dropped. Every HashEngine version has its own nodes.
+ */
+public class MerkleTree {
+
+	private final int capacity;
+
+	private final Map<Integer, Map<ByteBuffer, Node>> versions = new ConcurrentHashMap<>();
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            number of inner nodes kept before unused ones are dropped
+	 */
+	public MerkleTree(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Calculates the Merkle root of the given Transactions
+	 *
+	 * @param engine
+	 *            HashEngine of the Block version
+	 * @param transactions
+	 *            Transactions in order of the Block
+	 * @return Merkle hash as raw bytes, equal to Block.calculateMerkleRoot()
+	 * @throws GeneralSecurityException
+	 */
+	public byte[] calculateRoot(HashEngine engine, List<Transaction> transactions) throws GeneralSecurityException {
+		Map<ByteBuffer, Node> nodes = nodes(engine);
+		long current = generation.incrementAndGet();
+		Queue<byte[]> hashQueue = new ArrayDeque<>(transactions.size());
+		for (Transaction transaction : transactions) {
+			hashQueue.add(transaction.getHash());
+		}
+		while (hashQueue.size() > 1) {
+			hashQueue.add(hash(engine, nodes, hashQueue.poll(), hashQueue.poll(), current));
+		}
+		if (size() > capacity) {
+			// keep the nodes of this and the previous calculation
+			versions.values().forEach(versionNodes -> versionNodes.values().removeIf(node -> node.used < current - 1));
+		}
+		return hashQueue.poll();
+	}
+
+	/**
+	 * Collects the siblings on the path from a Transaction to the Merkle root
+	 *
+	 * @param engine
+	 *            HashEngine of the Block version
+	 * @param transactions
+	 *            Transactions in order of the Block
+	 * @param transactionHash
+	 *            hash of the Transaction to prove
+	 * @return siblings starting at the Transaction or null if no Transaction
+	 *         has this hash
+	 * @throws GeneralSecurityException
+	 */
+	public List<MerkleProof.Sibling> calculatePath(HashEngine engine, List<Transaction> transactions,
+			byte[] transactionHash) throws GeneralSecurityException {
+		Map<ByteBuffer, Node> nodes = nodes(engine);
+		long current = generation.incrementAndGet();
+		Queue<byte[]> hashQueue = new ArrayDeque<>(transactions.size());
+		// position of the node on the path within the queue
+		int position = -1;
+		for (Transaction transaction : transactions) {
+			if (position < 0 && Arrays.equals(transaction.getHash(), transactionHash)) {
+				position = hashQueue.size();
+			}
+			hashQueue.add(transaction.getHash());
+		}
+		if (position < 0) {
+			return null;
+		}
+		List<MerkleProof.Sibling> path = new ArrayList<>();
+		while (hashQueue.size() > 1) {
+			byte[] left = hashQueue.poll();
+			byte[] right = hashQueue.poll();
+			byte[] parent = hash(engine, nodes, left, right, current);
+			if (position == 0) {
+				path.add(new MerkleProof.Sibling(right, false));
+				position = hashQueue.size();
+			} else if (position == 1) {
+				path.add(new MerkleProof.Sibling(left, true));
+				position = hashQueue.size();
+			} else {
+				position -= 2;
+			}
+			hashQueue.add(parent);
+		}
+		return path;
+	}
+
+	/**
+	 * Hits and misses of the node cache
+	 *
+	 * @return statistics by name
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<>();
+		statistics.put("hits", hits.get());
+		statistics.put("misses", misses.get());
+		statistics.put("nodes", size());
+		return statistics;
+	}
+
+	private Map<ByteBuffer, Node> nodes(HashEngine engine) {
+		return versions.computeIfAbsent(engine.getVersion(), version -> new ConcurrentHashMap<>());
+	}
+
+	private long size() {
+		return versions.values().stream().mapToLong(Map::size).sum();
+	}
+
+	private byte[] hash(HashEngine engine, Map<ByteBuffer, Node> nodes, byte[] left, byte[] right, long current)
+			throws GeneralSecurityException {
+		ByteBuffer key = ByteBuffer.wrap(ArrayUtils.addAll(left, right));
+		Node node = nodes.get(key);
+		if (node == null) {
+			misses.incrementAndGet();
+			node = new Node(engine.hashMerkleNode(left, right));
+			nodes.put(key, node);
+		} else {
+			hits.incrementAndGet();
+		}
+		node.used = current;
+		return node.hash;
+	}
+
+	private static class Node {
+		private final byte[] hash;
+		private volatile long used;
+
+		private Node(byte[] hash) {
+			this.hash = hash;
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package de.pk.jblockchain.common.domain;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import de.pk.jblockchain.common.hash.HashEngine;
+
+/**
+ * Proof of work target: a Block hash, read as unsigned big-endian number, has
+ * to be less than or equal to the target. Blocks carry the target in compact
+ * form, the number of significant bytes in the highest byte and the three
+ * highest of them below, so it can be adjusted in steps of less than a bit
+ * instead of whole leading zero bytes.
+ */
+public abstract class Target {
+
+	/**
+	 * Number of bytes of a target, equal to the length of the hashes
+	 */
+	public static final int LENGTH = 32;
+
+	/**
+	 * Easiest target, every hash meets it
+	 */
+	public static final BigInteger MAX = BigInteger.ONE.shiftLeft(LENGTH * 8).subtract(BigInteger.ONE);
+
+	/**
+	 * A retarget changes the target at most by this factor
+	 */
+	public static final int MAX_ADJUSTMENT = 4;
+
+	/**
+	 * Decode a compact target
+	 *
+	 * @param bits
+	 *            compact target
+	 * @return target, at most MAX
+	 * @throws IllegalArgumentException
+	 *             if the compact target is negative
+	 */
+	public static BigInteger fromBits(int bits) {
+		int size = bits >>> 24;
+		int mantissa = bits & 0x00ffffff;
+		if ((mantissa & 0x00800000) != 0) {
+			throw new IllegalArgumentException("Negative target " + Integer.toHexString(bits));
+		}
+		BigInteger target = BigInteger.valueOf(mantissa);
+		target = size <= 3 ? target.shiftRight(8 * (3 - size)) : target.shiftLeft(8 * (size - 3));
+		return target.min(MAX);
+	}
+
+	/**
+	 * Encode a target, rounding down to the three highest significant bytes
+	 *
+	 * @param target
+	 *            target between 0 and MAX
+	 * @return compact target
+	 */
+	public static int toBits(BigInteger target) {
+		if (target.signum() < 0) {
+			throw new IllegalArgumentException("Negative target " + target);
+		}
+		target = target.min(MAX);
+		int size = (target.bitLength() + 7) / 8;
+		int mantissa = size <= 3 ? target.intValue() << 8 * (3 - size) : target.shiftRight(8 * (size - 3)).intValue();
+		// the highest mantissa bit is the sign
+		if ((mantissa & 0x00800000) != 0) {
+			mantissa >>>= 8;
+			size++;
+		}
+		return size << 24 | mantissa;
+	}
+
+	/**
+	 * Target equal to a number of leading zero bytes, as required from Blocks
+	 * of HashEngine versions without target
+	 *
+	 * @param difficulty
+	 *            number of leading zero bytes
+	 * @return target as raw bytes
+	 */
+	public static byte[] fromLeadingZeroBytes(int difficulty) {
+		byte[] target = new byte[LENGTH];
+		for (int i = Math.max(difficulty, 0); i < LENGTH; i++) {
+			target[i] = (byte) 0xff;
+		}
+		return target;
+	}
+
+	/**
+	 * Compact target equal to a number of leading zero bytes, required from
+	 * the first Blocks with target and counted for Blocks without one
+	 *
+	 * @param difficulty
+	 *            number of leading zero bytes
+	 * @return compact target
+	 */
+	public static int fromDifficulty(int difficulty) {
+		return toBits(new BigInteger(1, fromLeadingZeroBytes(difficulty)));
+	}
+
+	/**
+	 * Compact target of the Block following a retarget window. The average
+	 * target of the Blocks of the window is scaled by the time they took
+	 * compared to blockInterval per Block. Blocks without target count with
+	 * the target of the difficulty.
+	 *
+	 * @param window
+	 *            headers of the last Blocks of the chain in order, at most
+	 *            retargetWindow + 1 of them
+	 * @param blockInterval
+	 *            milliseconds expected between two Blocks
+	 * @param difficulty
+	 *            number of leading zero bytes of the first target
+	 * @return compact target
+	 */
+	public static int nextBits(List<BlockHeader> window, long blockInterval, int difficulty) {
+		if (window.size() < 2) {
+			return fromDifficulty(difficulty);
+		}
+		// the first Block only marks the start of the window
+		BigInteger sum = BigInteger.ZERO;
+		for (BlockHeader header : window.subList(1, window.size())) {
+			HashEngine engine = HashEngine.getEngines().get(header.getVersion());
+			sum = sum.add(fromBits(engine != null && engine.hasTarget() ? header.getBits() : fromDifficulty(difficulty)));
+		}
+		long intervals = window.size() - 1;
+		long actualMillis = window.get(window.size() - 1).getTimestamp() - window.get(0).getTimestamp();
+		return retarget(sum.divide(BigInteger.valueOf(intervals)), actualMillis, intervals * blockInterval);
+	}
+
+	/**
+	 * Decode a compact target into raw bytes, to be compared with hashes by
+	 * meets(byte[], byte[])
+	 *
+	 * @param bits
+	 *            compact target
+	 * @return target as LENGTH big-endian bytes
+	 */
+	public static byte[] toBytes(int bits) {
+		return toBytes(fromBits(bits));
+	}
+
+	/**
+	 * @param target
+	 *            target between 0 and MAX
+	 * @return target as LENGTH big-endian bytes
+	 */
+	public static byte[] toBytes(BigInteger target) {
+		byte[] value = target.toByteArray();
+		byte[] bytes = new byte[LENGTH];
+		int length = Math.min(value.length, LENGTH);
+		System.arraycopy(value, value.length - length, bytes, LENGTH - length, length);
+		return bytes;
+	}
+
+	/**
+	 * Compare a hash with a target bit by bit
+	 *
+	 * @param hash
+	 *            raw hash
+	 * @param target
+	 *            target as raw bytes of the same length
+	 * @return true if the hash is less than or equal to the target
+	 */
+	public static boolean meets(byte[] hash, byte[] target) {
+		if (hash == null || hash.length != target.length) {
+			return false;
+		}
+		for (int i = 0; i < hash.length; i++) {
+			int h = hash[i] & 0xff;
+			int t = target[i] & 0xff;
+			if (h != t) {
+				return h < t;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adjust a single target, see retarget(BigInteger, long, long)
+	 *
+	 * @param bits
+	 *            compact target the window was mined at
+	 * @param actualMillis
+	 *            time between the first and the last Block of the window
+	 * @param expectedMillis
+	 *            time the window should have taken at the configured block
+	 *            interval
+	 * @return compact target of the next Block, at most MAX_ADJUSTMENT times
+	 *         easier or harder
+	 */
+	public static int retarget(int bits, long actualMillis, long expectedMillis) {
+		return retarget(fromBits(bits), actualMillis, expectedMillis);
+	}
+
+	/**
+	 * Adjust a target, so Blocks are found at the expected rate with the hash
+	 * power seen over the last Blocks. The target has to be the one the
+	 * window was mined at, e.g. the average over its Blocks, not the target of
+	 * the last Block alone: scaling the last target by the time of a sliding
+	 * window would apply the same deviation once per Block and let the target
+	 * run away.
+	 *
+	 * @param target
+	 *            target the Blocks of the window were mined at
+	 * @param actualMillis
+	 *            time between the first and the last Block of the window
+	 * @param expectedMillis
+	 *            time the window should have taken at the configured block
+	 *            interval
+	 * @return compact target of the next Block, at most MAX_ADJUSTMENT times
+	 *         easier or harder
+	 */
+	public static int retarget(BigInteger target, long actualMillis, long expectedMillis) {
+		long actual = Math.max(expectedMillis / MAX_ADJUSTMENT, Math.min(actualMillis, expectedMillis * MAX_ADJUSTMENT));
+		BigInteger next = target.multiply(BigInteger.valueOf(Math.max(actual, 1)))
+				.divide(BigInteger.valueOf(Math.max(expectedMillis, 1)));
+		return toBits(next.max(BigInteger.ONE));
+	}
+}
@@ -2,11 +2,12 @@ package de.pk.jblockchain.common.domain;
 
 import java.util.Arrays;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.ArrayUtils;
 
 import com.google.common.primitives.Longs;
 
+import de.pk.jblockchain.common.hash.HashEngine;
+
 public class Transaction {
 
 	/**
@@ -99,7 +100,7 @@ public class Transaction {
 		byte[] hashableData = ArrayUtils.addAll(text.getBytes(), senderHash);
 		hashableData = ArrayUtils.addAll(hashableData, signature);
 		hashableData = ArrayUtils.addAll(hashableData, Longs.toByteArray(timestamp));
-		return DigestUtils.sha256(hashableData);
+		return HashEngine.hashTransactionId(hashableData);
 	}
 
 	@Override
@@ -0,0 +1,271 @@
+package de.pk.jblockchain.common.hash;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * Hash algorithms of a Block version, one per role: the proof of work hashes
+ * the Block header, the Merkle tree hashes pairs of Transaction hashes and the
+ * Transaction id hashes the fields of a Transaction. Every Block carries the
+ * version it was hashed with, so the algorithms can be changed without
+ * invalidating the existing chain.
+ * <p>
+ * The roles are fixed per version by design and can not be chosen
+ * independently or configured: all Nodes have to hash a Block of a version the
+ * same way, so another combination needs a new version constant here. Only
+ * the SCrypt parameters and the version of new Blocks are read from
+ * application.properties. The Transaction id is SHA-256 in every version,
+ * because Transactions do not carry a version.
+ */
+public final class HashEngine {
+
+	/**
+	 * SCrypt for proof of work and Merkle tree, the version of all Blocks
+	 * mined before Blocks carried a version
+	 */
+	public static final int VERSION_SCRYPT = 0;
+
+	/**
+	 * SCrypt for proof of work, SHA-256 for the Merkle tree. The version is
+	 * part of the hashed header.
+	 */
+	public static final int VERSION_SHA256_MERKLE = 1;
+
+	/**
+	 * Like VERSION_SHA256_MERKLE, the proof of work has to meet the compact
+	 * target stored in the header instead of a number of leading zero bytes
+	 */
+	public static final int VERSION_TARGET = 2;
+
+	private final int version;
+	private final HashFunction proofOfWork;
+	private final HashFunction merkle;
+	private final HashFunction transaction;
+	private final boolean versionInHeader;
+	private final boolean targetInHeader;
+
+	private HashEngine(int version, HashFunction proofOfWork, HashFunction merkle, HashFunction transaction,
+			boolean versionInHeader, boolean targetInHeader) {
+		this.version = version;
+		this.proofOfWork = proofOfWork;
+		this.merkle = merkle;
+		this.transaction = transaction;
+		this.versionInHeader = versionInHeader;
+		this.targetInHeader = targetInHeader;
+	}
+
+	/**
+	 * Engine of a Block version
+	 *
+	 * @param version
+	 *            version of the Block
+	 * @return HashEngine
+	 * @throws NoSuchAlgorithmException
+	 *             if the version is unknown
+	 */
+	public static HashEngine forVersion(int version) throws NoSuchAlgorithmException {
+		HashEngine engine = Engines.ENGINES.get(version);
+		if (engine == null) {
+			throw new NoSuchAlgorithmException("Unknown block version " + version);
+		}
+		return engine;
+	}
+
+	/**
+	 * @param version
+	 *            version of a Block
+	 * @return true if Blocks of this version can be hashed
+	 */
+	public static boolean isSupported(int version) {
+		return Engines.ENGINES.containsKey(version);
+	}
+
+	/**
+	 * Version of new Blocks, set by hashing.version in application.properties.
+	 * All Nodes of a network have to switch at the same time.
+	 *
+	 * @return version
+	 */
+	public static int getDefaultVersion() {
+		return Engines.defaultVersion;
+	}
+
+	/**
+	 * @return all supported engines by version
+	 */
+	public static Map<Integer, HashEngine> getEngines() {
+		return Engines.ENGINES;
+	}
+
+	/**
+	 * Hash used as Transaction id. Transactions do not carry a version, so
+	 * all engines share the algorithm.
+	 *
+	 * @param data
+	 *            hashable fields of the Transaction
+	 * @return hash as raw bytes
+	 */
+	public static byte[] hashTransactionId(byte[] data) {
+		return Engines.TRANSACTION.hash(data);
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public HashFunction getProofOfWork() {
+		return proofOfWork;
+	}
+
+	public HashFunction getMerkle() {
+		return merkle;
+	}
+
+	public HashFunction getTransaction() {
+		return transaction;
+	}
+
+	/**
+	 * @return true if Blocks of this version carry a compact target their
+	 *         hash has to meet
+	 */
+	public boolean hasTarget() {
+		return targetInHeader;
+	}
+
+	/**
+	 * Build the hashable header of a Block: previousBlockHash, merkleRoot,
+	 * tries, timestamp and the version and compact target if they are part of
+	 * the header
+	 *
+	 * @return header bytes, tries start behind previousBlockHash and
+	 *         merkleRoot
+	 */
+	public byte[] header(byte[] previousBlockHash, byte[] merkleRoot, long tries, long timestamp, int bits) {
+		int previousLength = previousBlockHash != null ? previousBlockHash.length : 0;
+		int merkleLength = merkleRoot != null ? merkleRoot.length : 0;
+		ByteBuffer header = ByteBuffer.allocate(previousLength + merkleLength + 2 * Long.BYTES
+				+ (versionInHeader ? Integer.BYTES : 0) + (targetInHeader ? Integer.BYTES : 0));
+		if (previousBlockHash != null) {
+			header.put(previousBlockHash);
+		}
+		if (merkleRoot != null) {
+			header.put(merkleRoot);
+		}
+		header.putLong(tries).putLong(timestamp);
+		if (versionInHeader) {
+			header.putInt(version);
+		}
+		if (targetInHeader) {
+			header.putInt(bits);
+		}
+		return header.array();
+	}
+
+	/**
+	 * Proof of work hash of a header built by header()
+	 *
+	 * @param header
+	 *            hashable header
+	 * @return hash as raw bytes
+	 * @throws GeneralSecurityException
+	 */
+	public byte[] hashHeader(byte[] header) throws GeneralSecurityException {
+		return proofOfWork.hash(header);
+	}
+
+	/**
+	 * Proof of work hash of a header built by header() into a buffer of the
+	 * caller
+	 *
+	 * @param header
+	 *            hashable header
+	 * @param out
+	 *            receives the hash, at least getHashLength() bytes
+	 * @throws GeneralSecurityException
+	 */
+	public void hashHeader(byte[] header, byte[] out) throws GeneralSecurityException {
+		proofOfWork.hash(header, out);
+	}
+
+	/**
+	 * @return length of a proof of work hash in bytes
+	 */
+	public int getHashLength() {
+		return proofOfWork.getLength();
+	}
+
+	/**
+	 * Hash of an inner node of the Merkle tree
+	 *
+	 * @param left
+	 *            hash of the left child
+	 * @param right
+	 *            hash of the right child
+	 * @return hash as raw bytes
+	 * @throws GeneralSecurityException
+	 */
+	public byte[] hashMerkleNode(byte[] left, byte[] right) throws GeneralSecurityException {
+		return merkle.hash(ArrayUtils.addAll(left, right));
+	}
+
+	@Override
+	public String toString() {
+		return "HashEngine " + version + " (proof of work " + proofOfWork.getName() + ", Merkle tree "
+				+ merkle.getName() + ", transaction id " + transaction.getName() + ")";
+	}
+
+	/**
+	 * Engines created on first use from the SCrypt parameters in
+	 * application.properties
+	 */
+	private static class Engines {
+
+		private static final Sha256HashFunction TRANSACTION = new Sha256HashFunction();
+		private static final Map<Integer, HashEngine> ENGINES;
+		private static int defaultVersion;
+
+		static {
+			Properties props = new Properties();
+			try (InputStream in = HashEngine.class.getResourceAsStream("/application.properties")) {
+				if (in != null) {
+					props.load(in);
+				} else {
+					System.err.println("No application.properties found, using default hashing parameters");
+				}
+			} catch (IOException e) {
+				System.err.println("Error at reading properties file");
+				e.printStackTrace();
+			}
+			String[] saltArr = props.getProperty("hashing.scrypt.salt", "").split(",");
+			byte[] salt = new byte[16];
+			for (int i = 0; i < saltArr.length && i < salt.length; i++) {
+				if (!saltArr[i].trim().isEmpty()) {
+					salt[i] = Byte.valueOf(saltArr[i].trim());
+				}
+			}
+			HashFunction scrypt = new ScryptHashFunction(
+					Integer.valueOf(props.getProperty("hashing.scrypt.cpuCostParam", "256")),
+					Integer.valueOf(props.getProperty("hashing.scrypt.memoryCostParam", "4")),
+					Integer.valueOf(props.getProperty("hashing.scrypt.parallelizationParam", "2")),
+					Integer.valueOf(props.getProperty("hashing.scrypt.dkLen", "32")), salt);
+			defaultVersion = Integer.valueOf(props.getProperty("hashing.version", String.valueOf(VERSION_SCRYPT)));
+
+			Map<Integer, HashEngine> engines = new TreeMap<>();
+			engines.put(VERSION_SCRYPT, new HashEngine(VERSION_SCRYPT, scrypt, scrypt, TRANSACTION, false, false));
+			engines.put(VERSION_SHA256_MERKLE,
+					new HashEngine(VERSION_SHA256_MERKLE, scrypt, TRANSACTION, TRANSACTION, true, false));
+			engines.put(VERSION_TARGET, new HashEngine(VERSION_TARGET, scrypt, TRANSACTION, TRANSACTION, true, true));
+			ENGINES = Collections.unmodifiableMap(engines);
+		}
+	}
+}
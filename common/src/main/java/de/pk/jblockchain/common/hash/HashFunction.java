@@ -0,0 +1,44 @@
+package de.pk.jblockchain.common.hash;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * Hash algorithm used by a HashEngine for one of its roles
+ */
+public interface HashFunction {
+
+	/**
+	 * Hash the given data
+	 *
+	 * @param data
+	 *            data to hash
+	 * @return hash as raw bytes
+	 * @throws GeneralSecurityException
+	 */
+	byte[] hash(byte[] data) throws GeneralSecurityException;
+
+	/**
+	 * Hash the given data into a buffer of the caller. Implementations used in
+	 * hot loops override it to hash without allocating.
+	 *
+	 * @param data
+	 *            data to hash
+	 * @param out
+	 *            receives the hash in its first getLength() bytes
+	 * @throws GeneralSecurityException
+	 */
+	default void hash(byte[] data, byte[] out) throws GeneralSecurityException {
+		byte[] hash = hash(data);
+		System.arraycopy(hash, 0, out, 0, hash.length);
+	}
+
+	/**
+	 * @return length of a hash in bytes
+	 */
+	int getLength();
+
+	/**
+	 * @return name of the algorithm, e.g. for logs and metrics
+	 */
+	String getName();
+}
@@ -0,0 +1,259 @@
+package de.pk.jblockchain.common.hash;
+
+import java.security.DigestException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Memory-hard SCrypt with fixed parameters and salt, as used for the proof of
+ * work. Byte-identical to com.lambdaworks.crypto.SCrypt, but every thread keeps
+ * its working memory between calls and writes the hash into a buffer of the
+ * caller, so hashing in the mining loop does not allocate.
+ */
+public class ScryptHashFunction implements HashFunction {
+
+	private static final int HMAC_BLOCK_SIZE = 64;
+	private static final int SHA256_LENGTH = 32;
+
+	private final int cpuCostParam;
+	private final int memoryCostParam;
+	private final int parallelizationParam;
+	private final int dkLen;
+	private final byte[] salt;
+
+	private final ThreadLocal<Scratch> scratch;
+
+	/**
+	 * @param cpuCostParam
+	 *            N, a power of 2 greater than 1
+	 * @param memoryCostParam
+	 *            r, block size
+	 * @param parallelizationParam
+	 *            p, number of independent mixes
+	 * @param dkLen
+	 *            length of the hash in bytes
+	 * @param salt
+	 *            salt of every hash
+	 * @throws IllegalArgumentException
+	 *             if the parameters are out of range
+	 */
+	public ScryptHashFunction(int cpuCostParam, int memoryCostParam, int parallelizationParam, int dkLen,
+			byte[] salt) {
+		if (cpuCostParam < 2 || (cpuCostParam & (cpuCostParam - 1)) != 0) {
+			throw new IllegalArgumentException("N must be a power of 2 greater than 1");
+		}
+		if (memoryCostParam < 1 || cpuCostParam > Integer.MAX_VALUE / 128 / memoryCostParam) {
+			throw new IllegalArgumentException("Parameter N is too large");
+		}
+		if (parallelizationParam < 1 || memoryCostParam > Integer.MAX_VALUE / 128 / parallelizationParam) {
+			throw new IllegalArgumentException("Parameter r is too large");
+		}
+		if (dkLen < 1) {
+			throw new IllegalArgumentException("dkLen must be positive");
+		}
+		this.cpuCostParam = cpuCostParam;
+		this.memoryCostParam = memoryCostParam;
+		this.parallelizationParam = parallelizationParam;
+		this.dkLen = dkLen;
+		this.salt = salt.clone();
+		this.scratch = ThreadLocal.withInitial(Scratch::new);
+	}
+
+	@Override
+	public byte[] hash(byte[] data) throws GeneralSecurityException {
+		byte[] out = new byte[dkLen];
+		hash(data, out);
+		return out;
+	}
+
+	@Override
+	public void hash(byte[] data, byte[] out) throws GeneralSecurityException {
+		Scratch s = scratch.get();
+		s.setKey(data);
+		int r = memoryCostParam;
+		int blockLength = 128 * r;
+		pbkdf2(s, salt, 0, salt.length, s.b, blockLength * parallelizationParam);
+		for (int i = 0; i < parallelizationParam; i++) {
+			smix(s, i * blockLength);
+		}
+		pbkdf2(s, s.b, 0, s.b.length, out, dkLen);
+	}
+
+	@Override
+	public int getLength() {
+		return dkLen;
+	}
+
+	@Override
+	public String getName() {
+		return "SCrypt(N=" + cpuCostParam + ", r=" + memoryCostParam + ", p=" + parallelizationParam + ")";
+	}
+
+	/**
+	 * PBKDF2 with HMAC-SHA256 and a single iteration, as used by SCrypt
+	 */
+	private static void pbkdf2(Scratch s, byte[] message, int offset, int length, byte[] out, int outLength)
+			throws DigestException {
+		for (int i = 1, position = 0; position < outLength; i++, position += SHA256_LENGTH) {
+			s.counter[0] = (byte) (i >>> 24);
+			s.counter[1] = (byte) (i >>> 16);
+			s.counter[2] = (byte) (i >>> 8);
+			s.counter[3] = (byte) i;
+			MessageDigest digest = s.digest;
+			digest.update(s.innerPad);
+			digest.update(message, offset, length);
+			digest.update(s.counter);
+			digest.digest(s.mac, 0, SHA256_LENGTH);
+			digest.update(s.outerPad);
+			digest.update(s.mac);
+			digest.digest(s.mac, 0, SHA256_LENGTH);
+			System.arraycopy(s.mac, 0, out, position, Math.min(SHA256_LENGTH, outLength - position));
+		}
+	}
+
+	/**
+	 * Sequential memory-hard mixing of one block of s.b, on little-endian
+	 * words instead of bytes
+	 */
+	private void smix(Scratch s, int offset) {
+		int words = 32 * memoryCostParam;
+		int[] x = s.x;
+		int[] y = s.y;
+		int[] v = s.v;
+		for (int k = 0; k < words; k++) {
+			int i = offset + k * 4;
+			x[k] = (s.b[i] & 0xff) | (s.b[i + 1] & 0xff) << 8 | (s.b[i + 2] & 0xff) << 16 | (s.b[i + 3] & 0xff) << 24;
+		}
+		for (int i = 0; i < cpuCostParam; i += 2) {
+			System.arraycopy(x, 0, v, i * words, words);
+			blockMix(s, x, y);
+			System.arraycopy(y, 0, v, (i + 1) * words, words);
+			blockMix(s, y, x);
+		}
+		int mask = cpuCostParam - 1;
+		for (int i = 0; i < cpuCostParam; i += 2) {
+			int j = x[words - 16] & mask;
+			for (int k = 0; k < words; k++) {
+				x[k] ^= v[j * words + k];
+			}
+			blockMix(s, x, y);
+			j = y[words - 16] & mask;
+			for (int k = 0; k < words; k++) {
+				y[k] ^= v[j * words + k];
+			}
+			blockMix(s, y, x);
+		}
+		for (int k = 0; k < words; k++) {
+			int i = offset + k * 4;
+			s.b[i] = (byte) x[k];
+			s.b[i + 1] = (byte) (x[k] >>> 8);
+			s.b[i + 2] = (byte) (x[k] >>> 16);
+			s.b[i + 3] = (byte) (x[k] >>> 24);
+		}
+	}
+
+	/**
+	 * BlockMix with Salsa20/8 from in to out, even blocks go to the first half
+	 * of out and odd blocks to the second one
+	 */
+	private void blockMix(Scratch s, int[] in, int[] out) {
+		int r = memoryCostParam;
+		int[] t = s.t;
+		System.arraycopy(in, (2 * r - 1) * 16, t, 0, 16);
+		for (int i = 0; i < 2 * r; i++) {
+			for (int k = 0; k < 16; k++) {
+				t[k] ^= in[i * 16 + k];
+			}
+			salsa20_8(t, s.salsa);
+			System.arraycopy(t, 0, out, ((i & 1) == 0 ? i >> 1 : r + (i >> 1)) * 16, 16);
+		}
+	}
+
+	private static void salsa20_8(int[] b, int[] x) {
+		System.arraycopy(b, 0, x, 0, 16);
+		for (int i = 8; i > 0; i -= 2) {
+			x[4] ^= Integer.rotateLeft(x[0] + x[12], 7);
+			x[8] ^= Integer.rotateLeft(x[4] + x[0], 9);
+			x[12] ^= Integer.rotateLeft(x[8] + x[4], 13);
+			x[0] ^= Integer.rotateLeft(x[12] + x[8], 18);
+			x[9] ^= Integer.rotateLeft(x[5] + x[1], 7);
+			x[13] ^= Integer.rotateLeft(x[9] + x[5], 9);
+			x[1] ^= Integer.rotateLeft(x[13] + x[9], 13);
+			x[5] ^= Integer.rotateLeft(x[1] + x[13], 18);
+			x[14] ^= Integer.rotateLeft(x[10] + x[6], 7);
+			x[2] ^= Integer.rotateLeft(x[14] + x[10], 9);
+			x[6] ^= Integer.rotateLeft(x[2] + x[14], 13);
+			x[10] ^= Integer.rotateLeft(x[6] + x[2], 18);
+			x[3] ^= Integer.rotateLeft(x[15] + x[11], 7);
+			x[7] ^= Integer.rotateLeft(x[3] + x[15], 9);
+			x[11] ^= Integer.rotateLeft(x[7] + x[3], 13);
+			x[15] ^= Integer.rotateLeft(x[11] + x[7], 18);
+			x[1] ^= Integer.rotateLeft(x[0] + x[3], 7);
+			x[2] ^= Integer.rotateLeft(x[1] + x[0], 9);
+			x[3] ^= Integer.rotateLeft(x[2] + x[1], 13);
+			x[0] ^= Integer.rotateLeft(x[3] + x[2], 18);
+			x[6] ^= Integer.rotateLeft(x[5] + x[4], 7);
+			x[7] ^= Integer.rotateLeft(x[6] + x[5], 9);
+			x[4] ^= Integer.rotateLeft(x[7] + x[6], 13);
+			x[5] ^= Integer.rotateLeft(x[4] + x[7], 18);
+			x[11] ^= Integer.rotateLeft(x[10] + x[9], 7);
+			x[8] ^= Integer.rotateLeft(x[11] + x[10], 9);
+			x[9] ^= Integer.rotateLeft(x[8] + x[11], 13);
+			x[10] ^= Integer.rotateLeft(x[9] + x[8], 18);
+			x[12] ^= Integer.rotateLeft(x[15] + x[14], 7);
+			x[13] ^= Integer.rotateLeft(x[12] + x[15], 9);
+			x[14] ^= Integer.rotateLeft(x[13] + x[12], 13);
+			x[15] ^= Integer.rotateLeft(x[14] + x[13], 18);
+		}
+		for (int i = 0; i < 16; i++) {
+			b[i] += x[i];
+		}
+	}
+
+	/**
+	 * Working memory of one thread, sized once for the parameters of this
+	 * function
+	 */
+	private class Scratch {
+
+		private final MessageDigest digest;
+		private final byte[] innerPad = new byte[HMAC_BLOCK_SIZE];
+		private final byte[] outerPad = new byte[HMAC_BLOCK_SIZE];
+		private final byte[] counter = new byte[4];
+		private final byte[] mac = new byte[SHA256_LENGTH];
+
+		private final byte[] b = new byte[128 * memoryCostParam * parallelizationParam];
+		private final int[] x = new int[32 * memoryCostParam];
+		private final int[] y = new int[32 * memoryCostParam];
+		private final int[] v = new int[32 * memoryCostParam * cpuCostParam];
+		private final int[] t = new int[16];
+		private final int[] salsa = new int[16];
+
+		private Scratch() {
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 is not available", e);
+			}
+		}
+
+		/**
+		 * Prepare the HMAC pads for the data to hash, which is the HMAC key
+		 */
+		private void setKey(byte[] key) throws DigestException {
+			int length = key.length;
+			if (length > HMAC_BLOCK_SIZE) {
+				digest.update(key);
+				digest.digest(mac, 0, SHA256_LENGTH);
+				key = mac;
+				length = SHA256_LENGTH;
+			}
+			for (int i = 0; i < HMAC_BLOCK_SIZE; i++) {
+				byte k = i < length ? key[i] : 0;
+				innerPad[i] = (byte) (k ^ 0x36);
+				outerPad[i] = (byte) (k ^ 0x5c);
+			}
+		}
+	}
+}
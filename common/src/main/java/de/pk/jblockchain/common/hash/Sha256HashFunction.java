@@ -0,0 +1,25 @@
+package de.pk.jblockchain.common.hash;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Plain SHA-256, cheap enough to be calculated for every Merkle node and
+ * Transaction
+ */
+public class Sha256HashFunction implements HashFunction {
+
+	@Override
+	public byte[] hash(byte[] data) {
+		return DigestUtils.sha256(data);
+	}
+
+	@Override
+	public int getLength() {
+		return 32;
+	}
+
+	@Override
+	public String getName() {
+		return "SHA-256";
+	}
+}
@@ -0,0 +1,71 @@
+package de.pk.jblockchain.common.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.pk.jblockchain.common.domain.Block;
+
+/**
+ * Size and throughput of BinaryCodec compared to Jackson JSON, which is used
+ * by storage and REST endpoints otherwise
+ */
+public class BinaryCodecComparisonTests {
+
+	private final ObjectMapper mapper = new ObjectMapper()
+			.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+	@Test
+	public void binaryIsSmallerThanJson() throws Exception {
+		Block block = BinaryCodecTests.generateBlock(new byte[32], 100);
+		int jsonSize = mapper.writeValueAsBytes(block).length;
+		int binarySize = BinaryCodec.encode(block).length;
+		System.out.println("Block with 100 transactions: JSON " + jsonSize + " bytes, binary " + binarySize
+				+ " bytes (" + (100 * binarySize / jsonSize) + "%)");
+		Assert.assertTrue(binarySize * 3 < jsonSize * 2);
+	}
+
+	/**
+	 * Takes a while, run manually to compare encode and decode throughput
+	 */
+	@Ignore
+	@Test
+	public void compareThroughput() throws Exception {
+		List<Block> blocks = new ArrayList<>();
+		byte[] previousBlockHash = null;
+		for (int i = 0; i < 100; i++) {
+			Block block = BinaryCodecTests.generateBlock(previousBlockHash, 100);
+			blocks.add(block);
+			previousBlockHash = block.getHash();
+		}
+		int rounds = 200;
+		for (int warmup = 0; warmup < 2; warmup++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < rounds; i++) {
+				for (Block block : blocks) {
+					mapper.readValue(mapper.writeValueAsBytes(block), Block.class);
+				}
+			}
+			long json = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < rounds; i++) {
+				for (Block block : blocks) {
+					BinaryCodec.decode(BinaryCodec.encode(block), Block.class);
+				}
+			}
+			long binary = System.nanoTime() - start;
+
+			long count = (long) rounds * blocks.size();
+			System.out.println("Encode + decode of " + count + " blocks: JSON " + json / 1000000 + " ms ("
+					+ count * 1000000000L / json + " blocks/s), binary " + binary / 1000000 + " ms ("
+					+ count * 1000000000L / binary + " blocks/s)");
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package de.pk.jblockchain.common.codec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pk.jblockchain.common.domain.Address;
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockHeader;
+import de.pk.jblockchain.common.domain.Transaction;
+import de.pk.jblockchain.common.hash.HashEngine;
+
+public class BinaryCodecTests {
+
+	@Test
+	public void roundTripBlock() throws Exception {
+		Block block = generateBlock(new byte[] { 1, 2, 3 }, 5);
+		Block decoded = BinaryCodec.decode(BinaryCodec.encode(block), Block.class);
+		assertBlockEquals(block, decoded);
+
+		// the genesis Block has no previous hash
+		Block genesis = generateBlock(null, 0);
+		decoded = BinaryCodec.decode(BinaryCodec.encode(genesis), Block.class);
+		assertBlockEquals(genesis, decoded);
+		Assert.assertArrayEquals(genesis.calculateHash(), decoded.calculateHash());
+
+		// the compact target is part of the hashed header
+		Block targeted = new Block(new byte[32], generateTransactions(2), 7, HashEngine.VERSION_TARGET, 0x1f00ffff);
+		byte[] data = BinaryCodec.encode(targeted);
+		decoded = BinaryCodec.decode(data, Block.class);
+		assertBlockEquals(targeted, decoded);
+		Assert.assertArrayEquals(targeted.getHash(), decoded.calculateHash());
+		Assert.assertEquals(0x1f00ffff, BinaryCodec.decodeHeader(data, 0, data.length).getBits());
+	}
+
+	@Test
+	public void roundTripTransaction() throws Exception {
+		Transaction transaction = new Transaction("Grüße ✓", new byte[32], new byte[] { -1, 0, 127 });
+		Transaction decoded = BinaryCodec.decode(BinaryCodec.encode(transaction), Transaction.class);
+		assertTransactionEquals(transaction, decoded);
+		Assert.assertArrayEquals(transaction.getHash(), decoded.calculateHash());
+	}
+
+	@Test
+	public void roundTripAddress() throws Exception {
+		Address address = new Address(new byte[] { 9, 8, 7, 6 });
+		Address decoded = BinaryCodec.decode(BinaryCodec.encode(address), Address.class);
+		Assert.assertEquals(address, decoded);
+		Assert.assertArrayEquals(address.getPublicKey(), decoded.getPublicKey());
+	}
+
+	@Test
+	public void roundTripCollections() throws Exception {
+		List<Transaction> transactions = generateTransactions(3);
+		Transaction[] array = BinaryCodec.decode(BinaryCodec.encode(transactions), Transaction[].class);
+		Assert.assertEquals(transactions, Arrays.asList(array));
+
+		@SuppressWarnings("unchecked")
+		Set<Transaction> set = BinaryCodec.decode(BinaryCodec.encode(array), Set.class);
+		Assert.assertEquals(3, set.size());
+		Assert.assertTrue(set.containsAll(transactions));
+
+		Block[] empty = BinaryCodec.decode(BinaryCodec.encode(Collections.emptyList()), Block[].class);
+		Assert.assertEquals(0, empty.length);
+	}
+
+	@Test
+	public void rejectInvalidData() throws Exception {
+		byte[] data = BinaryCodec.encode(generateBlock(new byte[32], 2));
+		assertRejected(Arrays.copyOf(data, data.length - 1), Block.class);
+		assertRejected(BinaryCodec.encode(new Address(new byte[] { 1 })), Block.class);
+		assertRejected(BinaryCodec.encode(generateTransactions(2)), Address[].class);
+
+		byte[] otherVersion = data.clone();
+		otherVersion[0] = BinaryCodec.VERSION + 1;
+		assertRejected(otherVersion, Block.class);
+	}
+
+	static Block generateBlock(byte[] previousBlockHash, int transactionCount) throws Exception {
+		Block block = new Block(previousBlockHash, generateTransactions(transactionCount), 42);
+		block.setTimestamp(42);
+		block.setHash(block.calculateHash());
+		return block;
+	}
+
+	@Test
+	public void decodeFormatWithoutBlockVersion() throws Exception {
+		Block block = generateBlock(new byte[] { 1, 2, 3 }, 2);
+		BinaryOutput out = new BinaryOutput();
+		out.writeByte(1);
+		out.writeByte(BinaryCodec.TAG_BLOCK);
+		out.writeBytes(block.getHash());
+		out.writeBytes(block.getPreviousBlockHash());
+		out.writeBytes(block.getMerkleRoot());
+		out.writeLong(block.getTries());
+		out.writeLong(block.getTimestamp());
+		out.writeVarInt(block.getTransactions().size() + 1);
+		block.getTransactions().forEach(transaction -> BinaryCodec.writeTransaction(out, transaction));
+		byte[] data = out.toByteArray();
+
+		Block decoded = BinaryCodec.decode(data, Block.class);
+		assertBlockEquals(block, decoded);
+		Assert.assertEquals(HashEngine.VERSION_SCRYPT, decoded.getVersion());
+		Assert.assertArrayEquals(block.getHash(), decoded.calculateHash());
+		BlockHeader header = BinaryCodec.decodeHeader(data, 0, data.length);
+		Assert.assertEquals(HashEngine.VERSION_SCRYPT, header.getVersion());
+		Assert.assertEquals(2, header.getTransactionCount());
+	}
+
+	static List<Transaction> generateTransactions(int count) {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			transactions.add(new Transaction("Hello " + i, new byte[32], new byte[46]));
+		}
+		return transactions;
+	}
+
+	private static void assertBlockEquals(Block expected, Block actual) {
+		Assert.assertArrayEquals(expected.getHash(), actual.getHash());
+		Assert.assertArrayEquals(expected.getPreviousBlockHash(), actual.getPreviousBlockHash());
+		Assert.assertArrayEquals(expected.getMerkleRoot(), actual.getMerkleRoot());
+		Assert.assertEquals(expected.getTries(), actual.getTries());
+		Assert.assertEquals(expected.getTimestamp(), actual.getTimestamp());
+		Assert.assertEquals(expected.getVersion(), actual.getVersion());
+		Assert.assertEquals(expected.getBits(), actual.getBits());
+		Assert.assertEquals(expected.getTransactions().size(), actual.getTransactions().size());
+		for (int i = 0; i < expected.getTransactions().size(); i++) {
+			assertTransactionEquals(expected.getTransactions().get(i), actual.getTransactions().get(i));
+		}
+	}
+
+	private static void assertTransactionEquals(Transaction expected, Transaction actual) {
+		Assert.assertArrayEquals(expected.getHash(), actual.getHash());
+		Assert.assertEquals(expected.getText(), actual.getText());
+		Assert.assertArrayEquals(expected.getSenderHash(), actual.getSenderHash());
+		Assert.assertArrayEquals(expected.getSignature(), actual.getSignature());
+		Assert.assertEquals(expected.getTimestamp(), actual.getTimestamp());
+	}
+
+	private static void assertRejected(byte[] data, Class<?> type) {
+		try {
+			BinaryCodec.decode(data, type);
+			Assert.fail("Decoding should fail");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
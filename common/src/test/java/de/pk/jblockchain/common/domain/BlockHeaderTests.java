@@ -0,0 +1,71 @@
+package de.pk.jblockchain.common.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pk.jblockchain.common.hash.HashEngine;
+
+public class BlockHeaderTests {
+
+	private static final long BLOCK_INTERVAL = 60000;
+	private static final int RETARGET_WINDOW = 16;
+
+	@Test
+	public void rejectValidHashWithoutWork() throws Exception {
+		List<Transaction> transactions = generateTransactions();
+		// a correct hash, but no leading zero byte
+		Block block;
+		long nonce = 0;
+		do {
+			block = new Block(null, transactions, nonce++, HashEngine.VERSION_SCRYPT);
+		} while (block.getHash()[0] == 0);
+		BlockHeader header = new BlockHeader(block);
+
+		Assert.assertArrayEquals(header.getHash(), header.calculateHash());
+		Assert.assertTrue(header.meetsTarget(0));
+		Assert.assertFalse(header.meetsTarget(1));
+		Assert.assertEquals(0, BlockHeader.verifyChain(Collections.singletonList(header), 1, BLOCK_INTERVAL,
+				RETARGET_WINDOW));
+
+		BlockHeader mined = new BlockHeader(mine(null, HashEngine.VERSION_SCRYPT, 0));
+		Assert.assertTrue(mined.meetsTarget(1));
+		Assert.assertEquals(1, BlockHeader.verifyChain(Collections.singletonList(mined), 1, BLOCK_INTERVAL,
+				RETARGET_WINDOW));
+	}
+
+	@Test
+	public void rejectTargetNotRetargeted() throws Exception {
+		List<BlockHeader> chain = new ArrayList<>();
+		for (int height = 0; height < 3; height++) {
+			byte[] previousBlockHash = height > 0 ? chain.get(height - 1).getHash() : null;
+			int bits = Target.nextBits(chain, BLOCK_INTERVAL, 1);
+			chain.add(new BlockHeader(mine(previousBlockHash, HashEngine.VERSION_TARGET, bits)));
+		}
+		Assert.assertEquals(3, BlockHeader.verifyChain(chain, 1, BLOCK_INTERVAL, RETARGET_WINDOW));
+
+		// meets its own, easier target, but not the one of the chain
+		Block easy = mine(chain.get(1).getHash(), HashEngine.VERSION_TARGET, Target.toBits(Target.MAX));
+		Assert.assertTrue(new BlockHeader(easy).meetsTarget(1));
+		Assert.assertEquals(2, BlockHeader.verifyChain(Arrays.asList(chain.get(0), chain.get(1), new BlockHeader(easy)),
+				1, BLOCK_INTERVAL, RETARGET_WINDOW));
+	}
+
+	private Block mine(byte[] previousBlockHash, int version, int bits) throws Exception {
+		List<Transaction> transactions = generateTransactions();
+		for (long nonce = 0;; nonce++) {
+			Block block = new Block(previousBlockHash, transactions, nonce, version, bits);
+			if (new BlockHeader(block).meetsTarget(1)) {
+				return block;
+			}
+		}
+	}
+
+	private List<Transaction> generateTransactions() {
+		return Collections.singletonList(new Transaction("Hello", new byte[32], new byte[46]));
+	}
+}
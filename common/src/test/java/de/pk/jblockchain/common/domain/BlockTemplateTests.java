@@ -0,0 +1,88 @@
+package de.pk.jblockchain.common.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class BlockTemplateTests {
+
+	@Test
+	public void hashEqualsBlockHash() throws Exception {
+		List<Transaction> transactions = generateTransactions(5);
+		assertSameHashes(null, transactions);
+		assertSameHashes(new byte[32], transactions);
+		assertSameHashes(new byte[32], generateTransactions(1));
+	}
+
+	@Test
+	public void hasherIsReusable() throws Exception {
+		BlockTemplate template = new BlockTemplate(new byte[32], generateTransactions(2), 42);
+		BlockTemplate.Hasher hasher = template.newHasher();
+		byte[] first = hasher.hash(7);
+		hasher.hash(Long.MAX_VALUE);
+		Assert.assertArrayEquals(first, hasher.hash(7));
+		Assert.assertArrayEquals(first, template.newHasher().hash(7));
+	}
+
+	/**
+	 * Nonce attempts per second of a new Block per nonce compared to a reused
+	 * BlockTemplate. Takes a while, run manually.
+	 */
+	@Ignore
+	@Test
+	public void compareAttemptsPerSecond() throws Exception {
+		for (int transactionCount : new int[] { 1, 10, 100 }) {
+			List<Transaction> transactions = generateTransactions(transactionCount);
+			for (int warmup = 0; warmup < 2; warmup++) {
+				int attempts = 0;
+				long start = System.nanoTime();
+				long end = start + 2000000000L;
+				while (System.nanoTime() < end) {
+					new Block(new byte[32], transactions, attempts++);
+				}
+				long block = attempts * 1000000000L / (System.nanoTime() - start);
+
+				attempts = 0;
+				start = System.nanoTime();
+				end = start + 2000000000L;
+				BlockTemplate.Hasher hasher = new BlockTemplate(new byte[32], transactions).newHasher();
+				while (System.nanoTime() < end) {
+					hasher.hash(attempts++);
+				}
+				long template = attempts * 1000000000L / (System.nanoTime() - start);
+
+				System.out.println(transactionCount + " transactions: new Block " + block
+						+ " attempts/s, BlockTemplate " + template + " attempts/s");
+			}
+		}
+	}
+
+	private void assertSameHashes(byte[] previousBlockHash, List<Transaction> transactions) throws Exception {
+		BlockTemplate template = new BlockTemplate(previousBlockHash, transactions, 42);
+		BlockTemplate.Hasher hasher = template.newHasher();
+		for (long tries : new long[] { 0, 1, 255, 256, 8908926, -1 }) {
+			Block block = new Block(previousBlockHash, transactions, tries);
+			block.setTimestamp(42);
+			block.setHash(block.calculateHash());
+
+			byte[] hash = hasher.hash(tries);
+			Assert.assertArrayEquals(block.getHash(), hash);
+			Block found = template.toBlock(tries, hash);
+			Assert.assertEquals(block, found);
+			Assert.assertArrayEquals(block.getMerkleRoot(), found.getMerkleRoot());
+			Assert.assertArrayEquals(found.getHash(), found.calculateHash());
+			Assert.assertEquals(block.getLeadingZerosCount(), BlockTemplate.getLeadingZerosCount(hash));
+		}
+	}
+
+	private List<Transaction> generateTransactions(int count) {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			transactions.add(new Transaction("Hello " + i, new byte[32], new byte[46]));
+		}
+		return transactions;
+	}
+}
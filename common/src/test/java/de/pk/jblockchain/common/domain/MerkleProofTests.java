@@ -0,0 +1,63 @@
+package de.pk.jblockchain.common.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pk.jblockchain.common.hash.HashEngine;
+
+public class MerkleProofTests {
+
+	@Test
+	public void verifyEveryTransaction() throws Exception {
+		MerkleTree tree = new MerkleTree(1024);
+		for (int count = 1; count <= 7; count++) {
+			Block block = generateBlock(count);
+			BlockHeader header = new BlockHeader(block);
+			for (Transaction transaction : block.getTransactions()) {
+				MerkleProof proof = createProof(tree, block, transaction.getHash());
+				Assert.assertTrue(proof.verify(header));
+			}
+		}
+	}
+
+	@Test
+	public void rejectInvalidProof() throws Exception {
+		MerkleTree tree = new MerkleTree(1024);
+		Block block = generateBlock(5);
+		BlockHeader header = new BlockHeader(block);
+		byte[] transactionHash = block.getTransactions().get(2).getHash();
+
+		Assert.assertNull(tree.calculatePath(HashEngine.forVersion(block.getVersion()), block.getTransactions(), new byte[32]));
+
+		MerkleProof otherTransaction = createProof(tree, block, transactionHash);
+		otherTransaction.setTransactionHash(block.getTransactions().get(3).getHash());
+		Assert.assertFalse(otherTransaction.verify(header));
+
+		MerkleProof otherSide = createProof(tree, block, transactionHash);
+		otherSide.getPath().get(0).setLeft(!otherSide.getPath().get(0).isLeft());
+		Assert.assertFalse(otherSide.verify(header));
+
+		MerkleProof forgedHeader = createProof(tree, block, transactionHash);
+		header.setTries(header.getTries() + 1);
+		Assert.assertFalse(forgedHeader.verify(header));
+	}
+
+	private MerkleProof createProof(MerkleTree tree, Block block, byte[] transactionHash) throws Exception {
+		MerkleProof proof = new MerkleProof();
+		proof.setTransactionHash(transactionHash);
+		proof.setBlockHash(block.getHash());
+		proof.setPath(tree.calculatePath(HashEngine.forVersion(block.getVersion()), block.getTransactions(), transactionHash));
+		return proof;
+	}
+
+	private Block generateBlock(int transactionCount) throws Exception {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < transactionCount; i++) {
+			transactions.add(new Transaction("Hello " + i, new byte[32], new byte[46]));
+		}
+		return new Block(new byte[32], transactions, 42);
+	}
+}
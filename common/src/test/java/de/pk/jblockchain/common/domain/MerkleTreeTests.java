@@ -0,0 +1,114 @@
+package de.pk.jblockchain.common.domain;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.pk.jblockchain.common.hash.HashEngine;
+
+public class MerkleTreeTests {
+
+	private static final HashEngine ENGINE = engine();
+
+	@Test
+	public void rootEqualsBlockMerkleRoot() throws Exception {
+		MerkleTree tree = new MerkleTree(1024);
+		Assert.assertNull(tree.calculateRoot(ENGINE, Collections.emptyList()));
+		for (int count = 1; count <= 9; count++) {
+			List<Transaction> transactions = generateTransactions(count);
+			Assert.assertArrayEquals(calculateMerkleRoot(transactions), tree.calculateRoot(ENGINE, transactions));
+		}
+	}
+
+	@Test
+	public void reuseUnchangedNodes() throws Exception {
+		MerkleTree tree = new MerkleTree(1024);
+		List<Transaction> transactions = generateTransactions(8);
+		tree.calculateRoot(ENGINE, transactions);
+		Assert.assertEquals(7L, (long) tree.getStatistics().get("misses"));
+
+		// the same Transactions again, all nodes are cached
+		tree.calculateRoot(ENGINE, transactions);
+		Assert.assertEquals(7L, (long) tree.getStatistics().get("misses"));
+
+		// replacing the last Transaction changes one path of three nodes
+		transactions.set(7, new Transaction("Replaced", new byte[32], new byte[46]));
+		Assert.assertArrayEquals(calculateMerkleRoot(transactions), tree.calculateRoot(ENGINE, transactions));
+		Assert.assertEquals(10L, (long) tree.getStatistics().get("misses"));
+	}
+
+	@Test
+	public void dropUnusedNodes() throws Exception {
+		MerkleTree tree = new MerkleTree(4);
+		List<Transaction> transactions = generateTransactions(8);
+		tree.calculateRoot(ENGINE, transactions.subList(0, 4));
+		tree.calculateRoot(ENGINE, transactions.subList(4, 8));
+		tree.calculateRoot(ENGINE, transactions.subList(4, 8));
+		Assert.assertEquals(3L, (long) tree.getStatistics().get("nodes"));
+		Assert.assertArrayEquals(calculateMerkleRoot(transactions.subList(0, 4)),
+				tree.calculateRoot(ENGINE, transactions.subList(0, 4)));
+	}
+
+	@Test
+	public void removalAtHeadHashesShiftedPairs() throws Exception {
+		MerkleTree tree = new MerkleTree(1024);
+		List<Transaction> transactions = generateTransactions(8);
+		tree.calculateRoot(ENGINE, transactions);
+		Assert.assertEquals(7L, (long) tree.getStatistics().get("misses"));
+
+		// removing the last Transaction keeps the three pairs of leaves, only
+		// the three nodes above them are hashed again
+		tree.calculateRoot(ENGINE, transactions.subList(0, 7));
+		Assert.assertEquals(10L, (long) tree.getStatistics().get("misses"));
+
+		// removing the first Transaction shifts every pair, all six nodes
+		// are hashed again
+		List<Transaction> tail = transactions.subList(1, 8);
+		Assert.assertArrayEquals(calculateMerkleRoot(tail), tree.calculateRoot(ENGINE, tail));
+		Assert.assertEquals(16L, (long) tree.getStatistics().get("misses"));
+	}
+
+	@Test
+	public void pathWithRepeatedPairs() throws Exception {
+		MerkleTree tree = new MerkleTree(1024);
+		Transaction a = new Transaction("A", new byte[32], new byte[46]);
+		Transaction b = new Transaction("B", new byte[32], new byte[46]);
+		Transaction c = new Transaction("C", new byte[32], new byte[46]);
+		// both pairs of a and b share one cached node
+		List<Transaction> transactions = Arrays.asList(a, b, a, b, c, c);
+		byte[] root = tree.calculateRoot(ENGINE, transactions);
+		for (Transaction transaction : Arrays.asList(a, b, c)) {
+			MerkleProof proof = new MerkleProof();
+			proof.setTransactionHash(transaction.getHash());
+			proof.setPath(tree.calculatePath(ENGINE, transactions, transaction.getHash()));
+			Assert.assertArrayEquals(root, proof.calculateMerkleRoot(ENGINE));
+		}
+	}
+
+	private static HashEngine engine() {
+		try {
+			return HashEngine.forVersion(HashEngine.VERSION_SCRYPT);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private byte[] calculateMerkleRoot(List<Transaction> transactions) throws Exception {
+		Block block = new Block();
+		block.setTransactions(transactions);
+		return block.calculateMerkleRoot();
+	}
+
+	private List<Transaction> generateTransactions(int count) {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			transactions.add(new Transaction("Hello " + i, new byte[32], new byte[46]));
+		}
+		return transactions;
+	}
+}
@@ -0,0 +1,70 @@
+package de.pk.jblockchain.common.domain;
+
+import java.math.BigInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TargetTests {
+
+	@Test
+	public void compactRoundTrip() {
+		Assert.assertEquals(BigInteger.valueOf(0xffff).shiftLeft(8 * 26), Target.fromBits(0x1d00ffff));
+		Assert.assertEquals(0x1d00ffff, Target.toBits(Target.fromBits(0x1d00ffff)));
+		Assert.assertEquals(0x1b0404cb, Target.toBits(Target.fromBits(0x1b0404cb)));
+		Assert.assertEquals(0x01120000, Target.toBits(BigInteger.valueOf(0x12)));
+		Assert.assertEquals(0x02008000, Target.toBits(BigInteger.valueOf(0x80)));
+
+		// rounded down to three significant bytes, never above MAX
+		BigInteger target = new BigInteger("123456789abcdef", 16);
+		Assert.assertEquals(new BigInteger("123450000000000", 16), Target.fromBits(Target.toBits(target)));
+		Assert.assertTrue(Target.fromBits(Target.toBits(Target.MAX)).compareTo(Target.MAX) <= 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectNegativeTarget() {
+		Target.fromBits(0x1d800000);
+	}
+
+	@Test
+	public void meetsBitByBit() {
+		byte[] target = Target.toBytes(Target.MAX.shiftRight(9));
+		byte[] hash = target.clone();
+		Assert.assertTrue(Target.meets(hash, target));
+		hash[1] = (byte) 0x80;
+		Assert.assertFalse(Target.meets(hash, target));
+		hash[1] = 0x7f;
+		hash[31] = 0;
+		Assert.assertTrue(Target.meets(hash, target));
+		Assert.assertFalse(Target.meets(new byte[31], target));
+	}
+
+	@Test
+	public void leadingZeroBytesAsTarget() {
+		byte[] target = Target.fromLeadingZeroBytes(2);
+		byte[] hash = new byte[32];
+		for (int value : new int[] { 0, 1, 0x80, 0xff }) {
+			for (int position = 0; position < 4; position++) {
+				hash[position] = (byte) value;
+				Assert.assertEquals(BlockTemplate.getLeadingZerosCount(hash) >= 2, Target.meets(hash, target));
+				hash[position] = 0;
+			}
+		}
+	}
+
+	@Test
+	public void retargetToBlockInterval() {
+		int bits = 0x1e00ffff;
+		Assert.assertEquals(bits, Target.retarget(bits, 60000, 60000));
+
+		// Blocks came twice as slow, the target doubles
+		Assert.assertEquals(Target.fromBits(bits).shiftLeft(1), Target.fromBits(Target.retarget(bits, 120000, 60000)));
+
+		// at most by a factor of 4 in both directions
+		Assert.assertEquals(Target.fromBits(bits).shiftLeft(2), Target.fromBits(Target.retarget(bits, 6000000, 60000)));
+		Assert.assertEquals(Target.fromBits(bits).shiftRight(2), Target.fromBits(Target.retarget(bits, 0, 60000)));
+
+		// never easier than every hash
+		Assert.assertEquals(Target.toBits(Target.MAX), Target.retarget(Target.toBits(Target.MAX), 240000, 60000));
+	}
+}
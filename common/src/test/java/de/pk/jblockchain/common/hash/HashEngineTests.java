@@ -0,0 +1,111 @@
+package de.pk.jblockchain.common.hash;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockHeader;
+import de.pk.jblockchain.common.domain.BlockTemplate;
+import de.pk.jblockchain.common.domain.Transaction;
+
+public class HashEngineTests {
+
+	@Test
+	public void legacyVersionIsDefault() throws Exception {
+		Assert.assertEquals(HashEngine.VERSION_SCRYPT, HashEngine.getDefaultVersion());
+		Block block = new Block(new byte[32], generateTransactions(3), 42);
+		Assert.assertEquals(HashEngine.VERSION_SCRYPT, block.getVersion());
+	}
+
+	@Test
+	public void versionChangesHashes() throws Exception {
+		List<Transaction> transactions = generateTransactions(3);
+		Block legacy = generateBlock(HashEngine.VERSION_SCRYPT, transactions);
+		Block block = generateBlock(HashEngine.VERSION_SHA256_MERKLE, transactions);
+
+		Assert.assertFalse(Arrays.equals(legacy.getMerkleRoot(), block.getMerkleRoot()));
+		Assert.assertFalse(Arrays.equals(legacy.getHash(), block.getHash()));
+
+		// the version is part of the hashed header
+		byte[] header = HashEngine.forVersion(HashEngine.VERSION_SHA256_MERKLE).header(block.getPreviousBlockHash(),
+				block.getMerkleRoot(), block.getTries(), block.getTimestamp(), 0);
+		byte[] legacyHeader = HashEngine.forVersion(HashEngine.VERSION_SCRYPT).header(block.getPreviousBlockHash(),
+				block.getMerkleRoot(), block.getTries(), block.getTimestamp(), 0);
+		Assert.assertArrayEquals(legacyHeader, Arrays.copyOf(header, legacyHeader.length));
+		Assert.assertEquals(HashEngine.VERSION_SHA256_MERKLE, header[header.length - 1]);
+
+		// transaction ids do not depend on the version
+		Assert.assertEquals(legacy.getTransactions(), block.getTransactions());
+	}
+
+	@Test
+	public void templateAndHeaderUseBlockVersion() throws Exception {
+		List<Transaction> transactions = generateTransactions(4);
+		Block block = generateBlock(HashEngine.VERSION_SHA256_MERKLE, transactions);
+
+		BlockTemplate template = new BlockTemplate(HashEngine.VERSION_SHA256_MERKLE, block.getPreviousBlockHash(),
+				transactions, block.getMerkleRoot(), block.getTimestamp());
+		byte[] hash = template.newHasher().hash(block.getTries());
+		Assert.assertArrayEquals(block.getHash(), hash);
+		Assert.assertEquals(HashEngine.VERSION_SHA256_MERKLE, template.toBlock(block.getTries(), hash).getVersion());
+
+		BlockHeader header = new BlockHeader(block);
+		Assert.assertEquals(HashEngine.VERSION_SHA256_MERKLE, header.getVersion());
+		Assert.assertArrayEquals(block.getHash(), header.calculateHash());
+	}
+
+	@Test(expected = NoSuchAlgorithmException.class)
+	public void rejectUnknownVersion() throws Exception {
+		Assert.assertFalse(HashEngine.isSupported(-1));
+		HashEngine.forVersion(-1);
+	}
+
+	/**
+	 * Cost of verifying the hashes of a Block, its Merkle root and the proof of
+	 * work hash of its header, for every engine version. Takes a while, run
+	 * manually.
+	 */
+	@Ignore
+	@Test
+	public void compareVerificationCost() throws Exception {
+		for (int transactionCount : new int[] { 1, 10, 100, 1000 }) {
+			List<Transaction> transactions = generateTransactions(transactionCount);
+			for (HashEngine engine : HashEngine.getEngines().values()) {
+				Block block = generateBlock(engine.getVersion(), transactions);
+				for (int warmup = 0; warmup < 2; warmup++) {
+					int verified = 0;
+					long start = System.nanoTime();
+					long end = start + 2000000000L;
+					while (System.nanoTime() < end) {
+						block.calculateMerkleRoot();
+						block.calculateHash();
+						verified++;
+					}
+					long micros = (System.nanoTime() - start) / 1000 / verified;
+					System.out.println(transactionCount + " transactions, " + engine + ": " + micros + " us/block");
+				}
+			}
+		}
+	}
+
+	private Block generateBlock(int version, List<Transaction> transactions) throws Exception {
+		Block block = new Block(new byte[32], transactions, 42, version);
+		block.setTimestamp(42);
+		block.setHash(block.calculateHash());
+		return block;
+	}
+
+	private List<Transaction> generateTransactions(int count) {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			transactions.add(new Transaction("Hello " + i, new byte[32], new byte[46]));
+		}
+		return transactions;
+	}
+}
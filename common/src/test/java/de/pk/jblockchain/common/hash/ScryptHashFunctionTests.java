@@ -0,0 +1,92 @@
+package de.pk.jblockchain.common.hash;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.lambdaworks.crypto.SCrypt;
+
+public class ScryptHashFunctionTests {
+
+	@Test
+	public void equalsLambdaworks() throws Exception {
+		Random random = new Random(42);
+		byte[] salt = new byte[16];
+		random.nextBytes(salt);
+		int[][] parameters = { { 256, 4, 2, 32 }, { 2, 1, 1, 32 }, { 16, 1, 3, 17 }, { 1024, 8, 1, 64 },
+				{ 64, 2, 2, 100 } };
+		for (int[] p : parameters) {
+			ScryptHashFunction function = new ScryptHashFunction(p[0], p[1], p[2], p[3], salt);
+			for (int length : new int[] { 1, 32, 64, 65, 80, 200 }) {
+				byte[] data = new byte[length];
+				random.nextBytes(data);
+				byte[] expected = SCrypt.scryptJ(data, salt, p[0], p[1], p[2], p[3]);
+				Assert.assertArrayEquals(expected, function.hash(data));
+				Assert.assertArrayEquals(expected, SCrypt.scrypt(data, salt, p[0], p[1], p[2], p[3]));
+			}
+		}
+	}
+
+	@Test
+	public void hashIntoBuffer() throws Exception {
+		ScryptHashFunction function = new ScryptHashFunction(256, 4, 2, 32, new byte[16]);
+		byte[] out = new byte[function.getLength()];
+		function.hash(new byte[] { 1, 2, 3 }, out);
+		Assert.assertArrayEquals(function.hash(new byte[] { 1, 2, 3 }), out);
+
+		// the scratch buffers of the last hash do not leak into the next one
+		function.hash(new byte[100], out);
+		Assert.assertArrayEquals(SCrypt.scryptJ(new byte[100], new byte[16], 256, 4, 2, 32), out);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectInvalidCpuCost() {
+		new ScryptHashFunction(100, 4, 2, 32, new byte[16]);
+	}
+
+	/**
+	 * Bytes allocated and hashes per second of lambdaworks compared to reused
+	 * scratch buffers, with the parameters of application.properties. Takes a
+	 * while, run manually.
+	 */
+	@Ignore
+	@Test
+	public void compareAllocationPerHash() throws Exception {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		byte[] salt = new byte[16];
+		byte[] header = new byte[80];
+		ScryptHashFunction function = new ScryptHashFunction(256, 4, 2, 32, salt);
+		byte[] out = new byte[32];
+		for (int warmup = 0; warmup < 3; warmup++) {
+			int hashes = 0;
+			long allocated = threads.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			long end = start + 2000000000L;
+			while (System.nanoTime() < end) {
+				header[0] = (byte) hashes++;
+				SCrypt.scryptJ(header, salt, 256, 4, 2, 32);
+			}
+			long lambdaworksBytes = (threads.getThreadAllocatedBytes(threadId) - allocated) / hashes;
+			long lambdaworksRate = hashes * 1000000000L / (System.nanoTime() - start);
+
+			hashes = 0;
+			allocated = threads.getThreadAllocatedBytes(threadId);
+			start = System.nanoTime();
+			end = start + 2000000000L;
+			while (System.nanoTime() < end) {
+				header[0] = (byte) hashes++;
+				function.hash(header, out);
+			}
+			long scratchBytes = (threads.getThreadAllocatedBytes(threadId) - allocated) / hashes;
+			long scratchRate = hashes * 1000000000L / (System.nanoTime() - start);
+
+			System.out.println("lambdaworks " + lambdaworksBytes + " bytes/hash " + lambdaworksRate
+					+ " hashes/s, scratch buffers " + scratchBytes + " bytes/hash " + scratchRate + " hashes/s");
+		}
+	}
+}
@@ -0,0 +1,308 @@
+package de.pk.jblockchain.node;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.pk.jblockchain.common.domain.Address;
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockHeader;
+import de.pk.jblockchain.common.domain.Node;
+import de.pk.jblockchain.node.service.AddressService;
+import de.pk.jblockchain.node.service.BlockService;
+import de.pk.jblockchain.node.service.CheckpointService;
+import de.pk.jblockchain.node.service.NodeService;
+import de.pk.jblockchain.node.service.TransactionService;
+import de.pk.jblockchain.node.storage.AtomicFiles;
+import de.pk.jblockchain.node.storage.BlockStore;
+import de.pk.jblockchain.node.storage.Checkpoint;
+import de.pk.jblockchain.node.storage.TransactionLog;
+
+/**
+ * Loads all stores into the services once the context is refreshed. The
+ * stores are read in parallel, only the checkpoint has to be read before the
+ * stores it covers. The Blocks appended after the checkpoint, or all Blocks
+ * if fullValidation is set, are validated afterwards, when the Addresses
+ * needed for the signatures are known. The Node does not start on an invalid
+ * chain or a BlockStore which can not be loaded, the other stores are
+ * optional. The embedded servlet container opens its port after the refresh,
+ * so no request is served before loading finished.
+ */
+@Component
+public class StartupLoader implements ApplicationListener<ContextRefreshedEvent> {
+
+	private final static Logger LOG = LoggerFactory.getLogger(StartupLoader.class);
+
+	@Value("${storage.path}")
+	private String storePath;
+
+	@Value("${blockchain.validation.fullOnStartup}")
+	private boolean fullValidation;
+
+	private final AddressService addressService;
+	private final BlockService blockService;
+	private final NodeService nodeService;
+	private final TransactionService transactionService;
+	private final CheckpointService checkpointService;
+	private final BlockStore blockStore;
+	private final TransactionLog transactionLog;
+	private final ObjectMapper mapper;
+
+	private final AtomicBoolean started = new AtomicBoolean(false);
+
+	/**
+	 * Number of Blocks covered by the checkpoint, they were validated before
+	 * they were appended
+	 */
+	private volatile long checkpointHeight;
+	private final Map<String, Long> loadTimes = Collections.synchronizedMap(new LinkedHashMap<>());
+
+	/**
+	 * Loads a single store
+	 */
+	private interface StoreLoader {
+		void load() throws IOException;
+	}
+
+	@Autowired
+	public StartupLoader(AddressService addressService, BlockService blockService, NodeService nodeService,
+			TransactionService transactionService, CheckpointService checkpointService, BlockStore blockStore,
+			TransactionLog transactionLog, ObjectMapper mapper) {
+		this.addressService = addressService;
+		this.blockService = blockService;
+		this.nodeService = nodeService;
+		this.transactionService = transactionService;
+		this.checkpointService = checkpointService;
+		this.blockStore = blockStore;
+		this.transactionLog = transactionLog;
+		this.mapper = mapper;
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		if (!started.compareAndSet(false, true)) {
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			Files.createDirectories(storeDirectory());
+			// drop files of writes which did not finish before a crash
+			AtomicFiles.recover(storeDirectory());
+			AtomicFiles.recover(storeDirectory().resolve("blocks"));
+		} catch (IOException e) {
+			LOG.error("Could not prepare path " + storeDirectory(), e);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4, runnable -> {
+			Thread thread = new Thread(runnable, "startup-loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			CompletableFuture<Checkpoint> checkpoint = CompletableFuture.supplyAsync(() -> {
+				long checkpointStart = System.nanoTime();
+				Checkpoint restored = checkpointService.restore();
+				loadTimes.put("checkpoint", (System.nanoTime() - checkpointStart) / 1000000);
+				return restored;
+			}, executor);
+			CompletableFuture.allOf(
+					checkpoint.thenAcceptAsync(restored -> load("address", () -> loadAddresses(restored)), executor),
+					checkpoint.thenAcceptAsync(restored -> loadRequired("block", () -> loadBlocks(restored)),
+							executor),
+					checkpoint.thenAcceptAsync(restored -> load("transaction", () -> loadTransactions(restored)),
+							executor),
+					CompletableFuture.runAsync(() -> load("node", this::loadNodes), executor)).join();
+		} catch (CompletionException e) {
+			// the Node does not start without its chain
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		} finally {
+			executor.shutdown();
+		}
+		// signatures can only be checked once all Addresses are loaded
+		long validationStart = System.nanoTime();
+		validateBlocks();
+		loadTimes.put("validation", (System.nanoTime() - validationStart) / 1000000);
+		LOG.info("Loaded all stores in " + (System.nanoTime() - start) / 1000000 + " ms, per store in ms: "
+				+ loadTimes);
+	}
+
+	/**
+	 * Time it took to load each store at startup
+	 *
+	 * @return milliseconds by store name
+	 */
+	public Map<String, Long> getLoadTimes() {
+		synchronized (loadTimes) {
+			return new LinkedHashMap<>(loadTimes);
+		}
+	}
+
+	private void load(String name, StoreLoader loader) {
+		long start = System.nanoTime();
+		try {
+			loader.load();
+		} catch (IOException e) {
+			LOG.warn("Unable to load " + name + " store: " + e.getMessage());
+		} catch (RuntimeException e) {
+			LOG.error("Unable to load " + name + " store", e);
+		}
+		loadTimes.put(name, (System.nanoTime() - start) / 1000000);
+	}
+
+	/**
+	 * Load a store the Node can not run without
+	 *
+	 * @throws IllegalStateException
+	 *             if the store can not be loaded
+	 */
+	private void loadRequired(String name, StoreLoader loader) {
+		long start = System.nanoTime();
+		try {
+			loader.load();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to load " + name + " store", e);
+		} finally {
+			loadTimes.put(name, (System.nanoTime() - start) / 1000000);
+		}
+	}
+
+	private void loadAddresses(Checkpoint checkpoint) throws IOException {
+		if (addressService.load() > 0) {
+			return;
+		}
+		// migrate Addresses stored by older versions
+		if (checkpoint != null) {
+			addressService.init(checkpoint.getAddresses());
+		}
+		Path legacyFile = storeDirectory().resolve("address.json.gz");
+		if (Files.exists(legacyFile)) {
+			try {
+				addressService.init(readGzip(legacyFile, new TypeReference<Map<String, Address>>() {
+				}).values());
+				Files.move(legacyFile, legacyFile.resolveSibling("address.json.gz.imported"));
+			} catch (IOException e) {
+				LOG.warn("Unable to import addresses from " + legacyFile + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private void loadBlocks(Checkpoint checkpoint) throws IOException {
+		if (blockStore.isEmpty()) {
+			importLegacyBlockchain();
+		}
+		// only replay the Blocks appended after the last checkpoint
+		long height = checkpoint != null ? blockStore.load(checkpoint.getHeight(), checkpoint.getTipHash())
+				: blockStore.load(0, null);
+		blockService.init(height > 0 ? blockStore.read(height - 1) : null);
+		if (checkpoint != null && checkpoint.getHeight() > 0 && checkpoint.getHeight() <= height) {
+			BlockHeader tip = blockService.getHeader(checkpoint.getHeight() - 1);
+			if (tip != null && Arrays.equals(tip.getHash(), checkpoint.getTipHash())) {
+				checkpointHeight = checkpoint.getHeight();
+			}
+		}
+	}
+
+	/**
+	 * Validate the Blocks behind the checkpoint, or all Blocks if
+	 * fullValidation is set
+	 *
+	 * @throws IllegalStateException
+	 *             if a Block is invalid or unreadable, so the Node neither
+	 *             serves nor extends the chain
+	 */
+	private void validateBlocks() {
+		long fromHeight = fullValidation ? 0 : checkpointHeight;
+		long height;
+		long validHeight;
+		try {
+			height = blockService.getHeight();
+			validHeight = blockService.validateChain(fromHeight);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to validate block store", e);
+		}
+		if (validHeight < height) {
+			throw new IllegalStateException("Block store is invalid from height " + validHeight + " of " + height
+					+ ", check or remove the blocks behind it");
+		}
+	}
+
+	/**
+	 * Move a blockchain.json.gz written by older versions into the BlockStore
+	 * and keep the file as backup. Older versions could leave a truncated file
+	 * behind when they crashed while saving, all Blocks before the damage are
+	 * imported.
+	 */
+	private void importLegacyBlockchain() throws IOException {
+		Path legacyFile = storeDirectory().resolve("blockchain.json.gz");
+		if (!Files.exists(legacyFile)) {
+			return;
+		}
+		List<Block> blocks = new ArrayList<>();
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(legacyFile), 65536);
+				MappingIterator<Block> iterator = mapper.readerFor(Block.class).readValues(in)) {
+			while (iterator.hasNext()) {
+				blocks.add(iterator.next());
+			}
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Legacy blockchain " + legacyFile + " is damaged after " + blocks.size() + " blocks: "
+					+ e.getMessage());
+		}
+		for (Block block : blocks) {
+			blockStore.append(block);
+		}
+		Files.move(legacyFile, legacyFile.resolveSibling("blockchain.json.gz.imported"));
+		LOG.info("Imported " + blocks.size() + " blocks from " + legacyFile);
+	}
+
+	private void loadTransactions(Checkpoint checkpoint) throws IOException {
+		if (checkpoint != null && checkpoint.isClean() && transactionLog.resume()) {
+			transactionService.init(new LinkedHashSet<>(checkpoint.getTransactions()));
+		} else {
+			transactionService.init(transactionLog.load());
+		}
+	}
+
+	private void loadNodes() throws IOException {
+		Set<Node> nodes = readGzip(storeDirectory().resolve("node.json.gz"), new TypeReference<Set<Node>>() {
+		});
+		nodeService.init(nodes);
+	}
+
+	private <T> T readGzip(Path file, TypeReference<T> typeReference) throws IOException {
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(file), 65536)) {
+			return mapper.readValue(in, typeReference);
+		}
+	}
+
+	private Path storeDirectory() {
+		return Paths.get(System.getProperty("user.home") + this.storePath);
+	}
+}
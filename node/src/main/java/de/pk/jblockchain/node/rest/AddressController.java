@@ -1,5 +1,6 @@
 package de.pk.jblockchain.node.rest;
 
+import java.io.IOException;
 import java.util.Collection;
 
 import javax.servlet.http.HttpServletResponse;
@@ -47,9 +48,10 @@ public class AddressController {
 	 * Get all Addresses this node knows
 	 *
 	 * @return JSON list of Addresses
+	 * @throws IOException
 	 */
 	@RequestMapping
-	Collection<Address> getAdresses() {
+	Collection<Address> getAdresses() throws IOException {
 		return addressService.getAll();
 	}
 
@@ -70,9 +72,7 @@ public class AddressController {
 			HttpServletResponse response) {
 		LOG.info("Add address " + Base64.encodeBase64String(address.getHash()));
 
-		if (addressService.getByHash(address.getHash()) == null) {
-			addressService.add(address);
-
+		if (addressService.add(address)) {
 			if (publish != null && publish) {
 				nodeService.broadcastPut("address", address);
 			}
@@ -0,0 +1,92 @@
+package de.pk.jblockchain.node.rest;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.StreamUtils;
+
+import de.pk.jblockchain.common.codec.BinaryCodec;
+
+/**
+ * Reads and writes Blocks, Transactions and Addresses (and Collections or
+ * arrays of them) in the binary format of BinaryCodec. Selected by content
+ * negotiation whenever a request asks for or sends BinaryCodec.MEDIA_TYPE.
+ */
+public class BinaryMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+	public static final MediaType MEDIA_TYPE = MediaType.valueOf(BinaryCodec.MEDIA_TYPE);
+
+	public BinaryMessageConverter() {
+		super(MEDIA_TYPE);
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return BinaryCodec.supports(clazz);
+	}
+
+	@Override
+	public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+		return supports(type) && canRead(mediaType);
+	}
+
+	@Override
+	public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+		return (type != null ? supports(type) : supports(clazz)) && canWrite(mediaType);
+	}
+
+	@Override
+	public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+		return readInternal(rawClass(type), inputMessage);
+	}
+
+	@Override
+	protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+		byte[] data = StreamUtils.copyToByteArray(inputMessage.getBody());
+		try {
+			return BinaryCodec.decode(data, clazz);
+		} catch (IOException e) {
+			throw new HttpMessageNotReadableException("Invalid binary content: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+		byte[] data = BinaryCodec.encode(value);
+		outputMessage.getHeaders().setContentLength(data.length);
+		outputMessage.getBody().write(data);
+	}
+
+	/**
+	 * Supported are the domain classes, arrays of them and Collections whose
+	 * element type is one of them
+	 */
+	private static boolean supports(Type type) {
+		if (type instanceof Class) {
+			return BinaryCodec.supports((Class<?>) type);
+		}
+		if (type instanceof ParameterizedType) {
+			ParameterizedType parameterizedType = (ParameterizedType) type;
+			Type[] arguments = parameterizedType.getActualTypeArguments();
+			return parameterizedType.getRawType() instanceof Class
+					&& Collection.class.isAssignableFrom((Class<?>) parameterizedType.getRawType())
+					&& arguments.length == 1 && arguments[0] instanceof Class
+					&& BinaryCodec.supports((Class<?>) arguments[0]);
+		}
+		return false;
+	}
+
+	private static Class<?> rawClass(Type type) {
+		if (type instanceof ParameterizedType) {
+			return (Class<?>) ((ParameterizedType) type).getRawType();
+		}
+		return (Class<?>) type;
+	}
+}
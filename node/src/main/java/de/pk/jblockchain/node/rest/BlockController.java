@@ -1,7 +1,10 @@
 package de.pk.jblockchain.node.rest;
 
+import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -9,6 +12,9 @@ import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -16,6 +22,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockHeader;
+import de.pk.jblockchain.common.domain.MerkleProof;
 import de.pk.jblockchain.node.service.BlockService;
 import de.pk.jblockchain.node.service.MiningService;
 import de.pk.jblockchain.node.service.NodeService;
@@ -41,44 +49,135 @@ public class BlockController {
 	 * Retrieve all Blocks in order of mine date, also known as Blockchain
 	 *
 	 * @return JSON list of Blocks
+	 * @throws IOException
 	 */
 	@RequestMapping
-	List<Block> getBlockchain() {
+	List<Block> getBlockchain() throws IOException {
 		return blockService.getBlockchain();
 	}
 
+	/**
+	 * Retrieve all Blocks from a given height on, used by Nodes which only
+	 * miss the end of the chain
+	 *
+	 * @param height
+	 *            height of the first Block
+	 * @return JSON list of Blocks
+	 * @throws IOException
+	 */
+	@RequestMapping(path = "from/{height}")
+	List<Block> getBlocksFrom(@PathVariable long height) throws IOException {
+		return blockService.getBlocks(height);
+	}
+
+	/**
+	 * Retrieve the headers of all Blocks from a given height on, without
+	 * their Transactions
+	 *
+	 * @param height
+	 *            height of the first Block
+	 * @return JSON list of BlockHeaders
+	 * @throws IOException
+	 */
+	@RequestMapping(path = "headers/from/{height}")
+	List<BlockHeader> getHeadersFrom(@PathVariable long height) throws IOException {
+		return blockService.getHeaders(height);
+	}
+
+	/**
+	 * Retrieve a single Block by its height, the first Block has height 0
+	 *
+	 * @param height
+	 *            position of the Block in the chain
+	 * @param response
+	 *            Status Code 404 if the chain is shorter
+	 * @return JSON Block
+	 * @throws IOException
+	 */
+	@RequestMapping(path = "height/{height}")
+	Block getBlockByHeight(@PathVariable long height, HttpServletResponse response) throws IOException {
+		Block block = blockService.getBlock(height);
+		if (block == null) {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+		}
+		return block;
+	}
+
+	/**
+	 * Retrieve a single Block by its hash
+	 *
+	 * @param hash
+	 *            Base64 encoded hash of the Block
+	 * @param response
+	 *            Status Code 404 if no Block has this hash
+	 * @return JSON Block
+	 * @throws IOException
+	 */
+	@RequestMapping(path = "hash")
+	Block getBlockByHash(@RequestParam String hash, HttpServletResponse response) throws IOException {
+		Block block = blockService.getBlockByHash(Base64.decodeBase64(hash));
+		if (block == null) {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+		}
+		return block;
+	}
+
+	/**
+	 * Prove that a Transaction is confirmed, so clients only need the headers
+	 * of the chain instead of all Blocks to check it
+	 *
+	 * @param hash
+	 *            Base64 encoded hash of the Transaction
+	 * @param response
+	 *            Status Code 404 if no Block contains the Transaction
+	 * @return JSON MerkleProof
+	 * @throws IOException
+	 */
+	@RequestMapping(path = "proof")
+	MerkleProof getProof(@RequestParam String hash, HttpServletResponse response) throws IOException {
+		try {
+			MerkleProof proof = blockService.getProof(Base64.decodeBase64(hash));
+			if (proof == null) {
+				response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			}
+			return proof;
+		} catch (GeneralSecurityException e) {
+			LOG.error("GeneralSecurityException for SCrypt hashing occured: ", e);
+			response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			return null;
+		}
+	}
+
 	/**
 	 * Add a new Block at the end of the Blockchain. It is expected that the
-	 * Block is valid, see BlockService.verify(Block) for details.
+	 * Block is valid, see BlockService.appendAsync(Block) for details. The
+	 * request thread is released while the expensive validation stages run.
 	 *
 	 * @param block
 	 *            the Block to add
 	 * @param publish
 	 *            if true, this Node is going to inform all other Nodes about
 	 *            the new Block
-	 * @param response
-	 *            Status Code 202 if Block accepted, 406 if verification fails
+	 * @return Status Code 202 if Block accepted, 406 if verification fails
 	 */
 	@RequestMapping(method = RequestMethod.PUT)
-	void addBlock(@RequestBody Block block, @RequestParam(required = false) Boolean publish,
-			HttpServletResponse response) {
+	CompletableFuture<ResponseEntity<Void>> addBlock(@RequestBody Block block,
+			@RequestParam(required = false) Boolean publish) {
 		LOG.info("Add block " + Base64.encodeBase64String(block.getHash()));
-		try {
-			boolean success = blockService.append(block);
-
-			if (success) {
-				response.setStatus(HttpServletResponse.SC_ACCEPTED);
-
-				if (publish != null && publish) {
-					nodeService.broadcastPut("block", block);
-				}
-			} else {
-				response.setStatus(HttpServletResponse.SC_NOT_ACCEPTABLE);
+		return blockService.appendAsync(block).handle((result, e) -> {
+			if (e != null) {
+				LOG.error("GeneralSecurityException for SCrypt hashing occured: ",
+						e instanceof CompletionException ? e.getCause() : e);
+				return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
 			}
-		} catch (GeneralSecurityException e) {
-			LOG.error("GeneralSecurityException for SCrypt hashing occured: ", e);
-			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-		}
+			if (!result.isValid()) {
+				return new ResponseEntity<>(HttpStatus.NOT_ACCEPTABLE);
+			}
+			if (publish != null && publish) {
+				nodeService.broadcastPut("block", block);
+			}
+			return new ResponseEntity<>(HttpStatus.ACCEPTED);
+		});
 	}
 
 	/**
@@ -0,0 +1,99 @@
+package de.pk.jblockchain.node.rest;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import de.pk.jblockchain.node.StartupLoader;
+import de.pk.jblockchain.node.service.BlockService;
+import de.pk.jblockchain.node.service.MiningService;
+import de.pk.jblockchain.node.service.TransactionService;
+import de.pk.jblockchain.node.storage.OffHeapBlockCache;
+import de.pk.jblockchain.node.storage.PersistenceScheduler;
+
+@RestController()
+@RequestMapping("metrics")
+public class MetricsController {
+
+	private final PersistenceScheduler persistenceScheduler;
+	private final StartupLoader startupLoader;
+	private final OffHeapBlockCache blockCache;
+	private final MiningService miningService;
+	private final BlockService blockService;
+	private final TransactionService transactionService;
+
+	@Autowired
+	public MetricsController(PersistenceScheduler persistenceScheduler, StartupLoader startupLoader,
+			OffHeapBlockCache blockCache, MiningService miningService, BlockService blockService,
+			TransactionService transactionService) {
+		this.persistenceScheduler = persistenceScheduler;
+		this.startupLoader = startupLoader;
+		this.blockCache = blockCache;
+		this.miningService = miningService;
+		this.blockService = blockService;
+		this.transactionService = transactionService;
+	}
+
+	/**
+	 * Get flush statistics of the background writer
+	 *
+	 * @return JSON map of store name -> pending changes and flush latency
+	 */
+	@RequestMapping("persistence")
+	Map<String, Map<String, Object>> getPersistenceMetrics() {
+		return persistenceScheduler.getStatistics();
+	}
+
+	/**
+	 * Get the time each store took to load at startup
+	 *
+	 * @return JSON map of store name -> load time in ms
+	 */
+	@RequestMapping("startup")
+	Map<String, Long> getStartupMetrics() {
+		return startupLoader.getLoadTimes();
+	}
+
+	/**
+	 * Get hit, miss and eviction counters of the block cache
+	 *
+	 * @return JSON map of counter name -> value
+	 */
+	@RequestMapping("cache")
+	Map<String, Object> getCacheMetrics() {
+		return blockCache.getStatistics();
+	}
+
+	/**
+	 * Get the hashrate of every mining worker and of all of them together
+	 *
+	 * @return JSON map of statistic name -> value
+	 */
+	@RequestMapping("mining")
+	Map<String, Object> getMiningMetrics() {
+		return miningService.getStatistics();
+	}
+
+	/**
+	 * Get progress and throughput of the last chain validation
+	 *
+	 * @return JSON map of statistic name -> value
+	 */
+	@RequestMapping("validation")
+	Map<String, Object> getValidationMetrics() {
+		return blockService.getValidationStatistics();
+	}
+
+	/**
+	 * Get hits, misses and hit ratio of the cached signature verifications
+	 *
+	 * @return JSON map of statistic name -> value
+	 */
+	@RequestMapping("signatures")
+	Map<String, Object> getSignatureMetrics() {
+		return transactionService.getSignatureCacheStatistics();
+	}
+
+}
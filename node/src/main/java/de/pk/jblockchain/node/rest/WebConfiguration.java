@@ -0,0 +1,20 @@
+package de.pk.jblockchain.node.rest;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+@Configuration
+public class WebConfiguration extends WebMvcConfigurerAdapter {
+
+	/**
+	 * The binary format is added behind JSON, so it is only used if a client
+	 * asks for it and browsers still get JSON
+	 */
+	@Override
+	public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+		converters.add(new BinaryMessageConverter());
+	}
+}
@@ -1,108 +1,136 @@
 package de.pk.jblockchain.node.service;
 
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.zip.GZIPOutputStream;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
 
-import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import de.pk.jblockchain.common.domain.Address;
 import de.pk.jblockchain.common.domain.Node;
+import de.pk.jblockchain.node.storage.AddressRegistry;
+import de.pk.jblockchain.node.storage.PersistenceScheduler;
 
 @Service
 public class AddressService {
 
-	@Value("${storage.path}")
-	private String storePath;
-
 	private final static Logger LOG = LoggerFactory.getLogger(AddressService.class);
 
+	private final PersistenceScheduler persistenceScheduler;
+
 	/**
-	 * Mapping of Address hash -> Address object
+	 * Persistent mapping of Address hash -> Address object
 	 */
-	private Map<String, Address> addresses = new HashMap<>();
+	private final AddressRegistry addressRegistry;
+
+	@Autowired
+	public AddressService(PersistenceScheduler persistenceScheduler, AddressRegistry addressRegistry) {
+		this.persistenceScheduler = persistenceScheduler;
+		this.addressRegistry = addressRegistry;
+	}
+
+	@PostConstruct
+	void registerStore() {
+		persistenceScheduler.register("address", this::save);
+	}
 
 	/**
 	 * Get a specific Address
 	 *
 	 * @param hash
 	 *            hash of Address
-	 * @return Matching Address for hash
+	 * @return Matching Address for hash or null if it is unknown or cannot be
+	 *         read
 	 */
 	public Address getByHash(byte[] hash) {
-		return addresses.get(Base64.encodeBase64String(hash));
+		try {
+			return addressRegistry.get(hash);
+		} catch (IOException e) {
+			LOG.error("Unable to read address", e);
+			return null;
+		}
 	}
 
 	/**
-	 * Return all Addresses from map
+	 * Is an Address with this hash known?
+	 *
+	 * @param hash
+	 *            hash of Address
+	 * @return true if the Address is registered
+	 */
+	public boolean contains(byte[] hash) {
+		try {
+			return addressRegistry.contains(hash);
+		} catch (IOException e) {
+			LOG.error("Unable to read address", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Return all Addresses in order of registration
 	 *
 	 * @return Collection of Addresses
+	 * @throws IOException
 	 */
-	public Collection<Address> getAll() {
-		return addresses.values();
+	public List<Address> getAll() throws IOException {
+		return addressRegistry.readAll();
 	}
 
 	/**
-	 * load initial values
+	 * load the AddressRegistry
 	 *
-	 * @param Map<String,
-	 *            Address>
+	 * @return number of registered Addresses
+	 * @throws IOException
 	 */
-	public void init(Map<String, Address> addresses) {
-		this.addresses = addresses;
+	public long load() throws IOException {
+		return addressRegistry.load();
 	}
 
 	/**
-	 * save values
+	 * load initial values, used to migrate Addresses stored by older versions
+	 *
+	 * @param addresses
+	 *            Addresses to register if they are unknown
+	 */
+	public void init(Collection<Address> addresses) {
+		addresses.forEach(this::add);
+	}
+
+	/**
+	 * save values, called by the PersistenceScheduler in the background.
+	 * Addresses are appended to the AddressRegistry one by one, so only
+	 * forcing them to disk is left to do.
 	 *
 	 */
 	public void save() throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		FileOutputStream fStream = null;
-		GZIPOutputStream zStream = null;
-		try {
-			fStream = new FileOutputStream(System.getProperty("user.home") + this.storePath + "address.json.gz");
-			zStream = new GZIPOutputStream(new BufferedOutputStream(fStream));
-			mapper.writeValue(zStream, this.addresses);
-
-		} finally {
-			if (zStream != null) {
-				zStream.flush();
-				zStream.close();
-			}
-			if (fStream != null) {
-				fStream.flush();
-				fStream.close();
-			}
-			System.out.println("Addresses saved!");
-		}
+		addressRegistry.force();
 	}
 
 	/**
-	 * Add a new Address to the map
+	 * Add a new Address, it is forced to disk in the background
 	 *
 	 * @param address
 	 *            Address to add
+	 * @return true if the Address was unknown and got added
 	 */
-	public synchronized void add(Address address) {
-		addresses.put(Base64.encodeBase64String(address.getHash()), address);
+	public boolean add(Address address) {
 		try {
-			this.save();
+			if (addressRegistry.add(address)) {
+				persistenceScheduler.markDirty("address");
+				return true;
+			}
 		} catch (IOException e) {
-			System.out.println("Unable to save addresses: " + e.getMessage());
+			LOG.error("Unable to save address", e);
 		}
+		return false;
 	}
 
 	/**
@@ -1,103 +1,455 @@
 package de.pk.jblockchain.node.service;
 
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.zip.GZIPOutputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import de.pk.jblockchain.common.codec.BinaryCodec;
 import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockHeader;
+import de.pk.jblockchain.common.domain.MerkleProof;
 import de.pk.jblockchain.common.domain.Node;
+import de.pk.jblockchain.common.domain.Target;
+import de.pk.jblockchain.common.domain.Transaction;
+import de.pk.jblockchain.common.hash.HashEngine;
+import de.pk.jblockchain.node.storage.BlockStore;
+import de.pk.jblockchain.node.storage.OffHeapBlockCache;
+import de.pk.jblockchain.node.storage.PersistenceScheduler;
 
 @Service
 public class BlockService {
 
-	@Value("${storage.path}")
-	private String storePath;
-
 	@Value("${blockchain.mining.maxTransactionsPerBlock}")
 	private int maxTransactionsPerBlock;
 
 	@Value("${blockchain.mining.difficulty}")
 	private int miningDifficulty;
 
+	@Value("${blockchain.mining.blockInterval}")
+	private long blockInterval;
+
+	@Value("${blockchain.mining.retargetWindow}")
+	private int retargetWindow;
+
+	@Value("${blockchain.validation.workers}")
+	private int validationWorkers;
+
+	@Value("${blockchain.validation.batchSize}")
+	private int validationBatchSize;
+
+	@Value("${storage.blocks.headerResident}")
+	private boolean headerResident;
+
+	@Value("${storage.blocks.archiveDepth}")
+	private long archiveDepth;
+
 	private final static Logger LOG = LoggerFactory.getLogger(BlockService.class);
 
 	private final TransactionService transactionService;
+	private final BlockStore blockStore;
+	private final PersistenceScheduler persistenceScheduler;
+
+	/**
+	 * Recently read Blocks with their Transactions, encoded outside of the
+	 * heap
+	 */
+	private final OffHeapBlockCache blockCache;
+	private final ApplicationEventPublisher eventPublisher;
+
+	/**
+	 * Last Block of the chain, all others are read from the BlockStore
+	 */
+	private Block lastBlock;
+
+	/**
+	 * Headers of all Blocks in order of the chain if headerResident is set,
+	 * their Transactions are read from the BlockStore on demand. They are read
+	 * from every record of the BlockStore at startup, otherwise only the tip
+	 * of the chain is loaded.
+	 */
+	private final List<BlockHeader> headers = new ArrayList<>();
+
+	/**
+	 * Stages every Block has to pass, cheap ones first
+	 */
+	private BlockValidationPipeline validationPipeline;
+
+	/**
+	 * Runs the expensive stages of Blocks received by appendAsync()
+	 */
+	private ExecutorService validationExecutor;
 
-	private List<Block> blockchain = new ArrayList<>();
+	/**
+	 * Checks chains loaded at startup or downloaded from other Nodes
+	 */
+	private ChainValidator chainValidator;
+
+	/**
+	 * Compresses sealed segments, so the PersistenceScheduler does not wait
+	 * for it
+	 */
+	private final ExecutorService archiveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "block-archiver");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final AtomicBoolean archiving = new AtomicBoolean(false);
 
 	@Autowired
-	public BlockService(TransactionService transactionService) {
+	public BlockService(TransactionService transactionService, BlockStore blockStore,
+			PersistenceScheduler persistenceScheduler, OffHeapBlockCache blockCache,
+			ApplicationEventPublisher eventPublisher) {
 		this.transactionService = transactionService;
+		this.blockStore = blockStore;
+		this.persistenceScheduler = persistenceScheduler;
+		this.blockCache = blockCache;
+		this.eventPublisher = eventPublisher;
+	}
+
+	@PostConstruct
+	void registerStore() {
+		persistenceScheduler.register("block", this::save);
+	}
+
+	@PostConstruct
+	void createValidation() {
+		int workers = validationWorkers > 0 ? validationWorkers : Runtime.getRuntime().availableProcessors();
+		AtomicInteger number = new AtomicInteger();
+		validationExecutor = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "block-validator-" + number.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		validationPipeline = new BlockValidationPipeline(validationExecutor);
+		validationPipeline.addStage("structure", false, this::verifyStructure);
+		validationPipeline.addStage("size", false, this::verifySize);
+		validationPipeline.addStage("proofOfWork", true, this::verifyProofOfWork);
+		validationPipeline.addStage("link", false, this::verifyLink);
+		validationPipeline.addStage("merkleRoot", true, this::verifyMerkleRoot);
+		validationPipeline.addStage("transactions", true, this::verifyTransactions);
+		chainValidator = new ChainValidator(this, validationPipeline, workers, validationBatchSize);
+	}
+
+	@PreDestroy
+	void closeValidation() {
+		chainValidator.close();
+		validationExecutor.shutdownNow();
+		archiveExecutor.shutdownNow();
+	}
+
+	/**
+	 * Append a stage to the validation of every Block, it runs after all
+	 * built-in stages: structure, size, proofOfWork, link, merkleRoot and
+	 * transactions
+	 *
+	 * @param name
+	 *            name in results and statistics
+	 * @param expensive
+	 *            true if the stage should not run on the request thread
+	 * @param stage
+	 *            the check itself
+	 */
+	public void addValidationStage(String name, boolean expensive, BlockValidationStage stage) {
+		validationPipeline.addStage(name, expensive, stage);
+	}
+
+	/**
+	 * Read the whole chain from the BlockStore
+	 *
+	 * @return all Blocks in order of the chain
+	 * @throws IOException
+	 */
+	public List<Block> getBlockchain() throws IOException {
+		return getBlocks(0);
 	}
 
-	public List<Block> getBlockchain() {
-		return blockchain;
+	/**
+	 * Read all Blocks from a given height on
+	 *
+	 * @param fromHeight
+	 *            height of the first Block
+	 * @return Blocks in order of the chain
+	 * @throws IOException
+	 */
+	public List<Block> getBlocks(long fromHeight) throws IOException {
+		return blockStore.read(fromHeight, Long.MAX_VALUE);
 	}
 
 	/**
 	 * load initial values
 	 *
-	 * @param List<Block>
+	 * @param lastBlock
+	 *            last Block of the recovered BlockStore or null if it is
+	 *            empty
+	 * @throws IOException
 	 */
-	public void init(List<Block> blockchain) {
-		this.blockchain = blockchain;
+	public synchronized void init(Block lastBlock) throws IOException {
+		this.lastBlock = lastBlock;
+		headers.clear();
+		blockCache.clear();
+		if (headerResident) {
+			headers.addAll(blockStore.readHeaders(0, blockStore.size()));
+			LOG.info("Loaded " + headers.size() + " block headers");
+		}
 	}
 
 	/**
-	 * save values
+	 * save values, Blocks are appended to the BlockStore one by one, so only
+	 * syncing file metadata and index is left to do for the
+	 * PersistenceScheduler. Sealed segments behind the newest archiveDepth
+	 * Blocks are moved to the cold tier by the archive thread. No new run is
+	 * started while the last one is still compressing.
 	 *
 	 */
 	public void save() throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		FileOutputStream fStream = null;
-		GZIPOutputStream zStream = null;
-		try {
-			fStream = new FileOutputStream(System.getProperty("user.home") + this.storePath + "blockchain.json.gz");
-			zStream = new GZIPOutputStream(new BufferedOutputStream(fStream));
-			mapper.writeValue(zStream, this.blockchain);
-
-		} finally {
-			if (zStream != null) {
-				zStream.flush();
-				zStream.close();
-			}
-			if (fStream != null) {
-				fStream.flush();
-				fStream.close();
+		blockStore.sync();
+		if (archiveDepth > 0 && archiving.compareAndSet(false, true)) {
+			long belowHeight = getHeight() - archiveDepth;
+			try {
+				archiveExecutor.execute(() -> {
+					try {
+						blockStore.archive(belowHeight);
+					} catch (IOException e) {
+						LOG.warn("Unable to archive blocks below height " + belowHeight + ": " + e.getMessage());
+					} finally {
+						archiving.set(false);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// shutting down
+				archiving.set(false);
 			}
-			System.out.println("Blockchain Saved!");
 		}
 	}
 
+	/**
+	 * Validate the Blocks of the BlockStore from a given height on, as loaded
+	 * at startup. The headers of the retarget window before fromHeight are
+	 * taken as valid.
+	 *
+	 * @param fromHeight
+	 *            height of the first Block to validate, 0 for the whole chain
+	 * @return height of the first invalid Block or the height of the chain if
+	 *         all Blocks are valid
+	 * @throws IOException
+	 */
+	public long validateChain(long fromHeight) throws IOException {
+		List<BlockHeader> window = blockStore.readHeaders(fromHeight - 1 - retargetWindow, fromHeight);
+		return chainValidator.validate(window, blockStore::read, fromHeight, blockStore.size());
+	}
+
+	/**
+	 * Progress and throughput of the last chain validation, passes,
+	 * rejections and time of every validation stage
+	 *
+	 * @return statistics by name
+	 */
+	public Map<String, Object> getValidationStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("chain", chainValidator.getStatistics());
+		statistics.put("stages", validationPipeline.getStatistics());
+		return statistics;
+	}
+
 	/**
 	 * Determine the last added Block
 	 *
 	 * @return Last Block in chain
 	 */
-	public Block getLastBlock() {
-		if (blockchain.isEmpty()) {
+	public synchronized Block getLastBlock() {
+		return lastBlock;
+	}
+
+	/**
+	 * Number of Blocks in the chain
+	 *
+	 * @return height of the next Block
+	 * @throws IOException
+	 */
+	public long getHeight() throws IOException {
+		if (headerResident) {
+			synchronized (this) {
+				return headers.size();
+			}
+		}
+		return blockStore.size();
+	}
+
+	/**
+	 * Compact target the next Block has to meet if its HashEngine version has
+	 * a target. The average target of the last retargetWindow Blocks is scaled
+	 * by the time they took compared to blockInterval per Block, so the block
+	 * interval holds while the hash power of the network changes. Blocks
+	 * without target count with the target of the configured difficulty.
+	 *
+	 * @return compact target, see Target
+	 * @throws IOException
+	 */
+	public synchronized int getNextBits() throws IOException {
+		long height = getHeight();
+		if (height < 2) {
+			return getInitialBits();
+		}
+		return getNextBits(getHeaders(Math.max(0, height - 1 - retargetWindow)));
+	}
+
+	/**
+	 * Compact target of the Block following a retarget window
+	 *
+	 * @param window
+	 *            headers of the last Blocks of the chain in order, at most
+	 *            retargetWindow + 1 of them
+	 * @return compact target, see Target
+	 */
+	int getNextBits(List<BlockHeader> window) {
+		return Target.nextBits(window, blockInterval, miningDifficulty);
+	}
+
+	/**
+	 * @return number of Blocks the target is adjusted over
+	 */
+	int getRetargetWindow() {
+		return retargetWindow;
+	}
+
+	private int getInitialBits() {
+		return Target.fromDifficulty(miningDifficulty);
+	}
+
+	private static boolean hasTarget(int version) {
+		HashEngine engine = HashEngine.getEngines().get(version);
+		return engine != null && engine.hasTarget();
+	}
+
+	/**
+	 * Get the header of the Block at a given height, without reading its
+	 * Transactions
+	 *
+	 * @param height
+	 *            position of the Block in the chain, starting at 0
+	 * @return header or null if the chain is shorter
+	 * @throws IOException
+	 */
+	public BlockHeader getHeader(long height) throws IOException {
+		if (headerResident) {
+			synchronized (this) {
+				return height >= 0 && height < headers.size() ? headers.get((int) height) : null;
+			}
+		}
+		return blockStore.readHeader(height);
+	}
+
+	/**
+	 * Get the headers of all Blocks from a given height on
+	 *
+	 * @param fromHeight
+	 *            height of the first Block
+	 * @return headers in order of the chain
+	 * @throws IOException
+	 */
+	public List<BlockHeader> getHeaders(long fromHeight) throws IOException {
+		if (headerResident) {
+			synchronized (this) {
+				int from = (int) Math.min(Math.max(fromHeight, 0), headers.size());
+				return new ArrayList<>(headers.subList(from, headers.size()));
+			}
+		}
+		return blockStore.readHeaders(fromHeight, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Read the Block at a given height from the BlockStore without loading
+	 * any other Block
+	 *
+	 * @param height
+	 *            position of the Block in the chain, starting at 0
+	 * @return Block or null if the chain is shorter
+	 * @throws IOException
+	 */
+	public Block getBlock(long height) throws IOException {
+		byte[] cached = blockCache.get(height);
+		if (cached != null) {
+			return BinaryCodec.decode(cached, Block.class);
+		}
+		Block block = blockStore.read(height);
+		if (block != null) {
+			blockCache.put(height, block.getHash(), BinaryCodec.encode(block));
+		}
+		return block;
+	}
+
+	/**
+	 * Read the Block with a given hash from the BlockStore without loading
+	 * any other Block
+	 *
+	 * @param hash
+	 *            hash of the Block
+	 * @return Block or null if no Block has this hash
+	 * @throws IOException
+	 */
+	public Block getBlockByHash(byte[] hash) throws IOException {
+		long height = blockCache.heightOf(hash);
+		if (height < 0) {
+			height = blockStore.heightOf(hash);
+		}
+		Block block = height >= 0 ? getBlock(height) : null;
+		return block != null && Arrays.equals(block.getHash(), hash) ? block : null;
+	}
+
+	/**
+	 * Prove that a Transaction is confirmed by a Block of the chain
+	 *
+	 * @param transactionHash
+	 *            hash of the Transaction
+	 * @return MerkleProof or null if no Block contains the Transaction
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	public MerkleProof getProof(byte[] transactionHash) throws IOException, GeneralSecurityException {
+		long height = blockStore.heightOfTransaction(transactionHash);
+		Block block = height >= 0 ? getBlock(height) : null;
+		if (block == null) {
+			return null;
+		}
+		List<MerkleProof.Sibling> path = transactionService
+				.calculateMerklePath(HashEngine.forVersion(block.getVersion()), block.getTransactions(), transactionHash);
+		if (path == null) {
 			return null;
 		}
-		return blockchain.get(blockchain.size() - 1);
+		MerkleProof proof = new MerkleProof();
+		proof.setTransactionHash(transactionHash);
+		proof.setBlockHash(block.getHash());
+		proof.setHeight(height);
+		proof.setPath(path);
+		return proof;
 	}
 
 	/**
-	 * Append a new Block at the end of chain
+	 * Append a new Block at the end of chain, all validation stages run on the
+	 * calling thread
 	 *
 	 * @param block
 	 *            Block to append
@@ -105,23 +457,116 @@ public class BlockService {
 	 * @throws GeneralSecurityException
 	 */
 	public synchronized boolean append(Block block) throws GeneralSecurityException {
-		if (verify(block)) {
-			blockchain.add(block);
+		BlockValidationResult result;
+		try {
+			result = validationPipeline.validate(block, createContext());
+		} catch (IOException e) {
+			LOG.error("Unable to read headers for retargeting", e);
+			return false;
+		}
+		if (!result.isValid()) {
+			LOG.info("Rejected block " + Base64.encodeBase64String(block.getHash()) + ", " + result);
+			return false;
+		}
+		return store(block);
+	}
+
+	/**
+	 * Append a Block received from another Node at the end of the chain. Cheap
+	 * validation stages run on the calling thread, so invalid Blocks are
+	 * rejected right away, the expensive ones in the background. A Block is
+	 * rejected if the chain grew while it was validated.
+	 *
+	 * @param block
+	 *            Block to append
+	 * @return future of the validation result, completed exceptionally with a
+	 *         GeneralSecurityException if hashing failed
+	 */
+	public CompletableFuture<BlockValidationResult> appendAsync(Block block) {
+		Block previous;
+		BlockValidationContext context;
+		synchronized (this) {
+			previous = lastBlock;
 			try {
-				this.save();
+				context = createContext();
 			} catch (IOException e) {
-				System.out.println("Unable to save blockchain: " + e.getMessage());
+				LOG.error("Unable to read headers for retargeting", e);
+				return CompletableFuture.completedFuture(new BlockValidationResult("link",
+						"unable to read headers for retargeting", new LinkedHashMap<>()));
+			}
+		}
+		return validationPipeline.validateAsync(block, context).thenApply(result -> {
+			if (result.isValid()) {
+				synchronized (this) {
+					if (lastBlock != previous) {
+						result = new BlockValidationResult("link", "chain grew during validation",
+								new LinkedHashMap<>(result.getStageNanos()));
+					} else if (!store(block)) {
+						result = new BlockValidationResult("store", "unable to save blockchain",
+								new LinkedHashMap<>(result.getStageNanos()));
+					}
+				}
 			}
+			if (!result.isValid()) {
+				LOG.info("Rejected block " + Base64.encodeBase64String(block.getHash()) + ", " + result);
+			}
+			return result;
+		});
+	}
+
+	private synchronized boolean store(Block block) {
+		if (!commit(block)) {
+			return false;
+		}
+		eventPublisher.publishEvent(new ChainTipEvent(this, block));
+		return true;
+	}
 
-			// remove transactions from pool
-			block.getTransactions().forEach(transactionService::remove);
-			return true;
+	/**
+	 * Append a validated Block to the BlockStore, make it the tip of the chain
+	 * and remove its Transactions from the pool. The caller has to hold the
+	 * monitor and publish the new tip.
+	 *
+	 * @return false if the Block could not be saved
+	 */
+	private boolean commit(Block block) {
+		try {
+			blockStore.append(block);
+			persistenceScheduler.markDirty("block");
+			persistenceScheduler.markDirty("checkpoint");
+		} catch (IOException e) {
+			LOG.error("Unable to save blockchain", e);
+			return false;
 		}
-		return false;
+		lastBlock = block;
+		if (headerResident) {
+			headers.add(new BlockHeader(block));
+		}
+
+		// remove transactions from pool
+		transactionService.removeAll(block.getTransactions());
+		return true;
+	}
+
+	/**
+	 * Context of the next Block appended to the chain, its Transactions have
+	 * to be pooled
+	 *
+	 * @return header of the last Block, compact target the next Block has to
+	 *         meet and pooled flag
+	 * @throws IOException
+	 */
+	private BlockValidationContext createContext() throws IOException {
+		return new BlockValidationContext(lastBlock != null ? new BlockHeader(lastBlock) : null, getNextBits(), true);
 	}
 
 	/**
-	 * Download Blocks from other Node and add them to the blockchain
+	 * Download the Blocks missing on this Node from another Node and add them
+	 * to the blockchain. Nothing is downloaded if the local chain is not a
+	 * prefix of the remote one. The downloaded Blocks are validated in
+	 * parallel, only those before the first invalid one are added. Downloads
+	 * and validation do not hold the monitor, so local appends go on, the
+	 * Blocks are dropped if the chain grew in the meantime.
 	 *
 	 * @param node
 	 *            Node to query
@@ -129,43 +574,137 @@ public class BlockService {
 	 *            RestTemplate to use
 	 */
 	public void retrieveBlockchain(Node node, RestTemplate restTemplate) {
-		Block[] blocks = restTemplate.getForObject(node.getAddress() + "/block", Block[].class);
-		Collections.addAll(blockchain, blocks);
-		LOG.info("Retrieved " + blocks.length + " blocks from node " + node.getAddress());
-	}
-
-	private boolean verify(Block block) throws GeneralSecurityException {
-		// references last block in chain
-		if (blockchain.size() > 0) {
-			byte[] lastBlockInChainHash = getLastBlock().getHash();
-			if (!Arrays.equals(block.getPreviousBlockHash(), lastBlockInChainHash)) {
-				return false;
+		try {
+			Block tip;
+			long height;
+			synchronized (this) {
+				tip = lastBlock;
+				height = blockStore.size();
+			}
+			if (height > 0) {
+				Block remote = restTemplate.getForObject(node.getAddress() + "/block/height/{height}", Block.class,
+						height - 1);
+				if (remote == null || !Arrays.equals(remote.getHash(), tip.getHash())) {
+					LOG.warn("Local chain diverges from node " + node.getAddress() + " at height " + (height - 1));
+					return;
+				}
 			}
-		} else {
-			if (block.getPreviousBlockHash() != null) {
-				return false;
+			List<Block> blocks = Arrays.asList(restTemplate
+					.getForObject(node.getAddress() + "/block/from/{height}", Block[].class, height));
+			long validHeight = chainValidator.validate(
+					blockStore.readHeaders(height - 1 - retargetWindow, height),
+					(fromHeight, toHeight) -> blocks.subList((int) (fromHeight - height), (int) (toHeight - height)),
+					height, height + blocks.size());
+			if (validHeight < height + blocks.size()) {
+				LOG.warn("Block at height " + validHeight + " from node " + node.getAddress()
+						+ " is invalid, ignoring it and all following blocks");
 			}
+			List<Block> validBlocks = blocks.subList(0, (int) (validHeight - height));
+			int committed = 0;
+			synchronized (this) {
+				if (lastBlock != tip) {
+					LOG.warn("Chain grew while retrieving blocks from node " + node.getAddress()
+							+ ", ignoring them");
+					return;
+				}
+				for (Block block : validBlocks) {
+					if (!commit(block)) {
+						break;
+					}
+					committed++;
+				}
+				if (committed > 0) {
+					eventPublisher.publishEvent(new ChainTipEvent(this, lastBlock));
+				}
+			}
+			LOG.info("Retrieved " + committed + " blocks from height " + height + " from node " + node.getAddress());
+		} catch (IOException | RestClientException e) {
+			LOG.error("Unable to retrieve blocks from node " + node.getAddress(), e);
 		}
+	}
 
-		// correct hashes
-		if (!Arrays.equals(block.getMerkleRoot(), block.calculateMerkleRoot())) {
-			return false;
+	private String verifyStructure(Block block, BlockValidationContext context) {
+		HashEngine engine = HashEngine.getEngines().get(block.getVersion());
+		if (engine == null) {
+			return "unknown hash version " + block.getVersion();
 		}
-		if (!Arrays.equals(block.getHash(), block.calculateHash())) {
-			return false;
+		if (block.getHash() == null || block.getHash().length != engine.getHashLength()) {
+			return "missing hash";
+		}
+		if (block.getMerkleRoot() == null || block.getTransactions() == null
+				|| block.getTransactions().contains(null)) {
+			return "missing Merkle root or transactions";
 		}
+		return null;
+	}
 
+	private String verifySize(Block block, BlockValidationContext context) {
 		// transaction limit
 		if (block.getTransactions().size() > maxTransactionsPerBlock) {
-			return false;
+			return block.getTransactions().size() + " transactions, at most " + maxTransactionsPerBlock
+					+ " allowed";
 		}
+		return null;
+	}
 
-		// all transactions in pool
-		if (!transactionService.containsAll(block.getTransactions())) {
-			return false;
+	private String verifyProofOfWork(Block block, BlockValidationContext context) throws GeneralSecurityException {
+		// considered difficulty, before the hash is computed
+		if (hasTarget(block.getVersion())) {
+			try {
+				if (!Target.meets(block.getHash(), Target.toBytes(block.getBits()))) {
+					return "hash does not meet target " + Integer.toHexString(block.getBits());
+				}
+			} catch (IllegalArgumentException e) {
+				return e.getMessage();
+			}
+		} else if (block.getLeadingZerosCount() < miningDifficulty) {
+			return "less than " + miningDifficulty + " leading zero bytes";
+		}
+		if (!Arrays.equals(block.getHash(), block.calculateHash())) {
+			return "hash does not match header";
+		}
+		return null;
+	}
+
+	private String verifyLink(Block block, BlockValidationContext context) {
+		// references last block in chain
+		BlockHeader previous = context.getPrevious();
+		if (!Arrays.equals(block.getPreviousBlockHash(), previous != null ? previous.getHash() : null)) {
+			return "does not reference the last block";
 		}
 
-		// considered difficulty
-		return block.getLeadingZerosCount() >= miningDifficulty;
+		// no downgrade to older hash versions
+		if (previous != null && block.getVersion() < previous.getVersion()) {
+			return "hash version " + block.getVersion() + " below version " + previous.getVersion()
+					+ " of the last block";
+		}
+
+		// retargeted difficulty
+		if (hasTarget(block.getVersion()) && block.getBits() != context.getNextBits()) {
+			return "target " + Integer.toHexString(block.getBits()) + " instead of "
+					+ Integer.toHexString(context.getNextBits());
+		}
+		return null;
+	}
+
+	private String verifyMerkleRoot(Block block, BlockValidationContext context) throws GeneralSecurityException {
+		if (!Arrays.equals(block.getMerkleRoot(), transactionService
+				.calculateMerkleRoot(HashEngine.forVersion(block.getVersion()), block.getTransactions()))) {
+			return "Merkle root does not match transactions";
+		}
+		return null;
+	}
+
+	private String verifyTransactions(Block block, BlockValidationContext context) {
+		// all transactions in pool, they were checked when added
+		if (context.isPooled()) {
+			return transactionService.containsAll(block.getTransactions()) ? null : "transactions not in pool";
+		}
+		for (Transaction transaction : block.getTransactions()) {
+			if (!transactionService.verify(transaction)) {
+				return "invalid transaction " + Base64.encodeBase64String(transaction.getHash());
+			}
+		}
+		return null;
 	}
 }
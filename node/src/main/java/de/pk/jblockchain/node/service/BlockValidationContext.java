@@ -0,0 +1,42 @@
+package de.pk.jblockchain.node.service;
+
+import de.pk.jblockchain.common.domain.BlockHeader;
+
+/**
+ * Position in the chain a Block is validated for: the Block before it and the
+ * target it has to meet
+ */
+public class BlockValidationContext {
+
+	private final BlockHeader previous;
+	private final int nextBits;
+	private final boolean pooled;
+
+	/**
+	 * @param previous
+	 *            header of the Block before or null for the first Block
+	 * @param nextBits
+	 *            compact target required for HashEngine versions with target
+	 * @param pooled
+	 *            true if all Transactions have to be in the pool of this Node,
+	 *            as for new Blocks, false if their signatures have to be
+	 *            checked, as for Blocks of an existing chain
+	 */
+	public BlockValidationContext(BlockHeader previous, int nextBits, boolean pooled) {
+		this.previous = previous;
+		this.nextBits = nextBits;
+		this.pooled = pooled;
+	}
+
+	public BlockHeader getPrevious() {
+		return previous;
+	}
+
+	public int getNextBits() {
+		return nextBits;
+	}
+
+	public boolean isPooled() {
+		return pooled;
+	}
+}
@@ -0,0 +1,169 @@
+package de.pk.jblockchain.node.service;
+
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.pk.jblockchain.common.domain.Block;
+
+/**
+ * Ordered stages every Block has to pass. A Block is rejected by the first
+ * stage that fails, so cheap stages should come first and keep invalid
+ * Blocks away from the expensive ones. validateAsync() runs the cheap stages
+ * at the start on the calling thread and everything from the first expensive
+ * stage on by the executor. Passes, rejections and time spent are counted
+ * per stage.
+ */
+class BlockValidationPipeline {
+
+	private final Executor executor;
+	private final List<Stage> stages = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param executor
+	 *            runs the expensive stages of validateAsync()
+	 */
+	BlockValidationPipeline(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Append a stage behind all stages added before
+	 *
+	 * @param name
+	 *            name in results and statistics
+	 * @param expensive
+	 *            true if the stage should not run on the calling thread of
+	 *            validateAsync()
+	 * @param check
+	 *            the check itself
+	 */
+	void addStage(String name, boolean expensive, BlockValidationStage check) {
+		stages.add(new Stage(name, expensive, check));
+	}
+
+	/**
+	 * Run all stages on the calling thread
+	 *
+	 * @param block
+	 *            Block to validate
+	 * @param context
+	 *            position in the chain
+	 * @return result naming the rejecting stage, if any
+	 * @throws GeneralSecurityException
+	 */
+	BlockValidationResult validate(Block block, BlockValidationContext context) throws GeneralSecurityException {
+		List<Stage> current = stages;
+		Map<String, Long> stageNanos = new LinkedHashMap<>();
+		BlockValidationResult result = run(current, 0, current.size(), block, context, stageNanos);
+		return result != null ? result : new BlockValidationResult(null, null, stageNanos);
+	}
+
+	/**
+	 * Run the cheap stages before the first expensive one on the calling
+	 * thread and all others by the executor
+	 *
+	 * @param block
+	 *            Block to validate
+	 * @param context
+	 *            position in the chain
+	 * @return future of the result, completed exceptionally with a
+	 *         GeneralSecurityException if hashing failed
+	 */
+	CompletableFuture<BlockValidationResult> validateAsync(Block block, BlockValidationContext context) {
+		List<Stage> current = stages;
+		Map<String, Long> stageNanos = new LinkedHashMap<>();
+		int cheap = 0;
+		while (cheap < current.size() && !current.get(cheap).expensive) {
+			cheap++;
+		}
+		try {
+			BlockValidationResult result = run(current, 0, cheap, block, context, stageNanos);
+			if (result != null) {
+				return CompletableFuture.completedFuture(result);
+			}
+		} catch (GeneralSecurityException e) {
+			CompletableFuture<BlockValidationResult> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+		int from = cheap;
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				BlockValidationResult result = run(current, from, current.size(), block, context, stageNanos);
+				return result != null ? result : new BlockValidationResult(null, null, stageNanos);
+			} catch (GeneralSecurityException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Passes, rejections and average time of every stage
+	 *
+	 * @return statistics by stage name
+	 */
+	Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		for (Stage stage : stages) {
+			Map<String, Object> stageStatistics = new LinkedHashMap<>();
+			long passed = stage.passed.get();
+			long rejected = stage.rejected.get();
+			stageStatistics.put("expensive", stage.expensive);
+			stageStatistics.put("passed", passed);
+			stageStatistics.put("rejected", rejected);
+			stageStatistics.put("averageMicros",
+					passed + rejected > 0 ? stage.nanos.get() / 1000 / (passed + rejected) : 0);
+			statistics.put(stage.name, stageStatistics);
+		}
+		return statistics;
+	}
+
+	/**
+	 * @return the result of the rejecting stage or null if all stages passed
+	 */
+	private static BlockValidationResult run(List<Stage> stages, int from, int to, Block block,
+			BlockValidationContext context, Map<String, Long> stageNanos) throws GeneralSecurityException {
+		for (int i = from; i < to; i++) {
+			Stage stage = stages.get(i);
+			long start = System.nanoTime();
+			String reason;
+			try {
+				reason = stage.check.verify(block, context);
+			} finally {
+				long nanos = System.nanoTime() - start;
+				stage.nanos.addAndGet(nanos);
+				stageNanos.put(stage.name, nanos);
+			}
+			if (reason != null) {
+				stage.rejected.incrementAndGet();
+				return new BlockValidationResult(stage.name, reason, stageNanos);
+			}
+			stage.passed.incrementAndGet();
+		}
+		return null;
+	}
+
+	private static class Stage {
+
+		private final String name;
+		private final boolean expensive;
+		private final BlockValidationStage check;
+
+		private final AtomicLong passed = new AtomicLong();
+		private final AtomicLong rejected = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+
+		private Stage(String name, boolean expensive, BlockValidationStage check) {
+			this.name = name;
+			this.expensive = expensive;
+			this.check = check;
+		}
+	}
+}
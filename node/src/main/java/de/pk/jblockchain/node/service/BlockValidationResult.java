@@ -0,0 +1,51 @@
+package de.pk.jblockchain.node.service;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of the block validation pipeline
+ */
+public class BlockValidationResult {
+
+	private final String rejectedStage;
+	private final String reason;
+	private final Map<String, Long> stageNanos;
+
+	/**
+	 * @param rejectedStage
+	 *            name of the stage which rejected the Block or null if it is
+	 *            valid
+	 * @param reason
+	 *            reason given by the rejecting stage
+	 * @param stageNanos
+	 *            nanoseconds spent in every stage which ran, in order
+	 */
+	BlockValidationResult(String rejectedStage, String reason, Map<String, Long> stageNanos) {
+		this.rejectedStage = rejectedStage;
+		this.reason = reason;
+		this.stageNanos = Collections.unmodifiableMap(stageNanos);
+	}
+
+	public boolean isValid() {
+		return rejectedStage == null;
+	}
+
+	public String getRejectedStage() {
+		return rejectedStage;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	public Map<String, Long> getStageNanos() {
+		return stageNanos;
+	}
+
+	@Override
+	public String toString() {
+		return (isValid() ? "valid" : "rejected by " + rejectedStage + ": " + reason) + ", ns per stage "
+				+ stageNanos;
+	}
+}
@@ -0,0 +1,23 @@
+package de.pk.jblockchain.node.service;
+
+import java.security.GeneralSecurityException;
+
+import de.pk.jblockchain.common.domain.Block;
+
+/**
+ * One check of the block validation pipeline, see
+ * BlockService.addValidationStage()
+ */
+@FunctionalInterface
+public interface BlockValidationStage {
+
+	/**
+	 * @param block
+	 *            Block to check, all stages before passed
+	 * @param context
+	 *            position in the chain the Block is checked for
+	 * @return null if the Block passes or the reason it is rejected
+	 * @throws GeneralSecurityException
+	 */
+	String verify(Block block, BlockValidationContext context) throws GeneralSecurityException;
+}
@@ -0,0 +1,28 @@
+package de.pk.jblockchain.node.service;
+
+import org.springframework.context.ApplicationEvent;
+
+import de.pk.jblockchain.common.domain.Block;
+
+/**
+ * Published by the BlockService whenever another Block became the last one of
+ * the chain, appended locally or received from another Node
+ */
+public class ChainTipEvent extends ApplicationEvent {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Block tip;
+
+	public ChainTipEvent(Object source, Block tip) {
+		super(source);
+		this.tip = tip;
+	}
+
+	/**
+	 * @return new last Block of the chain
+	 */
+	public Block getTip() {
+		return tip;
+	}
+}
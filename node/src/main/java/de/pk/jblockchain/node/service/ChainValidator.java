@@ -0,0 +1,256 @@
+package de.pk.jblockchain.node.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.binary.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockHeader;
+
+/**
+ * Validates a chain of Blocks read from the BlockStore or downloaded from
+ * another Node. Blocks are read in batches. The predecessor and target of
+ * every Block are taken from the Blocks before it in order of the chain, then
+ * all stages of the BlockValidationPipeline, including the proof of work
+ * hash, the Merkle root and the signatures of all Transactions, run for the
+ * Blocks of a batch in parallel on a fork/join pool. Validation stops at the
+ * first invalid Block.
+ */
+class ChainValidator implements Closeable {
+
+	private final static Logger LOG = LoggerFactory.getLogger(ChainValidator.class);
+
+	/**
+	 * Reads a range of Blocks to validate
+	 */
+	interface BlockSource {
+
+		/**
+		 * @param fromHeight
+		 *            height of the first Block
+		 * @param toHeight
+		 *            height behind the last Block
+		 * @return Blocks in order of the chain
+		 * @throws IOException
+		 */
+		List<Block> read(long fromHeight, long toHeight) throws IOException;
+	}
+
+	private final BlockService blockService;
+	private final BlockValidationPipeline pipeline;
+	private final ForkJoinPool pool;
+	private final int batchSize;
+
+	private volatile long validatedBlocks;
+	private volatile long totalBlocks;
+	private volatile long lastValidationMillis;
+	private volatile double blocksPerSecond;
+	private volatile long invalidHeight = -1;
+
+	/**
+	 * @param blockService
+	 *            computes the target of every Block
+	 * @param pipeline
+	 *            stages every Block has to pass
+	 * @param parallelism
+	 *            number of threads checking Blocks
+	 * @param batchSize
+	 *            number of Blocks read and checked at once
+	 */
+	ChainValidator(BlockService blockService, BlockValidationPipeline pipeline, int parallelism, int batchSize) {
+		this.blockService = blockService;
+		this.pipeline = pipeline;
+		this.batchSize = Math.max(batchSize, 1);
+		AtomicInteger number = new AtomicInteger();
+		this.pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+			thread.setName("chain-validator-" + number.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+	}
+
+	/**
+	 * Validate consecutive Blocks following a valid part of the chain
+	 *
+	 * @param window
+	 *            headers of the Blocks before fromHeight, at least the last
+	 *            retargetWindow + 1 of them, empty if fromHeight is 0
+	 * @param source
+	 *            reads the Blocks to validate
+	 * @param fromHeight
+	 *            height of the first Block to validate
+	 * @param toHeight
+	 *            height behind the last Block to validate
+	 * @return height of the first invalid Block or toHeight if all Blocks are
+	 *         valid
+	 * @throws IOException
+	 */
+	long validate(List<BlockHeader> window, BlockSource source, long fromHeight, long toHeight)
+			throws IOException {
+		ArrayDeque<BlockHeader> recent = new ArrayDeque<>();
+		int windowSize = blockService.getRetargetWindow() + 1;
+		for (BlockHeader header : window.subList(Math.max(0, window.size() - windowSize), window.size())) {
+			recent.addLast(header);
+		}
+		long total = toHeight - fromHeight;
+		totalBlocks = total;
+		validatedBlocks = 0;
+		invalidHeight = -1;
+		long start = System.nanoTime();
+		long lastReport = start;
+		long height = fromHeight;
+		while (height < toHeight) {
+			List<Block> batch = source.read(height, Math.min(height + batchSize, toHeight));
+			if (batch.isEmpty()) {
+				break;
+			}
+			int valid = verify(batch, createContexts(batch, recent, windowSize));
+			height += valid;
+			validatedBlocks = height - fromHeight;
+			long now = System.nanoTime();
+			blocksPerSecond = validatedBlocks / (Math.max(now - start, 1) / 1e9);
+			if (valid < batch.size()) {
+				invalidHeight = height;
+				LOG.warn("Block at height " + height + " is invalid, validated " + validatedBlocks + " of " + total
+						+ " blocks");
+				break;
+			}
+			if (now - lastReport > 5000000000L) {
+				LOG.info("Validated " + validatedBlocks + " of " + total + " blocks, "
+						+ String.format("%.1f", blocksPerSecond) + " blocks/s");
+				lastReport = now;
+			}
+		}
+		lastValidationMillis = (System.nanoTime() - start) / 1000000;
+		if (total > 0) {
+			LOG.info("Validated " + validatedBlocks + " blocks in " + lastValidationMillis + " ms, "
+					+ String.format("%.1f", blocksPerSecond) + " blocks/s on " + pool.getParallelism()
+					+ " threads");
+		}
+		return height;
+	}
+
+	/**
+	 * Progress and throughput of the last validation
+	 *
+	 * @return statistics by name
+	 */
+	Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("threads", pool.getParallelism());
+		statistics.put("validatedBlocks", validatedBlocks);
+		statistics.put("totalBlocks", totalBlocks);
+		statistics.put("blocksPerSecond", blocksPerSecond);
+		statistics.put("lastValidationMillis", lastValidationMillis);
+		statistics.put("invalidHeight", invalidHeight);
+		return statistics;
+	}
+
+	@Override
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Determine the position in the chain of every Block of a batch in order
+	 * and move the retarget window along
+	 *
+	 * @return contexts of the Blocks at the start of the batch, up to the
+	 *         first Block without valid header
+	 */
+	private BlockValidationContext[] createContexts(List<Block> batch, ArrayDeque<BlockHeader> recent,
+			int windowSize) {
+		BlockValidationContext[] contexts = new BlockValidationContext[batch.size()];
+		for (int i = 0; i < batch.size(); i++) {
+			int nextBits = blockService.getNextBits(new ArrayList<>(recent));
+			contexts[i] = new BlockValidationContext(recent.peekLast(), nextBits, false);
+			try {
+				recent.addLast(new BlockHeader(batch.get(i)));
+			} catch (RuntimeException e) {
+				LOG.warn("Block without header: " + e);
+				return Arrays.copyOf(contexts, i);
+			}
+			if (recent.size() > windowSize) {
+				recent.removeFirst();
+			}
+		}
+		return contexts;
+	}
+
+	/**
+	 * Run the pipeline for all Blocks of a batch with context in parallel
+	 *
+	 * @return number of Blocks at the start of the batch which are valid
+	 */
+	private int verify(List<Block> batch, BlockValidationContext[] contexts) {
+		AtomicInteger firstInvalid = new AtomicInteger(contexts.length);
+		pool.invoke(new BlockCheck(batch, contexts, 0, contexts.length, firstInvalid));
+		return firstInvalid.get();
+	}
+
+	private boolean verify(Block block, BlockValidationContext context) {
+		try {
+			BlockValidationResult result = pipeline.validate(block, context);
+			if (!result.isValid()) {
+				LOG.warn("Invalid block " + Base64.encodeBase64String(block.getHash()) + ", " + result);
+			}
+			return result.isValid();
+		} catch (GeneralSecurityException | RuntimeException e) {
+			LOG.warn("Unable to verify block: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Splits a range of a batch until single Blocks are left. Blocks behind
+	 * the first invalid one found so far are skipped.
+	 */
+	private class BlockCheck extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Block> batch;
+		private final BlockValidationContext[] contexts;
+		private final int from;
+		private final int to;
+		private final AtomicInteger firstInvalid;
+
+		private BlockCheck(List<Block> batch, BlockValidationContext[] contexts, int from, int to,
+				AtomicInteger firstInvalid) {
+			this.batch = batch;
+			this.contexts = contexts;
+			this.from = from;
+			this.to = to;
+			this.firstInvalid = firstInvalid;
+		}
+
+		@Override
+		protected void compute() {
+			if (from >= firstInvalid.get()) {
+				return;
+			}
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BlockCheck(batch, contexts, from, middle, firstInvalid),
+						new BlockCheck(batch, contexts, middle, to, firstInvalid));
+			} else if (!verify(batch.get(from), contexts[from])) {
+				firstInvalid.accumulateAndGet(from, Math::min);
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package de.pk.jblockchain.node.service;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import de.pk.jblockchain.common.domain.BlockHeader;
+import de.pk.jblockchain.node.storage.BlockStore;
+import de.pk.jblockchain.node.storage.Checkpoint;
+import de.pk.jblockchain.node.storage.CheckpointStore;
+import de.pk.jblockchain.node.storage.PersistenceScheduler;
+
+/**
+ * Takes checkpoints of chain tip and transaction pool, so a restarting node
+ * only replays the Blocks appended after the last checkpoint. A checkpoint is
+ * written in the background whenever Blocks were appended and once more at
+ * shutdown, the latter is marked clean and also restores the transaction
+ * pool. The BlockStore is forced to disk before every checkpoint, so a
+ * checkpoint never covers Blocks whose index entries could be lost in a
+ * crash. Addresses are persisted by the AddressRegistry on their own,
+ * checkpoints of older versions may still carry them.
+ */
+@Service
+public class CheckpointService {
+
+	private final static Logger LOG = LoggerFactory.getLogger(CheckpointService.class);
+
+	private final BlockService blockService;
+	private final TransactionService transactionService;
+	private final PersistenceScheduler persistenceScheduler;
+	private final CheckpointStore checkpointStore;
+	private final BlockStore blockStore;
+
+	private Checkpoint restored;
+	private boolean restoreAttempted;
+	private volatile boolean closed;
+
+	@Autowired
+	public CheckpointService(BlockService blockService, TransactionService transactionService,
+			PersistenceScheduler persistenceScheduler, CheckpointStore checkpointStore, BlockStore blockStore) {
+		this.blockService = blockService;
+		this.transactionService = transactionService;
+		this.persistenceScheduler = persistenceScheduler;
+		this.checkpointStore = checkpointStore;
+		this.blockStore = blockStore;
+	}
+
+	@PostConstruct
+	void registerStore() {
+		persistenceScheduler.register("checkpoint", this::save);
+	}
+
+	/**
+	 * Read the last checkpoint once at startup. A clean checkpoint is marked
+	 * unclean right away, changes from now on are only in the other stores
+	 * until the next shutdown.
+	 *
+	 * @return last checkpoint or null if there is none or it is corrupt
+	 */
+	public synchronized Checkpoint restore() {
+		if (!restoreAttempted) {
+			restoreAttempted = true;
+			try {
+				restored = checkpointStore.read();
+				if (restored != null) {
+					LOG.info("Found " + (restored.isClean() ? "clean" : "periodic") + " checkpoint at height "
+							+ restored.getHeight());
+					if (restored.isClean()) {
+						checkpointStore.markUnclean();
+					}
+				}
+			} catch (IOException e) {
+				LOG.warn("Unable to read checkpoint, falling back to full load", e);
+				restored = null;
+			}
+		}
+		return restored;
+	}
+
+	/**
+	 * save values, called by the PersistenceScheduler in the background
+	 *
+	 */
+	public void save() throws IOException {
+		if (!closed) {
+			write(false);
+		}
+	}
+
+	/**
+	 * Write a clean checkpoint after all other stores are flushed
+	 */
+	@PreDestroy
+	public void shutdown() {
+		persistenceScheduler.flushAll();
+		closed = true;
+		try {
+			write(true);
+			LOG.info("Wrote clean checkpoint");
+		} catch (IOException e) {
+			LOG.error("Unable to write checkpoint", e);
+		}
+	}
+
+	private void write(boolean clean) throws IOException {
+		long height = blockService.getHeight();
+		BlockHeader tip = height > 0 ? blockService.getHeader(height - 1) : null;
+		// the Blocks up to height are appended, their index entries may not be flushed yet
+		blockStore.sync();
+		checkpointStore.write(new Checkpoint(height, tip != null ? tip.getHash() : null, Collections.emptyList(),
+				transactionService.copyTransactionPool(), clean));
+	}
+}
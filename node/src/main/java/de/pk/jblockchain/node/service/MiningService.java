@@ -1,18 +1,37 @@
 package de.pk.jblockchain.node.service;
 
+import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockTemplate;
+import de.pk.jblockchain.common.domain.Target;
 import de.pk.jblockchain.common.domain.Transaction;
+import de.pk.jblockchain.common.hash.HashEngine;
 
 @Service
 public class MiningService implements Runnable {
@@ -31,6 +50,36 @@ public class MiningService implements Runnable {
 	@Value("${blockchain.mining.difficulty}")
 	private int miningDifficulty;
 
+	@Value("${blockchain.mining.workers}")
+	private int miningWorkers;
+
+	@Value("${blockchain.mining.minTransactions}")
+	private int minTransactions;
+
+	@Value("${blockchain.mining.maxWaitMillis}")
+	private long maxWaitMillis;
+
+	private ParallelMiner miner;
+
+	/**
+	 * Runs the mining loop, at most one at a time
+	 */
+	private ExecutorService minerThread;
+
+	/**
+	 * Signalled when Transactions were added to the pool or the miner is
+	 * stopped
+	 */
+	private final Lock poolLock = new ReentrantLock();
+	private final Condition poolChanged = poolLock.newCondition();
+
+	/**
+	 * Template currently searched by the workers, null between two searches
+	 */
+	private volatile MiningJob job;
+
+	private final AtomicLong staleTemplates = new AtomicLong();
+
 	@Autowired
 	public MiningService(TransactionService transactionService, NodeService nodeService, BlockService blockService) {
 		this.transactionService = transactionService;
@@ -38,14 +87,81 @@ public class MiningService implements Runnable {
 		this.blockService = blockService;
 	}
 
+	@PostConstruct
+	void createMiner() {
+		miner = new ParallelMiner(miningWorkers > 0 ? miningWorkers : Runtime.getRuntime().availableProcessors());
+		minerThread = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "miner");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	void closeMiner() {
+		stopMiner();
+		minerThread.shutdown();
+		try {
+			minerThread.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		miner.close();
+	}
+
+	/**
+	 * Hashrate of every mining worker and of all of them together, and the
+	 * Merkle tree nodes reused for new Blocks
+	 *
+	 * @return statistics by name
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = miner.getStatistics();
+		statistics.put("merkleTree", transactionService.getMerkleTreeStatistics());
+		statistics.put("staleTemplates", staleTemplates.get());
+		return statistics;
+	}
+
+	/**
+	 * Abort the running search if another Block became the tip of the chain,
+	 * a Block found for the old tip would be an orphan
+	 *
+	 * @param event
+	 *            published by the BlockService
+	 */
+	@EventListener
+	public void onChainTip(ChainTipEvent event) {
+		MiningJob current = job;
+		if (current != null && !Arrays.equals(current.previousBlockHash, event.getTip().getHash())) {
+			current.abort("new chain tip");
+		}
+	}
+
+	/**
+	 * Abort the running search if Transactions of its template left the pool,
+	 * the Block would not be valid anymore
+	 *
+	 * @param event
+	 *            published by the TransactionService
+	 */
+	@EventListener
+	public void onTransactionPool(TransactionPoolEvent event) {
+		MiningJob current = job;
+		if (current != null && !Collections.disjoint(current.transactions, event.getRemoved())) {
+			current.abort("transactions confirmed or dropped");
+		}
+		if (!event.getAdded().isEmpty()) {
+			signalPoolChanged();
+		}
+	}
+
 	/**
 	 * Start the miner
 	 */
 	public void startMiner() {
 		if (runMiner.compareAndSet(false, true)) {
-			LOG.info("Starting miner");
-			Thread thread = new Thread(this);
-			thread.start();
+			LOG.info("Starting miner with " + miner.getWorkerCount() + " workers");
+			minerThread.execute(this);
 		}
 	}
 
@@ -55,6 +171,7 @@ public class MiningService implements Runnable {
 	public void stopMiner() {
 		LOG.info("Stopping miner");
 		runMiner.set(false);
+		signalPoolChanged();
 	}
 
 	/**
@@ -64,29 +181,86 @@ public class MiningService implements Runnable {
 	public void run() {
 		while (runMiner.get()) {
 			try {
+				if (!awaitTransactions()) {
+					break;
+				}
 				LOG.info("Collecting transactions...");
 				Block block = mineBlock();
 				if (block != null) {
 					// Found block! Append and publish
 					LOG.info("Mined block with " + block.getTransactions().size() + " transactions and nonce "
-							+ block.getTries());
+							+ block.getTries() + " at " + miner.getStatistics().get("hashrate") + " hashes/s");
 					blockService.append(block);
 					nodeService.broadcastPut("block", block);
 				}
 			} catch (GeneralSecurityException e) {
 				LOG.error("GeneralSecurityException for SCrypt hashing occured: ", e);
+			} catch (InterruptedException e) {
+				LOG.info("Miner interrupted");
+				Thread.currentThread().interrupt();
+				break;
 			}
 		}
 		LOG.info("Miner stopped");
 	}
 
-	private Block mineBlock() {
-		long tries = 0;
+	/**
+	 * Block until the pool holds minTransactions Transactions or its first
+	 * Transaction waited maxWaitMillis, woken up by every Transaction added
+	 *
+	 * @return true if a Block should be mined, false if the miner was stopped
+	 * @throws InterruptedException
+	 */
+	private boolean awaitTransactions() throws InterruptedException {
+		long deadline = 0;
+		boolean timed = false;
+		boolean waiting = false;
+		poolLock.lock();
+		try {
+			while (runMiner.get()) {
+				int size = transactionService.getTransactionPool().size();
+				if (size >= minTransactions) {
+					return true;
+				}
+				if (size == 0) {
+					if (!waiting) {
+						LOG.info("No transactions available, waiting");
+						waiting = true;
+					}
+					timed = false;
+					poolChanged.await();
+					continue;
+				}
+				long now = System.nanoTime();
+				if (!timed) {
+					deadline = now + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+					timed = true;
+				}
+				if (now - deadline >= 0) {
+					return true;
+				}
+				poolChanged.awaitNanos(deadline - now);
+			}
+			return false;
+		} finally {
+			poolLock.unlock();
+		}
+	}
 
+	private void signalPoolChanged() {
+		poolLock.lock();
+		try {
+			poolChanged.signalAll();
+		} finally {
+			poolLock.unlock();
+		}
+	}
+
+	private Block mineBlock() {
 		// get previous hash and transactions
-		byte[] previousBlockHash = blockService.getLastBlock() != null ? blockService.getLastBlock().getHash() : null;
-		List<Transaction> transactions = transactionService.getTransactionPool().stream().limit(maxTransactionsPerBlock)
-				.collect(Collectors.toList());
+		Block previousBlock = blockService.getLastBlock();
+		byte[] previousBlockHash = previousBlock != null ? previousBlock.getHash() : null;
+		List<Transaction> transactions = transactionService.getOldestTransactions(maxTransactionsPerBlock);
 		if (transactions.size() > 0) {
 			LOG.info("has Transactions:");
 			for (Transaction trans : transactions) {
@@ -94,32 +268,61 @@ public class MiningService implements Runnable {
 			}
 		}
 
-		// sleep if no more transactions left
+		// confirmed by another Block in the meantime
 		if (transactions.isEmpty()) {
-			LOG.info("No transactions available, pausing");
-			try {
-				Thread.sleep(10000);
-			} catch (InterruptedException e) {
-				LOG.error("Thread interrupted", e);
-			}
 			return null;
 		}
 
-		// try new block until difficulty is sufficient
-		while (runMiner.get()) {
-			try {
-				LOG.info("tries increased to " + tries);
-				Block block = new Block(previousBlockHash, transactions, tries);
-				if (block.getLeadingZerosCount() >= miningDifficulty) {
-					return block;
-				}
-				tries++;
-			} catch (GeneralSecurityException e) {
-				LOG.error("GeneralSecurityException for SCrypt hashing occured: ", e);
+		// try new blocks on all workers until difficulty is sufficient
+		try {
+			// never below the version of the chain, older versions are rejected
+			HashEngine engine = HashEngine.forVersion(Math.max(HashEngine.getDefaultVersion(),
+					previousBlock != null ? previousBlock.getVersion() : 0));
+			int bits = engine.hasTarget() ? blockService.getNextBits() : 0;
+			byte[] target = engine.hasTarget() ? Target.toBytes(bits) : Target.fromLeadingZeroBytes(miningDifficulty);
+			BlockTemplate template = new BlockTemplate(engine.getVersion(), previousBlockHash, transactions,
+					transactionService.calculateMerkleRoot(engine, transactions), System.currentTimeMillis(), bits);
+			MiningJob current = new MiningJob(previousBlockHash, transactions);
+			job = current;
+			// the tip may have moved while the template was built
+			Block lastBlock = blockService.getLastBlock();
+			if (!Arrays.equals(previousBlockHash, lastBlock != null ? lastBlock.getHash() : null)) {
+				current.abort("new chain tip");
 			}
+			Block block = miner.mine(template, target, () -> runMiner.get() && !current.stale);
+			return current.stale ? null : block;
+		} catch (GeneralSecurityException e) {
+			LOG.error("GeneralSecurityException for SCrypt hashing occured: ", e);
+			return null;
+		} catch (IOException e) {
+			LOG.error("Unable to read headers for retargeting", e);
+			return null;
+		} finally {
+			job = null;
+		}
+	}
+
+	/**
+	 * Tip and Transactions a running search is based on
+	 */
+	private class MiningJob {
 
+		private final byte[] previousBlockHash;
+		private final Set<Transaction> transactions;
+		private volatile boolean stale;
+
+		private MiningJob(byte[] previousBlockHash, List<Transaction> transactions) {
+			this.previousBlockHash = previousBlockHash;
+			this.transactions = new HashSet<>(transactions);
+		}
+
+		private synchronized void abort(String reason) {
+			if (!stale) {
+				stale = true;
+				staleTemplates.incrementAndGet();
+				LOG.info("Aborting stale template: " + reason);
+			}
 		}
-		return null;
 	}
 
 }
@@ -1,19 +1,18 @@
 package de.pk.jblockchain.node.service;
 
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.zip.GZIPOutputStream;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
@@ -30,6 +29,9 @@ import org.springframework.web.client.RestTemplate;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import de.pk.jblockchain.common.domain.Node;
+import de.pk.jblockchain.node.rest.BinaryMessageConverter;
+import de.pk.jblockchain.node.storage.AtomicFiles;
+import de.pk.jblockchain.node.storage.PersistenceScheduler;
 
 @Service
 public class NodeService implements ApplicationListener<EmbeddedServletContainerInitializedEvent> {
@@ -42,6 +44,8 @@ public class NodeService implements ApplicationListener<EmbeddedServletContainer
 	private final BlockService blockService;
 	private final TransactionService transactionService;
 	private final AddressService addressService;
+	private final PersistenceScheduler persistenceScheduler;
+	private final ObjectMapper mapper;
 
 	@Value("${server.ssl.enabled}")
 	private Boolean sslEnabled;
@@ -51,7 +55,7 @@ public class NodeService implements ApplicationListener<EmbeddedServletContainer
 
 	private Node self;
 	private Set<Node> knownNodes = new HashSet<>();
-	private RestTemplate restTemplate = new RestTemplate(getClientHttpRequestFactory());
+	private final RestTemplate restTemplate;
 
 	private ClientHttpRequestFactory getClientHttpRequestFactory() {
 		int timeout = 5000;
@@ -62,10 +66,26 @@ public class NodeService implements ApplicationListener<EmbeddedServletContainer
 
 	@Autowired
 	public NodeService(BlockService blockService, TransactionService transactionService,
-			AddressService addressService) {
+			AddressService addressService, PersistenceScheduler persistenceScheduler, ObjectMapper mapper,
+			@Value("${blockchain.network.format}") String networkFormat) {
 		this.blockService = blockService;
 		this.transactionService = transactionService;
 		this.addressService = addressService;
+		this.persistenceScheduler = persistenceScheduler;
+		this.mapper = mapper;
+		this.restTemplate = new RestTemplate(getClientHttpRequestFactory());
+		// the first matching converter writes request bodies and is asked for
+		// first in the Accept header
+		if ("binary".equals(networkFormat)) {
+			this.restTemplate.getMessageConverters().add(0, new BinaryMessageConverter());
+		} else {
+			this.restTemplate.getMessageConverters().add(new BinaryMessageConverter());
+		}
+	}
+
+	@PostConstruct
+	void registerStore() {
+		persistenceScheduler.register("node", this::save);
 	}
 
 	/**
@@ -78,29 +98,17 @@ public class NodeService implements ApplicationListener<EmbeddedServletContainer
 	}
 
 	/**
-	 * save values
+	 * save values, called by the PersistenceScheduler in the background
 	 *
 	 */
 	public void save() throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		FileOutputStream fStream = null;
-		GZIPOutputStream zStream = null;
-		try {
-			fStream = new FileOutputStream(System.getProperty("user.home") + this.storePath + "node.json.gz");
-			zStream = new GZIPOutputStream(new BufferedOutputStream(fStream));
-			mapper.writeValue(zStream, this.knownNodes);
-
-		} finally {
-			if (zStream != null) {
-				zStream.flush();
-				zStream.close();
-			}
-			if (fStream != null) {
-				fStream.flush();
-				fStream.close();
-			}
-			System.out.println("Nodes saved!");
+		Set<Node> snapshot;
+		synchronized (this) {
+			snapshot = new HashSet<>(this.knownNodes);
 		}
+		AtomicFiles.writeGzip(Paths.get(System.getProperty("user.home") + this.storePath + "node.json.gz"),
+				out -> mapper.writeValue(out, snapshot));
+		LOG.debug("Saved " + snapshot.size() + " nodes");
 	}
 
 	/**
@@ -151,20 +159,12 @@ public class NodeService implements ApplicationListener<EmbeddedServletContainer
 
 	public synchronized void add(Node node) {
 		knownNodes.add(node);
-		try {
-			this.save();
-		} catch (IOException e) {
-			System.out.println("Unable to save nodes: " + e.getMessage());
-		}
+		persistenceScheduler.markDirty("node");
 	}
 
 	public synchronized void remove(Node node) {
 		knownNodes.remove(node);
-		try {
-			this.save();
-		} catch (IOException e) {
-			System.out.println("Unable to save nodes: " + e.getMessage());
-		}
+		persistenceScheduler.markDirty("node");
 	}
 
 	/**
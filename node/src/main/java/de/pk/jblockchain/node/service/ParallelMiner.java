@@ -0,0 +1,169 @@
+package de.pk.jblockchain.node.service;
+
+import java.io.Closeable;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockTemplate;
+import de.pk.jblockchain.common.domain.Target;
+
+/**
+ * Searches the nonce space of a Block with a pool of worker threads. Worker i
+ * of n tries the nonces i, i + n, i + 2n, ..., so the workers never try the
+ * same nonce, and all of them stop as soon as one found a hash meeting the
+ * target. Every worker only hashes the header of the BlockTemplate with
+ * its nonce.
+ */
+class ParallelMiner implements Closeable {
+
+	private final int workerCount;
+	private final ExecutorService workers;
+
+	private final AtomicLongArray totalHashes;
+	private volatile double[] lastHashrates;
+	private volatile long lastSearchMillis;
+	private volatile long blocksFound;
+
+	/**
+	 * @param workerCount
+	 *            number of worker threads
+	 */
+	ParallelMiner(int workerCount) {
+		this.workerCount = workerCount;
+		AtomicInteger number = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+			Thread thread = new Thread(runnable, "miner-worker-" + number.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.totalHashes = new AtomicLongArray(workerCount);
+		this.lastHashrates = new double[workerCount];
+	}
+
+	/**
+	 * Search a nonce for a new Block
+	 *
+	 * @param template
+	 *            the new Block without its nonce
+	 * @param target
+	 *            the Block hash has to be less than or equal to, see Target
+	 * @param running
+	 *            checked by the workers before every nonce, the search is
+	 *            aborted once it returns false
+	 * @return Block meeting the target or null if the search was aborted
+	 * @throws GeneralSecurityException
+	 */
+	Block mine(BlockTemplate template, byte[] target, BooleanSupplier running) throws GeneralSecurityException {
+		AtomicReference<Block> found = new AtomicReference<>();
+		AtomicBoolean done = new AtomicBoolean(false);
+		long[] hashes = new long[workerCount];
+		List<Future<Void>> futures = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int i = 0; i < workerCount; i++) {
+			int worker = i;
+			futures.add(workers.submit((Callable<Void>) () -> {
+				BlockTemplate.Hasher hasher = template.newHasher();
+				byte[] hash = new byte[template.getHashLength()];
+				// counted locally, adjacent slots of hashes share a cache line
+				long count = 0;
+				try {
+					for (long tries = worker; !done.get() && running.getAsBoolean(); tries += workerCount) {
+						hasher.hash(tries, hash);
+						count++;
+						if (Target.meets(hash, target)
+								&& found.compareAndSet(null, template.toBlock(tries, hash.clone()))) {
+							done.set(true);
+						}
+					}
+				} finally {
+					// visible to the caller through future.get()
+					hashes[worker] = count;
+				}
+				return null;
+			}));
+		}
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			done.set(true);
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			done.set(true);
+			if (e.getCause() instanceof GeneralSecurityException) {
+				throw (GeneralSecurityException) e.getCause();
+			}
+			throw new IllegalStateException("Mining worker failed", e.getCause());
+		}
+		recordStatistics(hashes, System.nanoTime() - start, found.get() != null);
+		return found.get();
+	}
+
+	int getWorkerCount() {
+		return workerCount;
+	}
+
+	/**
+	 * Hashes and hashrate of every worker during the last search and in
+	 * total
+	 *
+	 * @return statistics by name
+	 */
+	Map<String, Object> getStatistics() {
+		double[] hashrates = lastHashrates;
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		List<Map<String, Object>> workerStatistics = new ArrayList<>();
+		double hashrate = 0;
+		long total = 0;
+		for (int i = 0; i < workerCount; i++) {
+			Map<String, Object> worker = new LinkedHashMap<>();
+			worker.put("hashrate", hashrates[i]);
+			worker.put("totalHashes", totalHashes.get(i));
+			workerStatistics.add(worker);
+			hashrate += hashrates[i];
+			total += totalHashes.get(i);
+		}
+		statistics.put("workers", workerCount);
+		statistics.put("hashrate", hashrate);
+		statistics.put("totalHashes", total);
+		statistics.put("blocksFound", blocksFound);
+		statistics.put("lastSearchMillis", lastSearchMillis);
+		statistics.put("perWorker", workerStatistics);
+		return statistics;
+	}
+
+	@Override
+	public void close() {
+		workers.shutdownNow();
+	}
+
+	private void recordStatistics(long[] hashes, long nanos, boolean found) {
+		double seconds = Math.max(nanos, 1) / 1e9;
+		double[] hashrates = new double[workerCount];
+		for (int i = 0; i < workerCount; i++) {
+			totalHashes.addAndGet(i, hashes[i]);
+			hashrates[i] = hashes[i] / seconds;
+		}
+		lastHashrates = hashrates;
+		lastSearchMillis = nanos / 1000000;
+		if (found) {
+			blocksFound++;
+		}
+	}
+}
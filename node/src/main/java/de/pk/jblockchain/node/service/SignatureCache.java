@@ -0,0 +1,137 @@
+package de.pk.jblockchain.node.service;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * Results of signature verifications keyed by the hash of a Transaction and
+ * the hash of the public key of its sender. The Transaction hash covers text,
+ * sender, signature and timestamp, so a result may only be looked up after
+ * the hash was recalculated. The cache is split into segments, each keeping
+ * its most recently used results up to an equal share of the capacity, so
+ * threads looking up different Transactions rarely wait for each other.
+ */
+class SignatureCache {
+
+	private final Segment[] segments;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            maximum number of results kept
+	 * @param segments
+	 *            number of locks, rounded up to a power of 2
+	 */
+	SignatureCache(int capacity, int segments) {
+		int count = segments > 1 ? Integer.highestOneBit(segments - 1) << 1 : 1;
+		int segmentCapacity = Math.max(capacity / count, 1);
+		this.segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			this.segments[i] = new Segment(segmentCapacity);
+		}
+	}
+
+	/**
+	 * Result of an earlier verification
+	 *
+	 * @param transactionHash
+	 *            recalculated hash of the Transaction
+	 * @param senderHash
+	 *            hash of the public key of the sender
+	 * @return true if the signature was valid, false if it was not, null if
+	 *         it was not verified or its result was dropped
+	 */
+	Boolean get(byte[] transactionHash, byte[] senderHash) {
+		ByteBuffer key = key(transactionHash, senderHash);
+		Segment segment = segment(key);
+		Boolean verified;
+		synchronized (segment) {
+			verified = segment.get(key);
+		}
+		(verified != null ? hits : misses).incrementAndGet();
+		return verified;
+	}
+
+	/**
+	 * Keep the result of a verification, dropping the least recently used
+	 * result of the segment if it is full
+	 *
+	 * @param transactionHash
+	 *            recalculated hash of the Transaction
+	 * @param senderHash
+	 *            hash of the public key of the sender
+	 * @param verified
+	 *            true if the signature is valid
+	 */
+	void put(byte[] transactionHash, byte[] senderHash, boolean verified) {
+		ByteBuffer key = key(transactionHash, senderHash);
+		Segment segment = segment(key);
+		synchronized (segment) {
+			segment.put(key, verified);
+		}
+	}
+
+	/**
+	 * Number of results kept
+	 *
+	 * @return sum over all segments
+	 */
+	int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Hits, misses and hit ratio of all lookups
+	 *
+	 * @return statistics by name
+	 */
+	Map<String, Object> getStatistics() {
+		long hitCount = hits.get();
+		long missCount = misses.get();
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("hits", hitCount);
+		statistics.put("misses", missCount);
+		statistics.put("hitRatio", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0.0);
+		statistics.put("entries", size());
+		return statistics;
+	}
+
+	private static ByteBuffer key(byte[] transactionHash, byte[] senderHash) {
+		return ByteBuffer.wrap(ArrayUtils.addAll(transactionHash, senderHash));
+	}
+
+	private Segment segment(ByteBuffer key) {
+		return segments[key.hashCode() & (segments.length - 1)];
+	}
+
+	/**
+	 * Results in order of access, guarded by its own monitor
+	 */
+	private static class Segment extends LinkedHashMap<ByteBuffer, Boolean> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		private Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Boolean> eldest) {
+			return size() > capacity;
+		}
+	}
+}
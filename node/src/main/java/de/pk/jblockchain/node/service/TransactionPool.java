@@ -0,0 +1,187 @@
+package de.pk.jblockchain.node.service;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import de.pk.jblockchain.common.domain.Transaction;
+
+/**
+ * Set of pooled Transactions for many concurrent writers. Every Transaction
+ * gets a sequence number on arrival. Membership is a lookup of the hash in a
+ * concurrent hash map, iteration walks a concurrent skip list in order of
+ * arrival and never fails while other threads add or remove Transactions.
+ * Adding and removing only lock one of a fixed number of stripes, chosen by
+ * hash, so writers of different Transactions do not wait for each other.
+ */
+class TransactionPool extends AbstractSet<Transaction> {
+
+	private final Object[] stripes;
+	private final AtomicLong sequence = new AtomicLong();
+	private final Map<ByteBuffer, Long> sequenceByHash = new ConcurrentHashMap<>();
+	private final ConcurrentSkipListMap<Long, Transaction> transactionsBySequence = new ConcurrentSkipListMap<>();
+
+	/**
+	 * @param stripes
+	 *            number of locks, rounded up to a power of 2
+	 */
+	TransactionPool(int stripes) {
+		int count = Integer.highestOneBit(Math.max(stripes - 1, 1)) << 1;
+		this.stripes = new Object[count];
+		for (int i = 0; i < count; i++) {
+			this.stripes[i] = new Object();
+		}
+	}
+
+	@Override
+	public boolean add(Transaction transaction) {
+		return add(transaction, null);
+	}
+
+	/**
+	 * Add a Transaction behind all others
+	 *
+	 * @param transaction
+	 *            Transaction to add
+	 * @param onAdded
+	 *            called while no other thread can add or remove the
+	 *            Transaction, so records of the TransactionLog keep the order
+	 *            of the changes, or null
+	 * @return true if the Transaction was not pooled before
+	 */
+	boolean add(Transaction transaction, Consumer<Transaction> onAdded) {
+		if (transaction.getHash() == null) {
+			return false;
+		}
+		ByteBuffer key = ByteBuffer.wrap(transaction.getHash());
+		synchronized (stripe(key)) {
+			if (sequenceByHash.containsKey(key)) {
+				return false;
+			}
+			long number = sequence.incrementAndGet();
+			// iterable before it is a member, so every member can be iterated
+			transactionsBySequence.put(number, transaction);
+			sequenceByHash.put(key, number);
+			if (onAdded != null) {
+				onAdded.accept(transaction);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return o instanceof Transaction && remove((Transaction) o, null);
+	}
+
+	/**
+	 * Remove a Transaction
+	 *
+	 * @param transaction
+	 *            Transaction to remove
+	 * @param onRemoved
+	 *            called while no other thread can add or remove the
+	 *            Transaction, or null
+	 * @return true if the Transaction was pooled
+	 */
+	boolean remove(Transaction transaction, Consumer<Transaction> onRemoved) {
+		if (transaction.getHash() == null) {
+			return false;
+		}
+		ByteBuffer key = ByteBuffer.wrap(transaction.getHash());
+		synchronized (stripe(key)) {
+			Long number = sequenceByHash.remove(key);
+			if (number == null) {
+				return false;
+			}
+			transactionsBySequence.remove(number);
+			if (onRemoved != null) {
+				onRemoved.accept(transaction);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof Transaction && contains(((Transaction) o).getHash());
+	}
+
+	/**
+	 * Is a Transaction pooled? Does not lock.
+	 *
+	 * @param hash
+	 *            hash of the Transaction
+	 * @return true if a Transaction with this hash is pooled
+	 */
+	boolean contains(byte[] hash) {
+		return hash != null && sequenceByHash.containsKey(ByteBuffer.wrap(hash));
+	}
+
+	/**
+	 * The Transactions which arrived first, for new Blocks
+	 *
+	 * @param count
+	 *            maximum number of Transactions
+	 * @return Transactions in order of arrival
+	 */
+	List<Transaction> getOldest(int count) {
+		List<Transaction> oldest = new ArrayList<>(Math.min(count, size()));
+		for (Transaction transaction : transactionsBySequence.values()) {
+			if (oldest.size() >= count) {
+				break;
+			}
+			oldest.add(transaction);
+		}
+		return oldest;
+	}
+
+	/**
+	 * Iterates in order of arrival. Sees all Transactions pooled when it was
+	 * created and not removed since, Transactions added later may be seen.
+	 */
+	@Override
+	public Iterator<Transaction> iterator() {
+		Iterator<Transaction> iterator = transactionsBySequence.values().iterator();
+		return new Iterator<Transaction>() {
+
+			private Transaction last;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Transaction next() {
+				last = iterator.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				TransactionPool.this.remove(last);
+				last = null;
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return sequenceByHash.size();
+	}
+
+	private Object stripe(ByteBuffer key) {
+		return stripes[key.hashCode() & (stripes.length - 1)];
+	}
+}
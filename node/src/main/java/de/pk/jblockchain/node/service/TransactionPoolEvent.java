@@ -0,0 +1,41 @@
+package de.pk.jblockchain.node.service;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.springframework.context.ApplicationEvent;
+
+import de.pk.jblockchain.common.domain.Transaction;
+
+/**
+ * Published by the TransactionService after Transactions were added to or
+ * removed from the pool
+ */
+public class TransactionPoolEvent extends ApplicationEvent {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Collection<Transaction> added;
+	private final Collection<Transaction> removed;
+
+	public TransactionPoolEvent(Object source, Collection<Transaction> added, Collection<Transaction> removed) {
+		super(source);
+		this.added = Collections.unmodifiableCollection(added);
+		this.removed = Collections.unmodifiableCollection(removed);
+	}
+
+	/**
+	 * @return Transactions new in the pool
+	 */
+	public Collection<Transaction> getAdded() {
+		return added;
+	}
+
+	/**
+	 * @return Transactions no longer in the pool, usually because a Block
+	 *         confirmed them
+	 */
+	public Collection<Transaction> getRemoved() {
+		return removed;
+	}
+}
@@ -1,56 +1,148 @@
 package de.pk.jblockchain.node.service;
 
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
 
 import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import de.pk.jblockchain.common.SignatureUtils;
 import de.pk.jblockchain.common.domain.Address;
+import de.pk.jblockchain.common.domain.MerkleProof;
+import de.pk.jblockchain.common.domain.MerkleTree;
 import de.pk.jblockchain.common.domain.Node;
 import de.pk.jblockchain.common.domain.Transaction;
+import de.pk.jblockchain.common.hash.HashEngine;
 import de.pk.jblockchain.node.service.smartContract.SmartContractService;
+import de.pk.jblockchain.node.storage.PersistenceScheduler;
+import de.pk.jblockchain.node.storage.TransactionLog;
 
 @Service
 public class TransactionService {
 
-	@Value("${storage.path}")
-	private String storePath;
-
 	private final static Logger LOG = LoggerFactory.getLogger(TransactionService.class);
 
 	private final AddressService addressService;
+	private final TransactionLog transactionLog;
+	private final PersistenceScheduler persistenceScheduler;
+	private final ApplicationEventPublisher eventPublisher;
 
 	@Autowired
 	SmartContractService smartContractService;
 
 	/**
-	 * Pool of Transactions which are not included in a Block yet.
+	 * Pool of Transactions which are not included in a Block yet, in order of
+	 * arrival. New Blocks take the oldest Transactions, so their Merkle trees
+	 * share most nodes with the trees calculated before.
+	 */
+	private final TransactionPool transactionPool = new TransactionPool(64);
+
+	/**
+	 * Shared by threads changing the pool, exclusive while it is copied, so
+	 * copies match the records of the TransactionLog
 	 */
-	private Set<Transaction> transactionPool = new HashSet<>();
+	private final ReadWriteLock poolLock = new ReentrantReadWriteLock();
+
+	/**
+	 * Inner nodes of the Merkle trees of recently mined and verified Blocks
+	 */
+	private final MerkleTree merkleTree = new MerkleTree(65536);
+
+	@Value("${blockchain.transactions.signatureCacheSize}")
+	private int signatureCacheSize;
+
+	/**
+	 * Signature results of Transactions verified before, so Transactions
+	 * delivered again by other Nodes or contained in Blocks skip the DSA
+	 * verification
+	 */
+	private SignatureCache signatureCache;
 
 	@Autowired
-	public TransactionService(AddressService addressService) {
+	public TransactionService(AddressService addressService, TransactionLog transactionLog,
+			PersistenceScheduler persistenceScheduler, ApplicationEventPublisher eventPublisher) {
 		this.addressService = addressService;
+		this.transactionLog = transactionLog;
+		this.persistenceScheduler = persistenceScheduler;
+		this.eventPublisher = eventPublisher;
+	}
+
+	@PostConstruct
+	void registerStore() {
+		persistenceScheduler.register("transaction", this::compactIfNeeded);
 	}
 
+	@PostConstruct
+	void createSignatureCache() {
+		signatureCache = new SignatureCache(signatureCacheSize, 64);
+	}
+
+	/**
+	 * View of the pool in order of arrival, it can be iterated while other
+	 * threads change the pool
+	 *
+	 * @return unmodifiable Set of all Transactions in the pool
+	 */
 	public Set<Transaction> getTransactionPool() {
-		return transactionPool;
+		return Collections.unmodifiableSet(transactionPool);
+	}
+
+	/**
+	 * Copy the pool while no Transaction is added or removed
+	 *
+	 * @return Set of all Transactions in the pool
+	 */
+	public Set<Transaction> copyTransactionPool() {
+		poolLock.writeLock().lock();
+		try {
+			return new LinkedHashSet<>(transactionPool);
+		} finally {
+			poolLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * The Transactions waiting longest, for a new Block
+	 *
+	 * @param count
+	 *            maximum number of Transactions
+	 * @return Transactions in order of arrival
+	 */
+	public List<Transaction> getOldestTransactions(int count) {
+		return transactionPool.getOldest(count);
+	}
+
+	/**
+	 * Is a Transaction in the pool? Constant time, does not lock.
+	 *
+	 * @param hash
+	 *            hash of the Transaction
+	 * @return true if a Transaction with this hash is pooled
+	 */
+	public boolean contains(byte[] hash) {
+		return transactionPool.contains(hash);
 	}
 
 	/**
@@ -59,53 +151,65 @@ public class TransactionService {
 	 * @param Set<Transaction>
 	 */
 	public void init(Set<Transaction> transactions) {
-		this.transactionPool = transactions;
+		poolLock.writeLock().lock();
+		try {
+			transactionPool.clear();
+			transactionPool.addAll(transactions);
+		} finally {
+			poolLock.writeLock().unlock();
+		}
 	}
 
 	/**
-	 * save values
+	 * save values, the pool is written as snapshot and the TransactionLog
+	 * starts over
 	 *
 	 */
 	public void save() throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		FileOutputStream fStream = null;
-		GZIPOutputStream zStream = null;
+		Future<Void> compacted;
+		poolLock.writeLock().lock();
 		try {
-			fStream = new FileOutputStream(System.getProperty("user.home") + this.storePath + "transaction.json.gz");
-			zStream = new GZIPOutputStream(new BufferedOutputStream(fStream));
-			mapper.writeValue(zStream, this.transactionPool);
-
+			compacted = transactionLog.compact(copyTransactionPool());
 		} finally {
-			if (zStream != null) {
-				zStream.flush();
-				zStream.close();
-			}
-			if (fStream != null) {
-				fStream.flush();
-				fStream.close();
-			}
-			System.out.println("Transactions Saved!");
+			poolLock.writeLock().unlock();
+		}
+		try {
+			compacted.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
 		}
 	}
 
 	/**
-	 * Add a new Transaction to the pool
+	 * Add a new Transaction to the pool. Returns as soon as the Transaction is
+	 * written to the TransactionLog together with all other Transactions
+	 * arriving in the meantime. Threads adding different Transactions do not
+	 * wait for each other.
 	 *
 	 * @param transaction
 	 *            Transaction to add
 	 * @return true if verification succeeds and Transaction was added
 	 */
-	public synchronized boolean add(Transaction transaction) {
-		if (verify(transaction)) {
-			transactionPool.add(transaction);
-			try {
-				this.save();
-			} catch (IOException e) {
-				System.out.println("Unable to save transactions: " + e.getMessage());
+	public boolean add(Transaction transaction) {
+		if (!verify(transaction)) {
+			return false;
+		}
+		AtomicReference<Future<Void>> written = new AtomicReference<>();
+		poolLock.readLock().lock();
+		try {
+			if (!transactionPool.add(transaction, added -> written.set(transactionLog.add(added)))) {
+				return true;
 			}
-			return true;
+		} finally {
+			poolLock.readLock().unlock();
 		}
-		return false;
+		persistenceScheduler.markDirty("transaction");
+		awaitLog(written.get());
+		eventPublisher.publishEvent(
+				new TransactionPoolEvent(this, Collections.singleton(transaction), Collections.emptyList()));
+		return true;
 	}
 
 	/**
@@ -115,16 +219,40 @@ public class TransactionService {
 	 *            Transaction to remove
 	 */
 	public void remove(Transaction transaction) {
-		transactionPool.remove(transaction);
+		removeAll(Collections.singleton(transaction));
+	}
+
+	/**
+	 * Remove Transactions from pool, the removals share one write to the
+	 * TransactionLog
+	 *
+	 * @param transactions
+	 *            Transactions to remove
+	 */
+	public void removeAll(Collection<Transaction> transactions) {
+		AtomicReference<Future<Void>> written = new AtomicReference<>(CompletableFuture.completedFuture(null));
+		List<Transaction> removed = new ArrayList<>();
+		poolLock.readLock().lock();
 		try {
-			this.save();
-		} catch (IOException e) {
-			System.out.println("Unable to save transactions: " + e.getMessage());
+			for (Transaction transaction : transactions) {
+				if (transactionPool.remove(transaction, pooled -> written.set(transactionLog.remove(pooled)))) {
+					removed.add(transaction);
+				}
+			}
+		} finally {
+			poolLock.readLock().unlock();
+		}
+		if (removed.isEmpty()) {
+			return;
 		}
+		persistenceScheduler.markDirty("transaction");
+		awaitLog(written.get());
+		eventPublisher.publishEvent(new TransactionPoolEvent(this, Collections.emptyList(), removed));
 	}
 
 	/**
-	 * Does the pool contain all given Transactions?
+	 * Does the pool contain all given Transactions? Looks up every hash in
+	 * constant time.
 	 *
 	 * @param transactions
 	 *            Collection of Transactions to check
@@ -134,7 +262,70 @@ public class TransactionService {
 		return transactionPool.containsAll(transactions);
 	}
 
-	private boolean verify(Transaction transaction) {
+	/**
+	 * Calculate the Merkle root of Transactions, reusing the inner nodes of
+	 * Blocks mined or verified before
+	 *
+	 * @param engine
+	 *            HashEngine of the Block version
+	 * @param transactions
+	 *            Transactions in order of the Block
+	 * @return Merkle hash as raw bytes, equal to Block.calculateMerkleRoot()
+	 * @throws GeneralSecurityException
+	 */
+	public byte[] calculateMerkleRoot(HashEngine engine, List<Transaction> transactions)
+			throws GeneralSecurityException {
+		return merkleTree.calculateRoot(engine, transactions);
+	}
+
+	/**
+	 * Collect the siblings on the path from a Transaction to the Merkle root,
+	 * reusing the inner nodes of Blocks mined or verified before
+	 *
+	 * @param engine
+	 *            HashEngine of the Block version
+	 * @param transactions
+	 *            Transactions in order of the Block
+	 * @param transactionHash
+	 *            hash of the Transaction to prove
+	 * @return siblings starting at the Transaction or null if no Transaction
+	 *         has this hash
+	 * @throws GeneralSecurityException
+	 */
+	public List<MerkleProof.Sibling> calculateMerklePath(HashEngine engine, List<Transaction> transactions,
+			byte[] transactionHash) throws GeneralSecurityException {
+		return merkleTree.calculatePath(engine, transactions, transactionHash);
+	}
+
+	/**
+	 * Hits and misses of the cached Merkle tree nodes
+	 *
+	 * @return statistics by name
+	 */
+	public Map<String, Long> getMerkleTreeStatistics() {
+		return merkleTree.getStatistics();
+	}
+
+	/**
+	 * Hits and misses of the cached signature results
+	 *
+	 * @return statistics by name
+	 */
+	public Map<String, Object> getSignatureCacheStatistics() {
+		return signatureCache.getStatistics();
+	}
+
+	/**
+	 * Verify a Transaction on its own: known sender, valid contract, hash and
+	 * signature. The signature of a Transaction with the same hash and sender
+	 * is only verified once as long as its result is cached. Safe to call
+	 * from many threads.
+	 *
+	 * @param transaction
+	 *            Transaction to verify
+	 * @return true if the Transaction is valid
+	 */
+	public boolean verify(Transaction transaction) {
 		// correct signature
 		Address sender = addressService.getByHash(transaction.getSenderHash());
 		if (sender == null) {
@@ -147,20 +338,25 @@ public class TransactionService {
 			return false;
 		}
 
-		try {
-			if (!SignatureUtils.verify(transaction.getSignableData(), transaction.getSignature(),
-					sender.getPublicKey())) {
-				LOG.warn("Invalid signature");
-				return false;
-			}
-		} catch (Exception e) {
-			LOG.error("Error while verification", e);
+		// correct hash, it covers the signature, so cached results apply
+		if (!Arrays.equals(transaction.getHash(), transaction.calculateHash())) {
+			LOG.warn("Invalid hash");
 			return false;
 		}
 
-		// correct hash
-		if (!Arrays.equals(transaction.getHash(), transaction.calculateHash())) {
-			LOG.warn("Invalid hash");
+		Boolean verified = signatureCache.get(transaction.getHash(), sender.getHash());
+		if (verified == null) {
+			try {
+				verified = SignatureUtils.verify(transaction.getSignableData(), transaction.getSignature(),
+						sender.getPublicKey());
+			} catch (Exception e) {
+				LOG.error("Error while verification", e);
+				return false;
+			}
+			signatureCache.put(transaction.getHash(), sender.getHash(), verified);
+		}
+		if (!verified) {
+			LOG.warn("Invalid signature");
 			return false;
 		}
 
@@ -168,7 +364,8 @@ public class TransactionService {
 	}
 
 	/**
-	 * Download Transactions from other Node and them to the pool
+	 * Download Transactions from other Node and add the valid ones to the
+	 * pool. Transactions received before are verified from the cache.
 	 *
 	 * @param node
 	 *            Node to query
@@ -177,7 +374,50 @@ public class TransactionService {
 	 */
 	public void retrieveTransactions(Node node, RestTemplate restTemplate) {
 		Transaction[] transactions = restTemplate.getForObject(node.getAddress() + "/transaction", Transaction[].class);
-		Collections.addAll(transactionPool, transactions);
-		LOG.info("Retrieved " + transactions.length + " transactions from node " + node.getAddress());
+		List<Transaction> valid = new ArrayList<>(transactions.length);
+		for (Transaction transaction : transactions) {
+			if (verify(transaction)) {
+				valid.add(transaction);
+			}
+		}
+		AtomicReference<Future<Void>> written = new AtomicReference<>(CompletableFuture.completedFuture(null));
+		List<Transaction> added = new ArrayList<>();
+		poolLock.readLock().lock();
+		try {
+			for (Transaction transaction : valid) {
+				if (transactionPool.add(transaction, pooled -> written.set(transactionLog.add(pooled)))) {
+					added.add(transaction);
+				}
+			}
+		} finally {
+			poolLock.readLock().unlock();
+		}
+		if (!added.isEmpty()) {
+			persistenceScheduler.markDirty("transaction");
+			awaitLog(written.get());
+			eventPublisher.publishEvent(new TransactionPoolEvent(this, added, Collections.emptyList()));
+		}
+		LOG.info("Retrieved " + transactions.length + " transactions from node " + node.getAddress() + ", "
+				+ (transactions.length - valid.size()) + " invalid");
+	}
+
+	/**
+	 * Compact the TransactionLog into a new snapshot once it grew too big,
+	 * called by the PersistenceScheduler in the background
+	 */
+	private void compactIfNeeded() throws IOException {
+		if (transactionLog.needsCompaction()) {
+			save();
+		}
+	}
+
+	private void awaitLog(Future<Void> written) {
+		try {
+			written.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOG.error("Unable to save transactions", e.getCause());
+		}
 	}
 }
@@ -0,0 +1,221 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.pk.jblockchain.common.codec.BinaryCodec;
+import de.pk.jblockchain.common.domain.Address;
+
+/**
+ * Persistent registry of all Addresses. Every new Address is appended as a
+ * record to address.log, address.idx is a MappedHashIndex from the raw
+ * 32-byte Address hash to offset and length of its record. Looking up a hash
+ * probes the mapped table without allocating, only the record of a found
+ * Address is read. Addresses never change, so the log is never rewritten.
+ */
+public class AddressRegistry implements Closeable {
+
+	private final static Logger LOG = LoggerFactory.getLogger(AddressRegistry.class);
+
+	static final byte TYPE_ADDRESS = 1;
+
+	private static final int LENGTH_BITS = 16;
+
+	private final Path logFile;
+	private final Path indexFile;
+	private final long initialCapacity;
+
+	private FileChannel channel;
+	private MappedHashIndex index;
+	private long end;
+
+	/**
+	 * @param directory
+	 *            directory of log and index
+	 * @param initialCapacity
+	 *            number of slots of a new index, it grows on demand
+	 */
+	public AddressRegistry(Path directory, long initialCapacity) {
+		this.logFile = directory.resolve("address.log");
+		this.indexFile = directory.resolve("address.idx");
+		this.initialCapacity = initialCapacity;
+	}
+
+	/**
+	 * Open log and index and index the records appended after the index was
+	 * last updated. A torn record at the end of the log is cut off.
+	 *
+	 * @return number of registered Addresses
+	 * @throws IOException
+	 */
+	public synchronized long load() throws IOException {
+		open();
+		return index.size();
+	}
+
+	/**
+	 * Find an Address by its hash
+	 *
+	 * @param hash
+	 *            hash of the Address
+	 * @return Address or null if it is not registered
+	 * @throws IOException
+	 */
+	public Address get(byte[] hash) throws IOException {
+		long value = index().get(key(hash));
+		if (value < 0) {
+			return null;
+		}
+		byte[] payload = Records.read(channel, value >>> LENGTH_BITS, (int) (value & ((1 << LENGTH_BITS) - 1)));
+		return BinaryCodec.decode(payload, 1, payload.length - 1, Address.class);
+	}
+
+	/**
+	 * Is an Address registered? Does not allocate.
+	 *
+	 * @param hash
+	 *            hash of the Address
+	 * @return true if the Address is registered
+	 * @throws IOException
+	 */
+	public boolean contains(byte[] hash) throws IOException {
+		return index().get(key(hash)) >= 0;
+	}
+
+	/**
+	 * Register a new Address, Addresses already registered are ignored
+	 *
+	 * @param address
+	 *            Address to add
+	 * @return true if the Address was new
+	 * @throws IOException
+	 */
+	public synchronized boolean add(Address address) throws IOException {
+		byte[] key = key(address.getHash());
+		if (index().get(key) >= 0) {
+			return false;
+		}
+		ByteBuffer record = Records.frame(TYPE_ADDRESS, BinaryCodec.encode(address));
+		int length = record.remaining() - Records.HEADER_SIZE;
+		if (length >= 1 << LENGTH_BITS) {
+			throw new IOException("Address record of " + length + " bytes is too big");
+		}
+		long position = end;
+		while (record.hasRemaining()) {
+			position += channel.write(record, position);
+		}
+		index.put(key, (end << LENGTH_BITS) | length);
+		end = position;
+		index.setMark(end);
+		return true;
+	}
+
+	/**
+	 * Read all Addresses in order of registration
+	 *
+	 * @return all Addresses
+	 * @throws IOException
+	 */
+	public List<Address> readAll() throws IOException {
+		List<Address> addresses = new ArrayList<>();
+		FileChannel in;
+		long limit;
+		synchronized (this) {
+			index();
+			in = channel;
+			limit = end;
+		}
+		Records.scan(in, 0, (position, payload) -> {
+			if (position < limit) {
+				addresses.add(BinaryCodec.decode(payload, 1, payload.length - 1, Address.class));
+			}
+		});
+		return addresses;
+	}
+
+	/**
+	 * Number of registered Addresses
+	 *
+	 * @throws IOException
+	 */
+	public long size() throws IOException {
+		return index().size();
+	}
+
+	/**
+	 * Force log and index to disk
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void force() throws IOException {
+		if (channel != null) {
+			channel.force(false);
+			index.force();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel != null) {
+			force();
+			channel.close();
+			index.close();
+			channel = null;
+			index = null;
+		}
+	}
+
+	private synchronized MappedHashIndex index() throws IOException {
+		if (index == null) {
+			open();
+		}
+		return index;
+	}
+
+	private void open() throws IOException {
+		if (index != null) {
+			return;
+		}
+		Files.createDirectories(logFile.getParent());
+		channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		index = new MappedHashIndex(indexFile, BlockIndex.KEY_LENGTH, initialCapacity);
+		long indexed = index.getMark();
+		if (indexed > channel.size()) {
+			// the index got to disk but the end of the log did not, start over
+			LOG.warn("Address index is ahead of " + logFile + ", rebuilding it");
+			index.close();
+			Files.delete(indexFile);
+			index = new MappedHashIndex(indexFile, BlockIndex.KEY_LENGTH, initialCapacity);
+			indexed = 0;
+		}
+		long[] added = { 0 };
+		end = Records.scan(channel, indexed, (position, payload) -> {
+			Address address = BinaryCodec.decode(payload, 1, payload.length - 1, Address.class);
+			index.put(key(address.getHash()), (position << LENGTH_BITS) | payload.length);
+			added[0]++;
+		});
+		if (end < channel.size()) {
+			LOG.warn("Corrupt address record in " + logFile + " at offset " + end + ", truncating log");
+			channel.truncate(end);
+			channel.force(true);
+		}
+		index.setMark(end);
+		LOG.info("Loaded " + index.size() + " addresses, indexed " + added[0] + " new records of " + logFile);
+	}
+
+	private static byte[] key(byte[] hash) {
+		return hash.length == BlockIndex.KEY_LENGTH ? hash : DigestUtils.sha256(hash);
+	}
+}
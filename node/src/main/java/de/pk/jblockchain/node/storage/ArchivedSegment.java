@@ -0,0 +1,286 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Sealed BlockStore segment moved to the cold tier. The records of the
+ * segment are grouped into chunks of whole records, every chunk is deflated
+ * on its own and appended to segment-N.archive. The separate index
+ * segment-N.archive.idx maps the offset of every chunk in the original
+ * segment to its position in the archive, so BlockLocations stay valid and a
+ * single Block is read by inflating only its chunk.
+ */
+class ArchivedSegment implements Closeable {
+
+	static final String ARCHIVE_SUFFIX = ".archive";
+	static final String INDEX_SUFFIX = ".archive.idx";
+
+	private static final int MAGIC = 0x4a424152;
+	private static final int CHUNK_SIZE = 256 * 1024;
+
+	private final FileChannel channel;
+
+	/**
+	 * Per chunk: offset in the original segment, offset in the archive,
+	 * compressed and uncompressed length
+	 */
+	private final long[] segmentOffsets;
+	private final long[] archiveOffsets;
+	private final int[] compressedLengths;
+	private final int[] rawLengths;
+
+	/**
+	 * Last inflated chunk, Blocks are often read in order
+	 */
+	private volatile Chunk lastChunk;
+
+	private ArchivedSegment(FileChannel channel, long[] segmentOffsets, long[] archiveOffsets,
+			int[] compressedLengths, int[] rawLengths) {
+		this.channel = channel;
+		this.segmentOffsets = segmentOffsets;
+		this.archiveOffsets = archiveOffsets;
+		this.compressedLengths = compressedLengths;
+		this.rawLengths = rawLengths;
+	}
+
+	/**
+	 * Compress all valid records of a sealed segment into an archive and its
+	 * index. The index is written last, an archive without index is
+	 * incomplete.
+	 *
+	 * @param segment
+	 *            sealed segment file
+	 * @param archive
+	 *            archive file to write
+	 * @param index
+	 *            index file to write
+	 * @param level
+	 *            Deflater compression level
+	 * @return size of the archive in bytes
+	 * @throws IOException
+	 */
+	static long write(Path segment, Path archive, Path index, int level) throws IOException {
+		ByteArrayOutputStream entries = new ByteArrayOutputStream();
+		DataOutputStream indexOut = new DataOutputStream(entries);
+		long[] archiveSize = { 0 };
+		int[] count = { 0 };
+		Deflater deflater = new Deflater(level);
+		try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(archive, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			long[] chunkStart = { 0 };
+			long end = Records.scan(in, 0, (position, payload) -> {
+				long recordEnd = position + Records.HEADER_SIZE + payload.length;
+				if (recordEnd - chunkStart[0] >= CHUNK_SIZE) {
+					writeChunk(in, out, deflater, chunkStart[0], recordEnd, archiveSize, indexOut);
+					count[0]++;
+					chunkStart[0] = recordEnd;
+				}
+			});
+			if (end > chunkStart[0]) {
+				writeChunk(in, out, deflater, chunkStart[0], end, archiveSize, indexOut);
+				count[0]++;
+			}
+			out.force(true);
+		} finally {
+			deflater.end();
+		}
+		ByteBuffer header = ByteBuffer.allocate(8);
+		header.putInt(MAGIC);
+		header.putInt(count[0]);
+		byte[] body = concat(header.array(), entries.toByteArray());
+		AtomicFiles.write(index, out -> {
+			out.write(body);
+			out.write(ByteBuffer.allocate(4).putInt(checksum(body)).array());
+		});
+		return archiveSize[0];
+	}
+
+	/**
+	 * Open an archive written by write()
+	 *
+	 * @param archive
+	 *            archive file
+	 * @param index
+	 *            index file
+	 * @return readable archive
+	 * @throws IOException
+	 *             if the index is corrupt
+	 */
+	static ArchivedSegment open(Path archive, Path index) throws IOException {
+		byte[] data = Files.readAllBytes(index);
+		if (data.length < 12) {
+			throw new IOException("Truncated archive index " + index);
+		}
+		byte[] body = Arrays.copyOf(data, data.length - 4);
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(data.length - 4) != checksum(body)) {
+			throw new IOException("Corrupt archive index " + index);
+		}
+		int count = buffer.getInt(4);
+		if (body.length != 8 + count * 24) {
+			throw new IOException("Corrupt archive index " + index);
+		}
+		long[] segmentOffsets = new long[count];
+		long[] archiveOffsets = new long[count];
+		int[] compressedLengths = new int[count];
+		int[] rawLengths = new int[count];
+		buffer.position(8);
+		for (int i = 0; i < count; i++) {
+			segmentOffsets[i] = buffer.getLong();
+			archiveOffsets[i] = buffer.getLong();
+			compressedLengths[i] = buffer.getInt();
+			rawLengths[i] = buffer.getInt();
+		}
+		return new ArchivedSegment(FileChannel.open(archive, StandardOpenOption.READ), segmentOffsets,
+				archiveOffsets, compressedLengths, rawLengths);
+	}
+
+	/**
+	 * Read a single record by its offset in the original segment
+	 *
+	 * @param position
+	 *            offset of the record
+	 * @param length
+	 *            payload length of the record
+	 * @return payload of the record
+	 * @throws IOException
+	 */
+	byte[] read(long position, int length) throws IOException {
+		int chunk = Arrays.binarySearch(segmentOffsets, position);
+		if (chunk < 0) {
+			chunk = -chunk - 2;
+		}
+		if (chunk < 0) {
+			throw new IOException("No archived record at offset " + position);
+		}
+		return Records.payload(inflate(chunk), (int) (position - segmentOffsets[chunk]), length, position);
+	}
+
+	/**
+	 * Read all records from position to the end of the archive
+	 *
+	 * @param position
+	 *            offset of the first record in the original segment
+	 * @param consumer
+	 *            receives every record
+	 * @return offset behind the last record
+	 * @throws IOException
+	 */
+	long scan(long position, Records.RecordConsumer consumer) throws IOException {
+		for (int chunk = 0; chunk < segmentOffsets.length; chunk++) {
+			long chunkEnd = segmentOffsets[chunk] + rawLengths[chunk];
+			if (chunkEnd <= position) {
+				continue;
+			}
+			byte[] data = inflate(chunk);
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while (position < chunkEnd) {
+				int index = (int) (position - segmentOffsets[chunk]);
+				int length = buffer.getInt(index);
+				consumer.accept(position, Records.payload(data, index, length, position));
+				position += Records.HEADER_SIZE + length;
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Size of the original segment
+	 */
+	long size() {
+		int last = segmentOffsets.length - 1;
+		return last < 0 ? 0 : segmentOffsets[last] + rawLengths[last];
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private byte[] inflate(int chunk) throws IOException {
+		Chunk cached = lastChunk;
+		if (cached != null && cached.number == chunk) {
+			return cached.data;
+		}
+		ByteBuffer compressed = ByteBuffer.allocate(compressedLengths[chunk]);
+		Records.readFully(channel, compressed, archiveOffsets[chunk]);
+		byte[] data = new byte[rawLengths[chunk]];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed.array());
+			int inflated = 0;
+			while (inflated < data.length && !inflater.finished()) {
+				int n = inflater.inflate(data, inflated, data.length - inflated);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				inflated += n;
+			}
+			if (inflated != data.length) {
+				throw new IOException("Truncated archive chunk " + chunk);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt archive chunk " + chunk, e);
+		} finally {
+			inflater.end();
+		}
+		lastChunk = new Chunk(chunk, data);
+		return data;
+	}
+
+	private static void writeChunk(FileChannel in, FileChannel out, Deflater deflater, long from, long to,
+			long[] archiveSize, DataOutputStream index) throws IOException {
+		ByteBuffer raw = ByteBuffer.allocate((int) (to - from));
+		Records.readFully(in, raw, from);
+		deflater.reset();
+		deflater.setInput(raw.array());
+		deflater.finish();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.capacity() / 4);
+		byte[] buffer = new byte[65536];
+		while (!deflater.finished()) {
+			compressed.write(buffer, 0, deflater.deflate(buffer));
+		}
+		Records.writeFully(out, ByteBuffer.wrap(compressed.toByteArray()));
+		index.writeLong(from);
+		index.writeLong(archiveSize[0]);
+		index.writeInt(compressed.size());
+		index.writeInt(raw.capacity());
+		archiveSize[0] += compressed.size();
+	}
+
+	private static byte[] concat(byte[] first, byte[] second) {
+		byte[] result = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+	private static int checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		return (int) crc.getValue();
+	}
+
+	private static class Chunk {
+		private final int number;
+		private final byte[] data;
+
+		private Chunk(int number, byte[] data) {
+			this.number = number;
+			this.data = data;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replace files without ever leaving a half written version behind: the new
+ * content goes to a temporary file next to the target, is forced to disk and
+ * then renamed over the target in one atomic step. The directory is synced
+ * afterwards, so the rename itself survives a crash.
+ */
+public final class AtomicFiles {
+
+	private final static Logger LOG = LoggerFactory.getLogger(AtomicFiles.class);
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * Producer of the new file content
+	 */
+	public interface Content {
+		void writeTo(OutputStream out) throws IOException;
+	}
+
+	private AtomicFiles() {
+	}
+
+	/**
+	 * Atomically replace a gzip compressed file
+	 *
+	 * @param target
+	 *            file to replace
+	 * @param content
+	 *            writes the uncompressed content
+	 * @throws IOException
+	 */
+	public static void writeGzip(Path target, Content content) throws IOException {
+		write(target, out -> {
+			GZIPOutputStream zStream = new GZIPOutputStream(out);
+			content.writeTo(new NonClosingOutputStream(zStream));
+			zStream.finish();
+		});
+	}
+
+	/**
+	 * Atomically replace a file
+	 *
+	 * @param target
+	 *            file to replace
+	 * @param content
+	 *            writes the content
+	 * @throws IOException
+	 */
+	public static void write(Path target, Content content) throws IOException {
+		Path tempFile = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+		try (FileOutputStream fStream = new FileOutputStream(tempFile.toFile())) {
+			BufferedOutputStream out = new BufferedOutputStream(fStream);
+			content.writeTo(new NonClosingOutputStream(out));
+			out.flush();
+			fStream.getFD().sync();
+		}
+		Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(target.toAbsolutePath().getParent());
+	}
+
+	/**
+	 * Delete temporary files left behind by writes interrupted by a crash,
+	 * their targets still hold the last complete version
+	 *
+	 * @param directory
+	 *            directory to clean up
+	 * @return number of deleted files
+	 * @throws IOException
+	 */
+	public static int recover(Path directory) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return 0;
+		}
+		int deleted = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + TEMP_SUFFIX)) {
+			for (Path file : files) {
+				Files.delete(file);
+				LOG.warn("Deleted incomplete file " + file);
+				deleted++;
+			}
+		}
+		return deleted;
+	}
+
+	private static void syncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not every platform can open directories, e.g. Windows
+			LOG.debug("Unable to sync directory " + directory, e);
+		}
+	}
+
+	/**
+	 * Keeps writers like Jackson from closing the stream before it is synced
+	 */
+	private static class NonClosingOutputStream extends FilterOutputStream {
+
+		private NonClosingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import de.pk.jblockchain.common.domain.Transaction;
+
+/**
+ * Index over the BlockStore. height.idx holds one fixed-width entry (segment,
+ * record length, offset) per Block, hash.idx maps the Block hash to its
+ * height and transaction.idx maps the hash of every confirmed Transaction to
+ * the height of its Block. All files are memory mapped, so a Block is found in
+ * O(1) without reading any other Block. The index is derived data: the
+ * BlockStore checks and repairs it while replaying its segments.
+ */
+class BlockIndex implements Closeable {
+
+	/**
+	 * Length of the keys in hash.idx, Block hashes of another length are
+	 * hashed with SHA-256 first
+	 */
+	static final int KEY_LENGTH = 32;
+
+	private static final int MAGIC = 0x4a424c49;
+	private static final int ENTRY_SIZE = 16;
+	private static final int ENTRIES_PER_CHUNK = 1 << 20;
+
+	private final MappedFile heights;
+	private final MappedHashIndex hashes;
+	private final MappedHashIndex transactions;
+	private long count;
+
+	BlockIndex(Path directory) throws IOException {
+		heights = new MappedFile(directory.resolve("height.idx"), ENTRY_SIZE * ENTRIES_PER_CHUNK);
+		heights.ensureCapacity(ENTRY_SIZE);
+		if (heights.getInt(0) == MAGIC) {
+			count = heights.getLong(8);
+		} else {
+			heights.putInt(0, MAGIC);
+			heights.putLong(8, 0);
+		}
+		hashes = new MappedHashIndex(directory.resolve("hash.idx"), KEY_LENGTH, 1024);
+		transactions = new MappedHashIndex(directory.resolve("transaction.idx"), KEY_LENGTH, 1024);
+	}
+
+	/**
+	 * Number of indexed Blocks, which is also the height of the next Block
+	 */
+	synchronized long size() {
+		return count;
+	}
+
+	/**
+	 * Index the Block at the given height
+	 *
+	 * @param height
+	 *            height of the Block, at most size()
+	 * @param location
+	 *            position of the Block record
+	 * @param hash
+	 *            hash of the Block
+	 * @throws IOException
+	 */
+	synchronized void put(long height, BlockLocation location, byte[] hash) throws IOException {
+		long position = entryPosition(height);
+		heights.ensureCapacity(position + ENTRY_SIZE);
+		heights.putInt(position, location.getSegment());
+		heights.putInt(position + 4, location.getLength());
+		heights.putLong(position + 8, location.getOffset());
+		if (hash != null) {
+			hashes.put(key(hash), height);
+		}
+		if (height >= count) {
+			count = height + 1;
+			heights.putLong(8, count);
+		}
+	}
+
+	/**
+	 * Find the position of the Block at the given height
+	 *
+	 * @param height
+	 *            height of the Block
+	 * @return position or null if there is no such Block
+	 */
+	synchronized BlockLocation get(long height) {
+		if (height < 0 || height >= count) {
+			return null;
+		}
+		long position = entryPosition(height);
+		return new BlockLocation(heights.getInt(position), heights.getLong(position + 8),
+				heights.getInt(position + 4));
+	}
+
+	/**
+	 * Does the entry at the given height point to this record?
+	 */
+	synchronized boolean matches(long height, BlockLocation location) {
+		BlockLocation indexed = get(height);
+		return indexed != null && indexed.getSegment() == location.getSegment()
+				&& indexed.getOffset() == location.getOffset() && indexed.getLength() == location.getLength();
+	}
+
+	/**
+	 * Does hash.idx map this Block hash to the given height?
+	 */
+	synchronized boolean matches(long height, byte[] hash) {
+		return hashes.get(key(hash)) == height;
+	}
+
+	/**
+	 * Find the height of a Block. Entries of Blocks cut off by truncate() are
+	 * not removed from hash.idx, so callers have to compare the hash of the
+	 * Block they read.
+	 *
+	 * @param hash
+	 *            hash of the Block
+	 * @return height or -1 if the hash is unknown
+	 */
+	synchronized long heightOf(byte[] hash) {
+		long height = hashes.get(key(hash));
+		return height < count ? height : -1;
+	}
+
+	/**
+	 * Number of Blocks whose Transactions are indexed, Blocks from this height
+	 * on still have to be passed to putTransactions()
+	 */
+	synchronized long transactionsIndexed() {
+		return Math.min(transactions.getMark(), count);
+	}
+
+	/**
+	 * Index the Transactions of the Block at the given height
+	 *
+	 * @param height
+	 *            height of the Block, at most transactionsIndexed()
+	 * @param blockTransactions
+	 *            Transactions of the Block
+	 * @throws IOException
+	 */
+	synchronized void putTransactions(long height, List<Transaction> blockTransactions) throws IOException {
+		for (Transaction transaction : blockTransactions) {
+			transactions.put(key(transaction.getHash()), height);
+		}
+		transactions.setMark(height + 1);
+	}
+
+	/**
+	 * Find the height of the Block containing a Transaction. Like heightOf()
+	 * callers have to check the Block they read really contains it.
+	 *
+	 * @param hash
+	 *            hash of the Transaction
+	 * @return height or -1 if the hash is unknown
+	 */
+	synchronized long heightOfTransaction(byte[] hash) {
+		long height = transactions.get(key(hash));
+		return height < transactionsIndexed() ? height : -1;
+	}
+
+	/**
+	 * Forget all Blocks from the given height on
+	 *
+	 * @param newCount
+	 *            number of Blocks to keep
+	 */
+	synchronized void truncate(long newCount) {
+		if (newCount < count) {
+			count = newCount;
+			heights.putLong(8, count);
+		}
+		if (transactions.getMark() > count) {
+			transactions.setMark(count);
+		}
+	}
+
+	/**
+	 * Write all changed pages to disk
+	 */
+	synchronized void force() {
+		heights.force();
+		hashes.force();
+		transactions.force();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		heights.close();
+		hashes.close();
+		transactions.close();
+	}
+
+	private static long entryPosition(long height) {
+		// first entry holds the header
+		return (height + 1) * ENTRY_SIZE;
+	}
+
+	private static byte[] key(byte[] hash) {
+		return hash.length == KEY_LENGTH ? hash : DigestUtils.sha256(hash);
+	}
+}
@@ -0,0 +1,29 @@
+package de.pk.jblockchain.node.storage;
+
+/**
+ * Position of a Block record inside the segments of the BlockStore
+ */
+class BlockLocation {
+
+	private final int segment;
+	private final long offset;
+	private final int length;
+
+	BlockLocation(int segment, long offset, int length) {
+		this.segment = segment;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	int getSegment() {
+		return segment;
+	}
+
+	long getOffset() {
+		return offset;
+	}
+
+	int getLength() {
+		return length;
+	}
+}
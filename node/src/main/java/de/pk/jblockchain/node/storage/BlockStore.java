@@ -0,0 +1,605 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.pk.jblockchain.common.codec.BinaryCodec;
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockHeader;
+
+/**
+ * Append-only log of Blocks split into rolling segment files. Every record
+ * consists of the payload length, a CRC32 checksum of the payload and the
+ * payload itself, so appending a Block costs the same no matter how long the
+ * chain is. A BlockIndex in the same directory finds single Blocks by height
+ * or hash. Sealed segments of old Blocks can be moved into a compressed cold
+ * tier of ArchivedSegments, which are read transparently.
+ */
+public class BlockStore implements Closeable {
+
+	private final static Logger LOG = LoggerFactory.getLogger(BlockStore.class);
+
+	/**
+	 * Payload format marker for Jackson JSON encoded Blocks
+	 */
+	static final byte FORMAT_JSON = 1;
+
+	/**
+	 * Payload format marker for Blocks encoded by BinaryCodec
+	 */
+	static final byte FORMAT_BINARY = 2;
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private final Path directory;
+	private final long segmentSize;
+	private final ObjectMapper mapper;
+	private final boolean binaryFormat;
+
+	private final Map<Integer, FileChannel> readers = new ConcurrentHashMap<>();
+	private final Map<Integer, ArchivedSegment> archives = new ConcurrentHashMap<>();
+
+	/**
+	 * Readers hold the read lock, moving a segment to the cold tier the write
+	 * lock
+	 */
+	private final ReadWriteLock tierLock = new ReentrantReadWriteLock();
+	private final Object archiveLock = new Object();
+
+	private BlockIndex index;
+	private FileChannel channel;
+	private int segment;
+
+	/**
+	 * @param directory
+	 *            directory of segments and index
+	 * @param segmentSize
+	 *            size in bytes after which a new segment is started
+	 * @param mapper
+	 *            reads and writes JSON records
+	 * @param binaryFormat
+	 *            if true new Blocks are written by BinaryCodec, else as JSON.
+	 *            Records of both formats are always readable.
+	 */
+	public BlockStore(Path directory, long segmentSize, ObjectMapper mapper, boolean binaryFormat) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.mapper = mapper;
+		this.binaryFormat = binaryFormat;
+	}
+
+	/**
+	 * Replay all segments in order. A torn or corrupt record at the end of the
+	 * log is cut off, so the next append continues behind the last valid
+	 * Block.
+	 *
+	 * @return all Blocks in order of the log
+	 * @throws IOException
+	 */
+	public synchronized List<Block> load() throws IOException {
+		List<Block> blocks = new ArrayList<>();
+		replay(0, 0, 0, blocks);
+		return blocks;
+	}
+
+	/**
+	 * Recover the log behind a checkpoint. Blocks below verifiedHeight and
+	 * their index entries are trusted, only the records appended after the
+	 * checkpoint are scanned, so the cost depends on the number of new Blocks
+	 * instead of the length of the chain. Falls back to a full replay if the
+	 * Block at verifiedHeight - 1 does not match the checkpoint.
+	 *
+	 * @param verifiedHeight
+	 *            number of Blocks covered by the checkpoint
+	 * @param verifiedHash
+	 *            hash of the last Block covered by the checkpoint
+	 * @return number of Blocks in the log
+	 * @throws IOException
+	 */
+	public synchronized long load(long verifiedHeight, byte[] verifiedHash) throws IOException {
+		if (verifiedHeight > 0) {
+			BlockLocation tip = index().get(verifiedHeight - 1);
+			Block block = null;
+			try {
+				block = tip != null ? read(verifiedHeight - 1) : null;
+			} catch (IOException e) {
+				LOG.warn("Unable to read block " + (verifiedHeight - 1) + " of checkpoint", e);
+			}
+			if (block != null && Arrays.equals(block.getHash(), verifiedHash)) {
+				long size = replay(tip.getSegment(), tip.getOffset() + Records.HEADER_SIZE + tip.getLength(),
+						verifiedHeight, null);
+				LOG.info("Replayed " + (size - verifiedHeight) + " blocks behind checkpoint at height "
+						+ verifiedHeight);
+				return size;
+			}
+			LOG.warn("Block store does not match checkpoint at height " + verifiedHeight + ", replaying all blocks");
+		}
+		return replay(0, 0, 0, null);
+	}
+
+	/**
+	 * Append a Block at the end of the current segment and force it to disk.
+	 * A new segment is started once the current one exceeds the segment size.
+	 *
+	 * @param block
+	 *            Block to append
+	 * @throws IOException
+	 */
+	public synchronized void append(Block block) throws IOException {
+		ByteBuffer record = binaryFormat ? Records.frame(FORMAT_BINARY, BinaryCodec.encode(block))
+				: Records.frame(FORMAT_JSON, mapper.writeValueAsBytes(block));
+		FileChannel out = openForAppend();
+		if (out.size() > 0 && out.size() + record.remaining() > segmentSize) {
+			out = roll();
+		}
+		BlockLocation location = new BlockLocation(segment, out.position(), record.remaining() - Records.HEADER_SIZE);
+		Records.writeFully(out, record);
+		out.force(false);
+		long height = index().size();
+		index().put(height, location, block.getHash());
+		if (index().transactionsIndexed() == height) {
+			index().putTransactions(height, block.getTransactions());
+		}
+	}
+
+	/**
+	 * Read a single Block without touching any other Block
+	 *
+	 * @param height
+	 *            position of the Block in the chain, starting at 0
+	 * @return Block or null if there is no Block at this height
+	 * @throws IOException
+	 */
+	public Block read(long height) throws IOException {
+		byte[] payload = readPayload(height);
+		return payload != null ? decode(payload) : null;
+	}
+
+	/**
+	 * Read the header of a single Block. Binary records are decoded without
+	 * their Transactions.
+	 *
+	 * @param height
+	 *            position of the Block in the chain, starting at 0
+	 * @return header or null if there is no Block at this height
+	 * @throws IOException
+	 */
+	public BlockHeader readHeader(long height) throws IOException {
+		byte[] payload = readPayload(height);
+		if (payload == null) {
+			return null;
+		}
+		return decodeHeader(payload);
+	}
+
+	/**
+	 * Read the headers of a range of Blocks one by one
+	 *
+	 * @param fromHeight
+	 *            height of the first Block
+	 * @param toHeight
+	 *            height behind the last Block, capped at the size of the log
+	 * @return headers in order of the log
+	 * @throws IOException
+	 */
+	public List<BlockHeader> readHeaders(long fromHeight, long toHeight) throws IOException {
+		List<BlockHeader> headers = new ArrayList<>();
+		long end = Math.min(toHeight, size());
+		for (long height = Math.max(fromHeight, 0); height < end; height++) {
+			headers.add(readHeader(height));
+		}
+		return headers;
+	}
+
+	/**
+	 * Read a single Block by its hash
+	 *
+	 * @param hash
+	 *            hash of the Block
+	 * @return Block or null if there is no Block with this hash
+	 * @throws IOException
+	 */
+	public Block readByHash(byte[] hash) throws IOException {
+		long height = heightOf(hash);
+		if (height < 0) {
+			return null;
+		}
+		Block block = read(height);
+		return block != null && Arrays.equals(block.getHash(), hash) ? block : null;
+	}
+
+	/**
+	 * Find the height of a Block by its hash. Hashes of Blocks cut off by a
+	 * recovery may still be found, callers have to compare the hash of the
+	 * Block they read.
+	 *
+	 * @param hash
+	 *            hash of the Block
+	 * @return height or -1 if the hash is unknown
+	 * @throws IOException
+	 */
+	public long heightOf(byte[] hash) throws IOException {
+		return index().heightOf(hash);
+	}
+
+	/**
+	 * Find the height of the Block containing a Transaction. Like heightOf()
+	 * callers have to check the Block they read.
+	 *
+	 * @param hash
+	 *            hash of the Transaction
+	 * @return height or -1 if no Block contains the Transaction
+	 * @throws IOException
+	 */
+	public long heightOfTransaction(byte[] hash) throws IOException {
+		return index().heightOfTransaction(hash);
+	}
+
+	/**
+	 * Read a range of Blocks one by one
+	 *
+	 * @param fromHeight
+	 *            height of the first Block
+	 * @param toHeight
+	 *            height behind the last Block, capped at the size of the log
+	 * @return Blocks in order of the log
+	 * @throws IOException
+	 */
+	public List<Block> read(long fromHeight, long toHeight) throws IOException {
+		List<Block> blocks = new ArrayList<>();
+		long end = Math.min(toHeight, size());
+		for (long height = Math.max(fromHeight, 0); height < end; height++) {
+			blocks.add(read(height));
+		}
+		return blocks;
+	}
+
+	/**
+	 * Number of Blocks in the log
+	 *
+	 * @return height of the next Block
+	 * @throws IOException
+	 */
+	public long size() throws IOException {
+		return index().size();
+	}
+
+	/**
+	 * Move all sealed segments which only hold Blocks below the given height
+	 * into the cold tier. Segments are compressed without blocking appends or
+	 * reads, only the switch to the archive is done under lock.
+	 *
+	 * @param belowHeight
+	 *            height of the oldest Block to keep in the hot tier
+	 * @return number of archived segments
+	 * @throws IOException
+	 */
+	public int archive(long belowHeight) throws IOException {
+		synchronized (archiveLock) {
+			return archiveSegments(belowHeight);
+		}
+	}
+
+	private int archiveSegments(long belowHeight) throws IOException {
+		List<Integer> candidates = new ArrayList<>();
+		synchronized (this) {
+			BlockLocation oldestHot = index().get(belowHeight);
+			if (oldestHot == null) {
+				return 0;
+			}
+			for (int number : listSegments()) {
+				// the segment currently written always holds the oldest hot Block or a newer one
+				if (number < oldestHot.getSegment() && !archives.containsKey(number)) {
+					candidates.add(number);
+				}
+			}
+		}
+		for (int number : candidates) {
+			Path log = segmentPath(number);
+			Path archive = archivePath(number);
+			long size = Files.size(log);
+			long compressed = ArchivedSegment.write(log, archive, archivedIndexPath(number),
+					Deflater.BEST_COMPRESSION);
+			ArchivedSegment archived = ArchivedSegment.open(archive, archivedIndexPath(number));
+			tierLock.writeLock().lock();
+			try {
+				archives.put(number, archived);
+				FileChannel reader = readers.remove(number);
+				if (reader != null) {
+					reader.close();
+				}
+				Files.delete(log);
+			} finally {
+				tierLock.writeLock().unlock();
+			}
+			LOG.info("Archived " + log + " (" + size + " bytes) into " + compressed + " bytes");
+		}
+		return candidates.size();
+	}
+
+	/**
+	 * Force all appended Blocks including file metadata to disk
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void sync() throws IOException {
+		if (channel != null) {
+			channel.force(true);
+		}
+		if (index != null) {
+			index.force();
+		}
+	}
+
+	/**
+	 * Does the log contain any segment yet?
+	 *
+	 * @return true if no segment was written so far
+	 * @throws IOException
+	 */
+	public synchronized boolean isEmpty() throws IOException {
+		return listSegments().isEmpty();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+		for (FileChannel reader : readers.values()) {
+			reader.close();
+		}
+		readers.clear();
+		for (ArchivedSegment archived : archives.values()) {
+			archived.close();
+		}
+		archives.clear();
+		if (index != null) {
+			index.close();
+			index = null;
+		}
+	}
+
+	/**
+	 * Scan the segments from the given record on, index every record and cut
+	 * off the log at the first torn or corrupt record
+	 *
+	 * @return number of Blocks in the log
+	 */
+	private long replay(int fromSegment, long fromOffset, long fromHeight, List<Block> blocks) throws IOException {
+		// opens the cold tier as well
+		index();
+		long[] height = { fromHeight };
+		List<Integer> segments = listSegments();
+		for (int i = 0; i < segments.size(); i++) {
+			int number = segments.get(i);
+			if (number < fromSegment) {
+				continue;
+			}
+			long offset = number == fromSegment ? fromOffset : 0;
+			ArchivedSegment archived = archives.get(number);
+			if (archived != null) {
+				// archives only hold records which were valid when they were sealed
+				archived.scan(offset, (position, payload) -> replayRecord(number, position, payload, height, blocks));
+				continue;
+			}
+			Path path = segmentPath(number);
+			long validEnd = replaySegment(number, offset, height, blocks);
+			if (validEnd < Files.size(path)) {
+				LOG.warn("Corrupt block record in " + path + " at offset " + validEnd + ", truncating log");
+				try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+					truncate.truncate(validEnd);
+					truncate.force(true);
+				}
+				for (int j = i + 1; j < segments.size(); j++) {
+					Path orphan = segmentPath(segments.get(j));
+					Files.move(orphan, orphan.resolveSibling(orphan.getFileName() + ".orphaned"));
+				}
+				break;
+			}
+		}
+		index().truncate(height[0]);
+		indexTransactions();
+		LOG.info("Loaded " + height[0] + " blocks from " + directory);
+		return height[0];
+	}
+
+	/**
+	 * Index the Transactions of all Blocks which are not covered by
+	 * transaction.idx yet, e.g. the whole chain of a store written by an older
+	 * version
+	 */
+	private void indexTransactions() throws IOException {
+		BlockIndex blockIndex = index();
+		long from = blockIndex.transactionsIndexed();
+		long to = blockIndex.size();
+		for (long height = from; height < to; height++) {
+			blockIndex.putTransactions(height, read(height).getTransactions());
+		}
+		if (to - from > 1) {
+			LOG.info("Indexed transactions of " + (to - from) + " blocks");
+		}
+	}
+
+	private long replaySegment(int number, long offset, long[] height, List<Block> blocks) throws IOException {
+		try (FileChannel in = FileChannel.open(segmentPath(number), StandardOpenOption.READ)) {
+			return Records.scan(in, offset,
+					(position, payload) -> replayRecord(number, position, payload, height, blocks));
+		}
+	}
+
+	private void replayRecord(int number, long position, byte[] payload, long[] height, List<Block> blocks)
+			throws IOException {
+		BlockIndex blockIndex = index();
+		BlockLocation location = new BlockLocation(number, position, payload.length);
+		// whole Blocks are only decoded if somebody needs them
+		Block block = blocks != null ? decode(payload) : null;
+		byte[] hash = block != null ? block.getHash() : decodeHeader(payload).getHash();
+		// height.idx is forced before hash.idx, so both are checked
+		if (!blockIndex.matches(height[0], location) || !blockIndex.matches(height[0], hash)) {
+			blockIndex.put(height[0], location, hash);
+		}
+		if (blocks != null) {
+			blocks.add(block);
+		}
+		height[0]++;
+	}
+
+	private byte[] readPayload(long height) throws IOException {
+		BlockLocation location = index().get(height);
+		if (location == null) {
+			return null;
+		}
+		tierLock.readLock().lock();
+		try {
+			ArchivedSegment archived = archives.get(location.getSegment());
+			if (archived != null) {
+				return archived.read(location.getOffset(), location.getLength());
+			}
+			FileChannel in;
+			try {
+				in = readers.computeIfAbsent(location.getSegment(), number -> {
+					try {
+						return FileChannel.open(segmentPath(number), StandardOpenOption.READ);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			return Records.read(in, location.getOffset(), location.getLength());
+		} finally {
+			tierLock.readLock().unlock();
+		}
+	}
+
+	private Block decode(byte[] payload) throws IOException {
+		switch (payload[0]) {
+		case FORMAT_JSON:
+			return mapper.readValue(payload, 1, payload.length - 1, Block.class);
+		case FORMAT_BINARY:
+			return BinaryCodec.decode(payload, 1, payload.length - 1, Block.class);
+		default:
+			throw new IOException("Unknown block record format " + payload[0]);
+		}
+	}
+
+	private BlockHeader decodeHeader(byte[] payload) throws IOException {
+		if (payload[0] == FORMAT_BINARY) {
+			return BinaryCodec.decodeHeader(payload, 1, payload.length - 1);
+		}
+		return new BlockHeader(decode(payload));
+	}
+
+	private synchronized BlockIndex index() throws IOException {
+		if (index == null) {
+			Files.createDirectories(directory);
+			index = new BlockIndex(directory);
+			openArchives();
+		}
+		return index;
+	}
+
+	private FileChannel openForAppend() throws IOException {
+		if (channel == null) {
+			Files.createDirectories(directory);
+			List<Integer> segments = listSegments();
+			segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+			channel = openSegment(segment);
+		}
+		return channel;
+	}
+
+	private FileChannel roll() throws IOException {
+		channel.force(true);
+		channel.close();
+		segment++;
+		channel = openSegment(segment);
+		LOG.info("Started block segment " + segmentPath(segment));
+		return channel;
+	}
+
+	private FileChannel openSegment(int number) throws IOException {
+		FileChannel out = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		out.position(out.size());
+		return out;
+	}
+
+	private Path segmentPath(int number) {
+		return directory.resolve(SEGMENT_PREFIX + String.format("%08d", number) + SEGMENT_SUFFIX);
+	}
+
+	private Path archivePath(int number) {
+		return directory.resolve(SEGMENT_PREFIX + String.format("%08d", number) + ArchivedSegment.ARCHIVE_SUFFIX);
+	}
+
+	private Path archivedIndexPath(int number) {
+		return directory.resolve(SEGMENT_PREFIX + String.format("%08d", number) + ArchivedSegment.INDEX_SUFFIX);
+	}
+
+	/**
+	 * Open the cold tier. An archive whose segment still exists was not
+	 * completed before a crash, it is dropped and the segment stays hot.
+	 */
+	private void openArchives() throws IOException {
+		for (int number : listSegments(ArchivedSegment.INDEX_SUFFIX)) {
+			Path archiveIndex = archivedIndexPath(number);
+			Path archive = archivePath(number);
+			if (Files.exists(segmentPath(number))) {
+				Files.deleteIfExists(archiveIndex);
+				Files.deleteIfExists(archive);
+				continue;
+			}
+			archives.put(number, ArchivedSegment.open(archive, archiveIndex));
+		}
+	}
+
+	/**
+	 * Numbers of all hot and archived segments in order
+	 */
+	private List<Integer> listSegments() throws IOException {
+		TreeSet<Integer> segments = new TreeSet<>(listSegments(SEGMENT_SUFFIX));
+		segments.addAll(archives.keySet());
+		return new ArrayList<>(segments);
+	}
+
+	private List<Integer> listSegments(String suffix) throws IOException {
+		List<Integer> segments = new ArrayList<>();
+		if (!Files.isDirectory(directory)) {
+			return segments;
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			files.map(path -> path.getFileName().toString())
+					.filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(suffix))
+					.forEach(name -> segments.add(
+							Integer.valueOf(name.substring(SEGMENT_PREFIX.length(), name.length() - suffix.length()))));
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+}
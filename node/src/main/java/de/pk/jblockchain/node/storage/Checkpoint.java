@@ -0,0 +1,63 @@
+package de.pk.jblockchain.node.storage;
+
+import java.util.Collection;
+
+import de.pk.jblockchain.common.domain.Address;
+import de.pk.jblockchain.common.domain.Transaction;
+
+/**
+ * State of the node at a given chain height: the chain tip, all Addresses and
+ * the transaction pool. The block index is covered implicitly, every entry
+ * below the height was verified when the checkpoint was taken.
+ */
+public class Checkpoint {
+
+	/**
+	 * Number of Blocks covered by this checkpoint
+	 */
+	private final long height;
+
+	/**
+	 * Hash of the Block at height - 1, null for an empty chain
+	 */
+	private final byte[] tipHash;
+
+	private final Collection<Address> addresses;
+
+	private final Collection<Transaction> transactions;
+
+	/**
+	 * True if the checkpoint was written at shutdown after all other stores,
+	 * so addresses and transactions are as recent as their own files
+	 */
+	private final boolean clean;
+
+	public Checkpoint(long height, byte[] tipHash, Collection<Address> addresses,
+			Collection<Transaction> transactions, boolean clean) {
+		this.height = height;
+		this.tipHash = tipHash;
+		this.addresses = addresses;
+		this.transactions = transactions;
+		this.clean = clean;
+	}
+
+	public long getHeight() {
+		return height;
+	}
+
+	public byte[] getTipHash() {
+		return tipHash;
+	}
+
+	public Collection<Address> getAddresses() {
+		return addresses;
+	}
+
+	public Collection<Transaction> getTransactions() {
+		return transactions;
+	}
+
+	public boolean isClean() {
+		return clean;
+	}
+}
@@ -0,0 +1,130 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.primitives.Ints;
+
+import de.pk.jblockchain.common.codec.BinaryCodec;
+import de.pk.jblockchain.common.codec.BinaryInput;
+import de.pk.jblockchain.common.codec.BinaryOutput;
+import de.pk.jblockchain.common.domain.Address;
+import de.pk.jblockchain.common.domain.Transaction;
+
+/**
+ * Binary file holding the latest Checkpoint. The file starts with a magic
+ * number, the format version and the clean flag, followed by the checkpoint
+ * in the format of BinaryCodec and a CRC32 checksum of it. It is always
+ * replaced atomically, only the clean flag is changed in place.
+ */
+public class CheckpointStore {
+
+	private final static Logger LOG = LoggerFactory.getLogger(CheckpointStore.class);
+
+	private static final int MAGIC = 0x4a42434b;
+	private static final byte VERSION = 2;
+	private static final int CLEAN_FLAG_OFFSET = 5;
+	private static final int HEADER_SIZE = 6;
+
+	private final Path file;
+
+	public CheckpointStore(Path directory) {
+		this.file = directory.resolve("checkpoint.bin");
+	}
+
+	/**
+	 * Read the latest checkpoint
+	 *
+	 * @return checkpoint or null if none was written so far
+	 * @throws IOException
+	 *             if the file is corrupt
+	 */
+	public synchronized Checkpoint read() throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+		if (data.remaining() < HEADER_SIZE + 4 || data.getInt(0) != MAGIC || data.get(4) != VERSION) {
+			throw new IOException("Unknown checkpoint format in " + file);
+		}
+		boolean clean = data.get(CLEAN_FLAG_OFFSET) != 0;
+		int bodyLength = data.remaining() - HEADER_SIZE - 4;
+		CRC32 crc = new CRC32();
+		crc.update(data.array(), HEADER_SIZE, bodyLength);
+		if ((int) crc.getValue() != data.getInt(HEADER_SIZE + bodyLength)) {
+			throw new IOException("Corrupt checkpoint " + file);
+		}
+
+		BinaryInput in = new BinaryInput(data.array(), HEADER_SIZE, bodyLength);
+		long height = in.readLong();
+		byte[] tipHash = in.readBytes();
+		int addressCount = in.readCount();
+		List<Address> addresses = new ArrayList<>(addressCount);
+		for (int i = 0; i < addressCount; i++) {
+			addresses.add(BinaryCodec.readAddress(in));
+		}
+		int transactionCount = in.readCount();
+		List<Transaction> transactions = new ArrayList<>(transactionCount);
+		for (int i = 0; i < transactionCount; i++) {
+			transactions.add(BinaryCodec.readTransaction(in));
+		}
+		return new Checkpoint(height, tipHash, addresses, transactions, clean);
+	}
+
+	/**
+	 * Atomically replace the checkpoint
+	 *
+	 * @param checkpoint
+	 *            new checkpoint
+	 * @throws IOException
+	 */
+	public synchronized void write(Checkpoint checkpoint) throws IOException {
+		BinaryOutput body = new BinaryOutput();
+		body.writeLong(checkpoint.getHeight());
+		body.writeBytes(checkpoint.getTipHash());
+		body.writeVarInt(checkpoint.getAddresses().size());
+		checkpoint.getAddresses().forEach(address -> BinaryCodec.writeAddress(body, address));
+		body.writeVarInt(checkpoint.getTransactions().size());
+		checkpoint.getTransactions().forEach(transaction -> BinaryCodec.writeTransaction(body, transaction));
+		byte[] bodyBytes = body.toByteArray();
+
+		CRC32 crc = new CRC32();
+		crc.update(bodyBytes);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.put(VERSION);
+		header.put((byte) (checkpoint.isClean() ? 1 : 0));
+		AtomicFiles.write(file, out -> {
+			out.write(header.array());
+			out.write(bodyBytes);
+			out.write(Ints.toByteArray((int) crc.getValue()));
+		});
+		LOG.debug("Wrote checkpoint at height " + checkpoint.getHeight());
+	}
+
+	/**
+	 * Clear the clean flag of the current checkpoint, so it is not trusted
+	 * for addresses and transactions after a crash
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void markUnclean() throws IOException {
+		if (!Files.exists(file)) {
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			Records.writeFully(channel.position(CLEAN_FLAG_OFFSET), ByteBuffer.wrap(new byte[] { 0 }));
+			channel.force(false);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File accessed through memory mapped chunks of a fixed size, so files bigger
+ * than 2 GB can be mapped as well. Callers choose a chunk size which is a
+ * multiple of their entry size, so no entry spans two chunks. Nothing is
+ * mapped before the first call of ensureCapacity.
+ */
+class MappedFile implements Closeable {
+
+	private final Path path;
+	private final FileChannel channel;
+	private final int chunkSize;
+	private final List<MappedByteBuffer> chunks = new ArrayList<>();
+
+	MappedFile(Path path, int chunkSize) throws IOException {
+		this.path = path;
+		this.chunkSize = chunkSize;
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+	}
+
+	Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Map enough chunks to access the first size bytes of the file, the file
+	 * grows by whole chunks
+	 *
+	 * @param size
+	 *            number of bytes which must be accessible
+	 * @throws IOException
+	 */
+	void ensureCapacity(long size) throws IOException {
+		while ((long) chunks.size() * chunkSize < size) {
+			chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) chunks.size() * chunkSize, chunkSize));
+		}
+	}
+
+	long capacity() {
+		return (long) chunks.size() * chunkSize;
+	}
+
+	byte get(long position) {
+		return chunk(position).get(offset(position));
+	}
+
+	int getInt(long position) {
+		return chunk(position).getInt(offset(position));
+	}
+
+	void putInt(long position, int value) {
+		chunk(position).putInt(offset(position), value);
+	}
+
+	long getLong(long position) {
+		return chunk(position).getLong(offset(position));
+	}
+
+	void putLong(long position, long value) {
+		chunk(position).putLong(offset(position), value);
+	}
+
+	void put(long position, byte[] data) {
+		MappedByteBuffer chunk = chunk(position);
+		int offset = offset(position);
+		for (int i = 0; i < data.length; i++) {
+			chunk.put(offset + i, data[i]);
+		}
+	}
+
+	/**
+	 * Compare the bytes at position with the given key without copying them
+	 *
+	 * @return true if all bytes are equal
+	 */
+	boolean equals(long position, byte[] key) {
+		MappedByteBuffer chunk = chunk(position);
+		int offset = offset(position);
+		for (int i = 0; i < key.length; i++) {
+			if (chunk.get(offset + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Write all changed pages to disk
+	 */
+	void force() {
+		chunks.forEach(MappedByteBuffer::force);
+	}
+
+	@Override
+	public void close() throws IOException {
+		force();
+		chunks.clear();
+		channel.close();
+	}
+
+	private MappedByteBuffer chunk(long position) {
+		return chunks.get((int) (position / chunkSize));
+	}
+
+	private int offset(long position) {
+		return (int) (position % chunkSize);
+	}
+}
@@ -0,0 +1,218 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Open addressing hash table with linear probing inside a memory mapped file.
+ * Maps keys of a fixed length, e.g. raw SHA-256 hashes, to a non-negative long
+ * value. Lookups compare the key directly in the mapped pages and do not
+ * allocate. The first slot holds the header, once half of the slots are used
+ * the table is rebuilt with twice the capacity.
+ */
+class MappedHashIndex implements Closeable {
+
+	private static final int MAGIC = 0x4a424849;
+	private static final int MAX_SLOTS_PER_CHUNK = 1 << 20;
+
+	private final Path path;
+	private final int keyLength;
+	private final int slotSize;
+
+	private MappedFile file;
+	private long capacity;
+	private long size;
+
+	/**
+	 * Open an existing table or create a new one
+	 *
+	 * @param path
+	 *            file of the table
+	 * @param keyLength
+	 *            length of every key in bytes, at least 24
+	 * @param initialCapacity
+	 *            number of slots of a new table, rounded up to a power of two
+	 * @throws IOException
+	 */
+	MappedHashIndex(Path path, int keyLength, long initialCapacity) throws IOException {
+		this.path = path;
+		this.keyLength = keyLength;
+		this.slotSize = keyLength + 8;
+		if (Files.exists(path) && Files.size(path) > 0) {
+			open(path);
+		} else {
+			create(path, Long.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1);
+		}
+	}
+
+	/**
+	 * Look up the value stored for a key
+	 *
+	 * @param key
+	 *            key of keyLength bytes
+	 * @return stored value or -1 if the key is unknown
+	 */
+	synchronized long get(byte[] key) {
+		if (key.length != keyLength) {
+			throw new IllegalArgumentException("Key must have " + keyLength + " bytes");
+		}
+		long mask = capacity - 1;
+		for (long slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+			long position = slotPosition(slot);
+			long stored = file.getLong(position + keyLength);
+			if (stored == 0) {
+				return -1;
+			}
+			if (file.equals(position, key)) {
+				return stored - 1;
+			}
+		}
+	}
+
+	/**
+	 * Store a value for a key, an existing value gets replaced
+	 *
+	 * @param key
+	 *            key of keyLength bytes
+	 * @param value
+	 *            non-negative value
+	 * @return previous value or -1 if the key was unknown
+	 * @throws IOException
+	 */
+	synchronized long put(byte[] key, long value) throws IOException {
+		if (key.length != keyLength) {
+			throw new IllegalArgumentException("Key must have " + keyLength + " bytes");
+		}
+		if ((size + 1) * 2 > capacity) {
+			resize(capacity * 2);
+		}
+		long previous = insert(file, capacity, key, value);
+		if (previous < 0) {
+			size++;
+			file.putLong(24, size);
+		}
+		return previous;
+	}
+
+	synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * Value stored by the owner of the table in its header, e.g. how far a
+	 * log is covered by the table
+	 */
+	synchronized long getMark() {
+		return file.getLong(8);
+	}
+
+	synchronized void setMark(long mark) {
+		file.putLong(8, mark);
+	}
+
+	/**
+	 * Write all changed pages to disk
+	 */
+	synchronized void force() {
+		file.force();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		file.close();
+	}
+
+	private long insert(MappedFile target, long targetCapacity, byte[] key, long value) {
+		long mask = targetCapacity - 1;
+		for (long slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+			long position = slotPosition(slot);
+			long stored = target.getLong(position + keyLength);
+			if (stored == 0) {
+				target.put(position, key);
+				target.putLong(position + keyLength, value + 1);
+				return -1;
+			}
+			if (target.equals(position, key)) {
+				target.putLong(position + keyLength, value + 1);
+				return stored - 1;
+			}
+		}
+	}
+
+	private void resize(long newCapacity) throws IOException {
+		Path resized = path.resolveSibling(path.getFileName() + ".resize");
+		Files.deleteIfExists(resized);
+		MappedFile target = createFile(resized, newCapacity);
+		byte[] key = new byte[keyLength];
+		for (long slot = 0; slot < capacity; slot++) {
+			long position = slotPosition(slot);
+			long stored = file.getLong(position + keyLength);
+			if (stored != 0) {
+				for (int i = 0; i < keyLength; i++) {
+					key[i] = file.get(position + i);
+				}
+				insert(target, newCapacity, key, stored - 1);
+			}
+		}
+		target.putLong(24, size);
+		target.putLong(8, file.getLong(8));
+		target.close();
+		file.close();
+		Files.move(resized, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		open(path);
+	}
+
+	private void create(Path target, long newCapacity) throws IOException {
+		file = createFile(target, newCapacity);
+		capacity = newCapacity;
+		size = 0;
+	}
+
+	private MappedFile createFile(Path target, long newCapacity) throws IOException {
+		MappedFile created = new MappedFile(target, chunkSize(newCapacity));
+		created.ensureCapacity((newCapacity + 1) * slotSize);
+		created.putInt(0, MAGIC);
+		created.putInt(4, keyLength);
+		created.putLong(8, 0);
+		created.putLong(16, newCapacity);
+		created.putLong(24, 0);
+		return created;
+	}
+
+	private void open(Path source) throws IOException {
+		MappedFile header = new MappedFile(source, 32);
+		header.ensureCapacity(32);
+		if (header.getInt(0) != MAGIC || header.getInt(4) != keyLength) {
+			header.close();
+			throw new IOException("Invalid hash index " + source);
+		}
+		capacity = header.getLong(16);
+		size = header.getLong(24);
+		header.close();
+		file = new MappedFile(source, chunkSize(capacity));
+		file.ensureCapacity((capacity + 1) * slotSize);
+	}
+
+	private int chunkSize(long slots) {
+		return slotSize * (int) Math.min(slots, MAX_SLOTS_PER_CHUNK);
+	}
+
+	private long slotPosition(long slot) {
+		// slot 0 of the file is the header
+		return (slot + 1) * slotSize;
+	}
+
+	private static long hash(byte[] key) {
+		long hash = 0;
+		for (int i = 0; i < 8; i++) {
+			hash = (hash << 8) | (key[i] & 0xff);
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,180 @@
+package de.pk.jblockchain.node.storage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of encoded Blocks outside of the Java heap. One direct buffer of
+ * the configured byte budget is split into fixed-size pages, a Block takes
+ * as many pages as its encoding needs, so no compaction is ever necessary.
+ * Only the small per-entry bookkeeping lives on the heap, the cached bytes
+ * add nothing to the work of the garbage collector. Entries are found by
+ * height or by hash.
+ */
+public class OffHeapBlockCache {
+
+	private final ByteBuffer arena;
+	private final int pageSize;
+	private final Deque<Integer> freePages = new ArrayDeque<>();
+
+	/**
+	 * Entries by height in access order, the eldest is evicted first
+	 */
+	private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<ByteBuffer, Long> heights = new HashMap<>();
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long usedBytes;
+
+	/**
+	 * @param budget
+	 *            maximum number of bytes held outside of the heap
+	 * @param pageSize
+	 *            size of the pages the budget is split into
+	 */
+	public OffHeapBlockCache(long budget, int pageSize) {
+		int pages = (int) Math.min(budget / pageSize, Integer.MAX_VALUE / pageSize);
+		this.arena = ByteBuffer.allocateDirect(pages * pageSize);
+		this.pageSize = pageSize;
+		for (int page = 0; page < pages; page++) {
+			freePages.add(page);
+		}
+	}
+
+	/**
+	 * Get the encoded Block at a given height
+	 *
+	 * @param height
+	 *            height of the Block
+	 * @return copy of the encoded Block or null if it is not cached
+	 */
+	public synchronized byte[] get(long height) {
+		Entry entry = entries.get(height);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		byte[] data = new byte[entry.length];
+		ByteBuffer view = arena.duplicate();
+		for (int i = 0, copied = 0; copied < data.length; i++) {
+			int length = Math.min(pageSize, data.length - copied);
+			view.limit(entry.pages[i] * pageSize + length).position(entry.pages[i] * pageSize);
+			view.get(data, copied, length);
+			copied += length;
+		}
+		return data;
+	}
+
+	/**
+	 * Find the height of a cached Block by its hash
+	 *
+	 * @param hash
+	 *            hash of the Block
+	 * @return height or -1 if the Block is not cached
+	 */
+	public synchronized long heightOf(byte[] hash) {
+		Long height = heights.get(ByteBuffer.wrap(hash));
+		return height != null ? height : -1;
+	}
+
+	/**
+	 * Cache an encoded Block, the least recently used Blocks are evicted until
+	 * it fits. Blocks bigger than the whole budget are not cached.
+	 *
+	 * @param height
+	 *            height of the Block
+	 * @param hash
+	 *            hash of the Block
+	 * @param data
+	 *            encoded Block
+	 */
+	public synchronized void put(long height, byte[] hash, byte[] data) {
+		int pageCount = (data.length + pageSize - 1) / pageSize;
+		if (pageCount > arena.capacity() / pageSize) {
+			return;
+		}
+		remove(entries.get(height));
+		Iterator<Entry> eldest = entries.values().iterator();
+		while (freePages.size() < pageCount) {
+			Entry evicted = eldest.next();
+			eldest.remove();
+			release(evicted);
+			evictions++;
+		}
+		int[] pages = new int[pageCount];
+		ByteBuffer view = arena.duplicate();
+		for (int i = 0, copied = 0; i < pageCount; i++) {
+			pages[i] = freePages.pop();
+			int length = Math.min(pageSize, data.length - copied);
+			view.limit(pages[i] * pageSize + length).position(pages[i] * pageSize);
+			view.put(data, copied, length);
+			copied += length;
+		}
+		Entry entry = new Entry(height, hash.clone(), pages, data.length);
+		entries.put(height, entry);
+		heights.put(ByteBuffer.wrap(entry.hash), height);
+		usedBytes += data.length;
+	}
+
+	/**
+	 * Drop all cached Blocks, e.g. after the chain was cut off
+	 */
+	public synchronized void clear() {
+		entries.values().forEach(this::release);
+		entries.clear();
+	}
+
+	/**
+	 * Hit, miss and eviction counters and the used budget
+	 *
+	 * @return statistics by name
+	 */
+	public synchronized Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("entries", entries.size());
+		statistics.put("hits", hits);
+		statistics.put("misses", misses);
+		statistics.put("evictions", evictions);
+		statistics.put("hitRatio", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+		statistics.put("usedBytes", usedBytes);
+		statistics.put("budgetBytes", arena.capacity());
+		return statistics;
+	}
+
+	private void remove(Entry entry) {
+		if (entry != null) {
+			entries.remove(entry.height);
+			release(entry);
+		}
+	}
+
+	private void release(Entry entry) {
+		heights.remove(ByteBuffer.wrap(entry.hash));
+		for (int page : entry.pages) {
+			freePages.push(page);
+		}
+		usedBytes -= entry.length;
+	}
+
+	private static class Entry {
+		private final long height;
+		private final byte[] hash;
+		private final int[] pages;
+		private final int length;
+
+		private Entry(long height, byte[] hash, int[] pages, int length) {
+			this.height = height;
+			this.hash = hash;
+			this.pages = pages;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Background writer shared by all stores of the node. Services mark their
+ * store dirty on every change instead of writing it on the request thread. A
+ * dedicated writer thread flushes dirty stores once the flush interval is
+ * over or as soon as a store collected flushThreshold changes, so many
+ * changes in a row cost a single write.
+ */
+public class PersistenceScheduler implements Closeable {
+
+	private final static Logger LOG = LoggerFactory.getLogger(PersistenceScheduler.class);
+
+	private final long flushInterval;
+	private final int flushThreshold;
+	private final Map<String, Store> stores = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "persistence-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * @param flushInterval
+	 *            milliseconds between two flushes of a dirty store
+	 * @param flushThreshold
+	 *            number of changes which trigger a flush before the interval
+	 *            is over
+	 */
+	public PersistenceScheduler(long flushInterval, int flushThreshold) {
+		this.flushInterval = flushInterval;
+		this.flushThreshold = flushThreshold;
+		writer.scheduleWithFixedDelay(this::flushDirty, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Register a store to be flushed by the writer thread
+	 *
+	 * @param name
+	 *            unique name of the store, used by markDirty and statistics
+	 * @param flushable
+	 *            writes the current state of the store
+	 */
+	public void register(String name, Flushable flushable) {
+		stores.put(name, new Store(name, flushable));
+	}
+
+	/**
+	 * Note a change of a store, which is written in the background later
+	 *
+	 * @param name
+	 *            name of the changed store
+	 */
+	public void markDirty(String name) {
+		Store store = stores.get(name);
+		if (store.changes.incrementAndGet() >= flushThreshold && store.scheduled.compareAndSet(false, true)) {
+			writer.execute(() -> {
+				store.scheduled.set(false);
+				store.flushIfDirty();
+			});
+		}
+	}
+
+	/**
+	 * Write all dirty stores on the calling thread
+	 */
+	public void flushAll() {
+		stores.values().forEach(Store::flushIfDirty);
+	}
+
+	/**
+	 * Flush latency and backlog of every registered store
+	 *
+	 * @return statistics by store name
+	 */
+	public Map<String, Map<String, Object>> getStatistics() {
+		Map<String, Map<String, Object>> statistics = new LinkedHashMap<>();
+		stores.values().forEach(store -> statistics.put(store.name, store.getStatistics()));
+		return statistics;
+	}
+
+	/**
+	 * Stop the writer thread and write everything which is still dirty
+	 */
+	@Override
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(flushInterval, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flushAll();
+	}
+
+	private void flushDirty() {
+		stores.values().forEach(Store::flushIfDirty);
+	}
+
+	private static class Store {
+		private final String name;
+		private final Flushable flushable;
+		private final AtomicLong changes = new AtomicLong();
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		private final AtomicLong flushCount = new AtomicLong();
+		private final AtomicLong failedFlushCount = new AtomicLong();
+		private final AtomicLong flushedChanges = new AtomicLong();
+		private final AtomicLong totalFlushNanos = new AtomicLong();
+		private final AtomicLong maxFlushNanos = new AtomicLong();
+		private final AtomicLong lastFlushNanos = new AtomicLong();
+
+		private Store(String name, Flushable flushable) {
+			this.name = name;
+			this.flushable = flushable;
+		}
+
+		private synchronized void flushIfDirty() {
+			long pending = changes.getAndSet(0);
+			if (pending == 0) {
+				return;
+			}
+			long start = System.nanoTime();
+			try {
+				flushable.flush();
+				long duration = System.nanoTime() - start;
+				flushCount.incrementAndGet();
+				flushedChanges.addAndGet(pending);
+				totalFlushNanos.addAndGet(duration);
+				lastFlushNanos.set(duration);
+				maxFlushNanos.accumulateAndGet(duration, Math::max);
+			} catch (IOException | RuntimeException e) {
+				// keep the store dirty, the next run tries again
+				changes.addAndGet(pending);
+				failedFlushCount.incrementAndGet();
+				LOG.error("Unable to save " + name, e);
+			}
+		}
+
+		private Map<String, Object> getStatistics() {
+			Map<String, Object> statistics = new LinkedHashMap<>();
+			long flushes = flushCount.get();
+			statistics.put("pendingChanges", changes.get());
+			statistics.put("flushes", flushes);
+			statistics.put("failedFlushes", failedFlushCount.get());
+			statistics.put("flushedChanges", flushedChanges.get());
+			statistics.put("lastFlushMillis", lastFlushNanos.get() / 1e6);
+			statistics.put("averageFlushMillis", flushes == 0 ? 0 : totalFlushNanos.get() / 1e6 / flushes);
+			statistics.put("maxFlushMillis", maxFlushNanos.get() / 1e6);
+			return statistics;
+		}
+	}
+}
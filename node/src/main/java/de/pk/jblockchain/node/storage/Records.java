@@ -0,0 +1,153 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Framing shared by all append-only files of the node. Every record consists
+ * of the payload length, a CRC32 checksum of the payload and the payload
+ * itself, whose first byte tells the record type.
+ */
+final class Records {
+
+	/**
+	 * Size of the record header: payload length and CRC32 checksum
+	 */
+	static final int HEADER_SIZE = 8;
+
+	/**
+	 * Callback for every valid record found by a scan
+	 */
+	interface RecordConsumer {
+		void accept(long position, byte[] payload) throws IOException;
+	}
+
+	private Records() {
+	}
+
+	/**
+	 * Build a complete record ready to be written
+	 *
+	 * @param type
+	 *            record type, stored as first payload byte
+	 * @param data
+	 *            record data
+	 * @return buffer positioned at the start of the record
+	 */
+	static ByteBuffer frame(byte type, byte[] data) {
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + 1 + data.length);
+		record.putInt(1 + data.length);
+		record.putInt(0);
+		record.put(type);
+		record.put(data);
+		record.putInt(4, checksum(record.array(), HEADER_SIZE, 1 + data.length));
+		record.flip();
+		return record;
+	}
+
+	/**
+	 * Read all records from position to the end of the channel and stop at
+	 * the first torn or corrupt one.
+	 *
+	 * @param in
+	 *            channel to read
+	 * @param position
+	 *            offset of the first record
+	 * @param consumer
+	 *            receives every valid record
+	 * @return offset behind the last valid record
+	 * @throws IOException
+	 */
+	static long scan(FileChannel in, long position, RecordConsumer consumer) throws IOException {
+		long size = in.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (position + HEADER_SIZE <= size) {
+			header.clear();
+			readFully(in, header, position);
+			int length = header.getInt(0);
+			if (length <= 0 || position + HEADER_SIZE + length > size) {
+				return position;
+			}
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			readFully(in, payload, position + HEADER_SIZE);
+			if (checksum(payload.array(), 0, length) != header.getInt(4)) {
+				return position;
+			}
+			consumer.accept(position, payload.array());
+			position += HEADER_SIZE + length;
+		}
+		return position;
+	}
+
+	/**
+	 * Read a single record
+	 *
+	 * @param in
+	 *            channel to read
+	 * @param position
+	 *            offset of the record
+	 * @param length
+	 *            payload length of the record
+	 * @return payload of the record
+	 * @throws IOException
+	 *             if the record is torn or its checksum does not match
+	 */
+	static byte[] read(FileChannel in, long position, int length) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + length);
+		readFully(in, record, position);
+		return payload(record.array(), 0, length, position);
+	}
+
+	/**
+	 * Get the payload of a single record from an array
+	 *
+	 * @param data
+	 *            array holding the record
+	 * @param index
+	 *            start of the record in the array
+	 * @param length
+	 *            payload length of the record
+	 * @param position
+	 *            offset of the record in its file, for error messages
+	 * @return payload of the record
+	 * @throws IOException
+	 *             if the record is torn or its checksum does not match
+	 */
+	static byte[] payload(byte[] data, int index, int length, long position) throws IOException {
+		if (index < 0 || index + HEADER_SIZE + length > data.length) {
+			throw new IOException("Torn record at offset " + position);
+		}
+		ByteBuffer record = ByteBuffer.wrap(data);
+		if (record.getInt(index) != length || checksum(data, index + HEADER_SIZE, length) != record.getInt(index + 4)) {
+			throw new IOException("Corrupt record at offset " + position);
+		}
+		byte[] payload = new byte[length];
+		System.arraycopy(data, index + HEADER_SIZE, payload, 0, length);
+		return payload;
+	}
+
+	/**
+	 * Write the whole buffer at the current position of the channel
+	 */
+	static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (in.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+	}
+
+	private static int checksum(byte[] data, int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(data, offset, length);
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,86 @@
+package de.pk.jblockchain.node.storage;
+
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@Configuration
+public class StorageConfiguration {
+
+	@Value("${storage.path}")
+	private String storePath;
+
+	@Value("${storage.blocks.segmentSize}")
+	private long blockSegmentSize;
+
+	@Value("${storage.transactions.groupCommitSize}")
+	private int transactionGroupCommitSize;
+
+	@Value("${storage.transactions.compactionThreshold}")
+	private long transactionCompactionThreshold;
+
+	@Value("${storage.format}")
+	private String storageFormat;
+
+	@Value("${storage.blocks.cacheBytes}")
+	private long blockCacheBytes;
+
+	@Value("${storage.blocks.cachePageSize}")
+	private int blockCachePageSize;
+
+	@Value("${storage.flush.interval}")
+	private long flushInterval;
+
+	@Value("${storage.flush.threshold}")
+	private int flushThreshold;
+
+	/**
+	 * ObjectMapper configured by Spring Boot, which already ignores unknown
+	 * properties. It is shared by all stores and the REST endpoints.
+	 */
+	@Autowired
+	private ObjectMapper mapper;
+
+	@Bean(destroyMethod = "close")
+	public BlockStore blockStore() {
+		return new BlockStore(Paths.get(System.getProperty("user.home") + this.storePath, "blocks"),
+				blockSegmentSize, mapper, isBinaryFormat());
+	}
+
+	@Bean(destroyMethod = "close")
+	public TransactionLog transactionLog() {
+		return new TransactionLog(Paths.get(System.getProperty("user.home") + this.storePath),
+				transactionGroupCommitSize, transactionCompactionThreshold, mapper, isBinaryFormat());
+	}
+
+	@Bean(destroyMethod = "close")
+	public AddressRegistry addressRegistry() {
+		return new AddressRegistry(Paths.get(System.getProperty("user.home") + this.storePath), 1024);
+	}
+
+	@Bean
+	public OffHeapBlockCache blockCache() {
+		return new OffHeapBlockCache(blockCacheBytes, blockCachePageSize);
+	}
+
+	@Bean
+	public CheckpointStore checkpointStore() {
+		return new CheckpointStore(Paths.get(System.getProperty("user.home") + this.storePath));
+	}
+
+	@Bean(destroyMethod = "close")
+	@DependsOn({ "blockStore", "transactionLog", "addressRegistry" })
+	public PersistenceScheduler persistenceScheduler() {
+		return new PersistenceScheduler(flushInterval, flushThreshold);
+	}
+
+	private boolean isBinaryFormat() {
+		return "binary".equals(storageFormat);
+	}
+}
@@ -0,0 +1,347 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.pk.jblockchain.common.codec.BinaryCodec;
+import de.pk.jblockchain.common.domain.Transaction;
+
+/**
+ * Write-ahead log of the transaction pool. Every add and remove is appended
+ * as a record to transaction.wal, a single writer thread forces all records
+ * queued in the meantime to disk with one fsync (group commit). Once the log
+ * grows beyond the compaction threshold, the pool is written to
+ * transaction.json.gz in the background and the log starts over.
+ */
+public class TransactionLog implements Closeable {
+
+	private final static Logger LOG = LoggerFactory.getLogger(TransactionLog.class);
+
+	static final byte TYPE_ADD = 1;
+	static final byte TYPE_REMOVE = 2;
+	static final byte TYPE_ADD_BINARY = 3;
+
+	/**
+	 * Markers queued instead of a record to switch to a new log or to stop the
+	 * writer
+	 */
+	private static final byte[] ROTATE = new byte[0];
+	private static final byte[] SHUTDOWN = new byte[0];
+
+	private final Path logFile;
+	private final Path compactingLogFile;
+	private final Path snapshotFile;
+	private final int groupCommitSize;
+	private final long compactionThreshold;
+	private final ObjectMapper mapper;
+	private final boolean binaryFormat;
+
+	private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+	private final AtomicBoolean compacting = new AtomicBoolean(false);
+	private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "transaction-log-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private Thread writer;
+	private FileChannel channel;
+
+	public TransactionLog(Path directory, int groupCommitSize, long compactionThreshold, ObjectMapper mapper,
+			boolean binaryFormat) {
+		this.logFile = directory.resolve("transaction.wal");
+		this.compactingLogFile = directory.resolve("transaction.wal.compacting");
+		this.snapshotFile = directory.resolve("transaction.json.gz");
+		this.groupCommitSize = groupCommitSize;
+		this.compactionThreshold = compactionThreshold;
+		this.mapper = mapper;
+		this.binaryFormat = binaryFormat;
+	}
+
+	/**
+	 * Restore the pool from the last snapshot and replay the log on top of it.
+	 * A log left behind by an interrupted compaction is replayed first. The
+	 * order of snapshot and records is kept, so the pool has the same order
+	 * of arrival as before the restart.
+	 *
+	 * @return Transactions in the pool in order of arrival
+	 * @throws IOException
+	 */
+	public synchronized Set<Transaction> load() throws IOException {
+		Set<Transaction> transactions = new LinkedHashSet<>();
+		if (Files.exists(snapshotFile)) {
+			try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+				transactions.addAll(mapper.readValue(in, new TypeReference<List<Transaction>>() {
+				}));
+			}
+		}
+		if (Files.exists(compactingLogFile)) {
+			// compaction was interrupted, finish it before the log is used again
+			replay(compactingLogFile, transactions);
+			replay(logFile, transactions);
+			writeSnapshot(transactions);
+			Files.deleteIfExists(logFile);
+			Files.deleteIfExists(compactingLogFile);
+		} else {
+			replay(logFile, transactions);
+		}
+		LOG.info("Loaded " + transactions.size() + " transactions from " + snapshotFile.getParent());
+		return transactions;
+	}
+
+	/**
+	 * Continue the log without replaying it, for callers which restored the
+	 * pool from a checkpoint covering every record of snapshot and log
+	 *
+	 * @return false if an interrupted compaction has to be finished by load()
+	 */
+	public synchronized boolean resume() {
+		return !Files.exists(compactingLogFile);
+	}
+
+	/**
+	 * Queue a new Transaction for the log
+	 *
+	 * @param transaction
+	 *            Transaction added to the pool
+	 * @return completes as soon as the record is forced to disk
+	 */
+	public CompletableFuture<Void> add(Transaction transaction) {
+		try {
+			return enqueue(binaryFormat ? Records.frame(TYPE_ADD_BINARY, BinaryCodec.encode(transaction)).array()
+					: Records.frame(TYPE_ADD, mapper.writeValueAsBytes(transaction)).array());
+		} catch (IOException e) {
+			CompletableFuture<Void> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	/**
+	 * Queue the removal of a Transaction for the log
+	 *
+	 * @param transaction
+	 *            Transaction removed from the pool
+	 * @return completes as soon as the record is forced to disk
+	 */
+	public CompletableFuture<Void> remove(Transaction transaction) {
+		return enqueue(Records.frame(TYPE_REMOVE, transaction.getHash()).array());
+	}
+
+	/**
+	 * Is the log big enough to be compacted into a new snapshot?
+	 *
+	 * @return true if a compaction should be started
+	 * @throws IOException
+	 */
+	public boolean needsCompaction() throws IOException {
+		return !compacting.get() && Files.exists(logFile) && Files.size(logFile) > compactionThreshold;
+	}
+
+	/**
+	 * Write the given pool as new snapshot in the background. The caller must
+	 * make sure no other record is queued while the pool is copied, so the
+	 * snapshot covers exactly the records queued before this call.
+	 *
+	 * @param transactions
+	 *            copy of the current pool
+	 * @return completes as soon as the snapshot replaced the old one
+	 */
+	public CompletableFuture<Void> compact(Collection<Transaction> transactions) {
+		if (!compacting.compareAndSet(false, true)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return enqueue(ROTATE).thenRunAsync(() -> {
+			try {
+				writeSnapshot(transactions);
+				Files.deleteIfExists(compactingLogFile);
+				LOG.info("Compacted transaction log into snapshot of " + transactions.size() + " transactions");
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to write transaction snapshot", e);
+			}
+		}, compactor).whenComplete((result, e) -> compacting.set(false));
+	}
+
+	@Override
+	public void close() throws IOException {
+		Thread running;
+		synchronized (this) {
+			running = writer;
+			writer = null;
+		}
+		if (running != null) {
+			queue.add(new Entry(SHUTDOWN));
+			try {
+				running.join(TimeUnit.SECONDS.toMillis(10));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		compactor.shutdown();
+		synchronized (this) {
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+		}
+	}
+
+	private CompletableFuture<Void> enqueue(byte[] record) {
+		Entry entry = new Entry(record);
+		queue.add(entry);
+		startWriter();
+		return entry.written;
+	}
+
+	private synchronized void startWriter() {
+		if (writer == null) {
+			writer = new Thread(this::writeLoop, "transaction-log-writer");
+			writer.setDaemon(true);
+			writer.start();
+		}
+	}
+
+	/**
+	 * Take all queued records, write them in one go and force them to disk
+	 * with a single fsync before their callers get notified
+	 */
+	private void writeLoop() {
+		List<Entry> batch = new ArrayList<>(groupCommitSize);
+		boolean running = true;
+		while (running) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			queue.drainTo(batch, groupCommitSize - 1);
+			try {
+				running = commit(batch);
+				batch.forEach(entry -> entry.written.complete(null));
+			} catch (IOException e) {
+				LOG.error("Unable to write transaction log", e);
+				batch.forEach(entry -> entry.written.completeExceptionally(e));
+			}
+			batch.clear();
+		}
+	}
+
+	private synchronized boolean commit(List<Entry> batch) throws IOException {
+		boolean running = true;
+		for (Entry entry : batch) {
+			if (entry.record == ROTATE) {
+				rotate();
+			} else if (entry.record == SHUTDOWN) {
+				running = false;
+			} else {
+				Records.writeFully(openForAppend(), ByteBuffer.wrap(entry.record));
+			}
+		}
+		if (channel != null) {
+			channel.force(false);
+		}
+		return running;
+	}
+
+	private FileChannel openForAppend() throws IOException {
+		if (channel == null) {
+			Files.createDirectories(logFile.getParent());
+			channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			channel.position(channel.size());
+		}
+		return channel;
+	}
+
+	private void rotate() throws IOException {
+		if (channel != null) {
+			channel.force(true);
+			channel.close();
+			channel = null;
+		}
+		if (!Files.exists(logFile)) {
+			return;
+		}
+		if (Files.exists(compactingLogFile)) {
+			// last snapshot failed, keep the records it should have covered
+			try (FileChannel in = FileChannel.open(logFile, StandardOpenOption.READ);
+					FileChannel out = FileChannel.open(compactingLogFile, StandardOpenOption.WRITE,
+							StandardOpenOption.APPEND)) {
+				long position = 0;
+				while (position < in.size()) {
+					position += in.transferTo(position, in.size() - position, out);
+				}
+				out.force(true);
+			}
+			Files.delete(logFile);
+		} else {
+			Files.move(logFile, compactingLogFile, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	private void writeSnapshot(Collection<Transaction> transactions) throws IOException {
+		AtomicFiles.writeGzip(snapshotFile, out -> mapper.writeValue(out, transactions));
+	}
+
+	private void replay(Path file, Set<Transaction> transactions) throws IOException {
+		if (!Files.exists(file)) {
+			return;
+		}
+		try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long validEnd = Records.scan(in, 0, (position, payload) -> {
+				if (payload[0] == TYPE_ADD) {
+					transactions.add(mapper.readValue(payload, 1, payload.length - 1, Transaction.class));
+				} else if (payload[0] == TYPE_ADD_BINARY) {
+					transactions.add(BinaryCodec.decode(payload, 1, payload.length - 1, Transaction.class));
+				} else if (payload[0] == TYPE_REMOVE) {
+					Transaction removed = new Transaction();
+					removed.setHash(Arrays.copyOfRange(payload, 1, payload.length));
+					transactions.remove(removed);
+				}
+			});
+			if (validEnd < in.size()) {
+				LOG.warn("Corrupt transaction record in " + file + " at offset " + validEnd + ", truncating log");
+				in.truncate(validEnd);
+				in.force(true);
+			}
+		}
+	}
+
+	private static class Entry {
+		private final byte[] record;
+		private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+		private Entry(byte[] record) {
+			this.record = record;
+		}
+	}
+}
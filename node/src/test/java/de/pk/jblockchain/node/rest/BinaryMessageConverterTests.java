@@ -0,0 +1,57 @@
+package de.pk.jblockchain.node.rest;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.Node;
+import de.pk.jblockchain.common.domain.Transaction;
+
+public class BinaryMessageConverterTests {
+
+	private final BinaryMessageConverter converter = new BinaryMessageConverter();
+
+	@Test
+	public void supportedTypes() {
+		Type blocks = new ParameterizedTypeReference<List<Block>>() {
+		}.getType();
+		Type transactions = new ParameterizedTypeReference<Set<Transaction>>() {
+		}.getType();
+		Type nodes = new ParameterizedTypeReference<Set<Node>>() {
+		}.getType();
+
+		Assert.assertTrue(converter.canWrite(blocks, List.class, BinaryMessageConverter.MEDIA_TYPE));
+		Assert.assertTrue(converter.canWrite(transactions, Set.class, BinaryMessageConverter.MEDIA_TYPE));
+		Assert.assertTrue(converter.canRead(Block[].class, null, BinaryMessageConverter.MEDIA_TYPE));
+		Assert.assertFalse(converter.canWrite(nodes, Set.class, BinaryMessageConverter.MEDIA_TYPE));
+		Assert.assertFalse(converter.canWrite(blocks, List.class, MediaType.APPLICATION_JSON));
+	}
+
+	@Test
+	public void writeAndRead() throws Exception {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			transactions.add(new Transaction("Hello " + i, new byte[32], new byte[46]));
+		}
+		Type type = new ParameterizedTypeReference<List<Transaction>>() {
+		}.getType();
+
+		MockHttpOutputMessage output = new MockHttpOutputMessage();
+		converter.write(transactions, type, BinaryMessageConverter.MEDIA_TYPE, output);
+		Assert.assertEquals(BinaryMessageConverter.MEDIA_TYPE, output.getHeaders().getContentType());
+
+		Transaction[] read = (Transaction[]) converter.read(Transaction[].class, null,
+				new MockHttpInputMessage(output.getBodyAsBytes()));
+		Assert.assertEquals(transactions, Arrays.asList(read));
+	}
+}
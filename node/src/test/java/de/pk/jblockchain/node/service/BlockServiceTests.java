@@ -3,11 +3,15 @@ package de.pk.jblockchain.node.service;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 
+import java.io.File;
+import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.After;
@@ -19,12 +23,17 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
 
 import de.pk.jblockchain.common.SignatureUtils;
 import de.pk.jblockchain.common.domain.Address;
 import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockHeader;
+import de.pk.jblockchain.common.domain.Target;
 import de.pk.jblockchain.common.domain.Transaction;
+import de.pk.jblockchain.common.hash.HashEngine;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -46,6 +55,12 @@ public class BlockServiceTests {
 	@Value("${storage.path}")
 	private String storePath;
 
+	@Value("${blockchain.mining.maxTransactionsPerBlock}")
+	private int maxTransactionsPerBlock;
+
+	@Value("${blockchain.mining.blockInterval}")
+	private long blockInterval;
+
 	@Before
 	public void setUp() throws Exception {
 		AddressService addressServiceMock = mock(AddressService.class);
@@ -68,12 +83,17 @@ public class BlockServiceTests {
 	@After
 	public void tearDown() throws Exception {
 		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "transaction.json.gz"));
-		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "blockchain.json.gz"));
+		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "transaction.wal"));
+		FileSystemUtils.deleteRecursively(new File(System.getProperty("user.home") + this.storePath + "blocks"));
 		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "address.json.gz"));
+		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "address.log"));
+		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "address.idx"));
 		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "node.json.gz"));
+		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "checkpoint.bin"));
 	}
 
 	@Test
+	@DirtiesContext
 	public void addBlock_validHash() throws Exception {
 		long trials = 8908926L;
 		Block block = new Block(null, Collections.singletonList(generateStableTransaction()), trials);
@@ -96,6 +116,85 @@ public class BlockServiceTests {
 		Assert.assertFalse(success);
 	}
 
+	@Test
+	public void appendAsync_rejectedByCheapStage() throws Exception {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i <= maxTransactionsPerBlock; i++) {
+			transactions.add(new Transaction("Hello " + i, address.getHash(), fixedSignature));
+		}
+		Block block = new Block(null, transactions, 42);
+		CompletableFuture<BlockValidationResult> future = blockService.appendAsync(block);
+
+		// rejected on the calling thread, before any hash is computed
+		Assert.assertTrue(future.isDone());
+		BlockValidationResult result = future.get();
+		Assert.assertFalse(result.isValid());
+		Assert.assertEquals("size", result.getRejectedStage());
+		Assert.assertEquals(Arrays.asList("structure", "size"), new ArrayList<>(result.getStageNanos().keySet()));
+	}
+
+	@Test
+	@DirtiesContext
+	public void addBlock_compactTarget() throws Exception {
+		Block lastBlock = blockService.getLastBlock();
+		byte[] previousBlockHash = lastBlock != null ? lastBlock.getHash() : null;
+		List<Transaction> transactions = generateTransactions(1);
+		int bits = blockService.getNextBits();
+
+		// meets its own target, but an easier one than required
+		Block easy = mineBlock(previousBlockHash, transactions, HashEngine.VERSION_TARGET, Target.toBits(Target.MAX));
+		Assert.assertFalse(blockService.append(easy));
+
+		Block block = mineBlock(previousBlockHash, transactions, HashEngine.VERSION_TARGET, bits);
+		Assert.assertTrue(blockService.append(block));
+		Assert.assertEquals(bits, blockService.getHeader(blockService.getHeight() - 1).getBits());
+
+		// no way back to leading zero bytes
+		Block legacy = mineBlock(block.getHash(), generateTransactions(1), HashEngine.VERSION_SCRYPT, 0);
+		Assert.assertFalse(blockService.append(legacy));
+	}
+
+	/**
+	 * The hash power stays constant and finds Blocks at the initial target
+	 * half as often as expected: the target settles at twice the initial one
+	 * instead of being scaled once more by every new Block
+	 */
+	@Test
+	public void retargetSettlesAtConstantHashPower() {
+		int windowSize = blockService.getRetargetWindow() + 1;
+		BigInteger settled = Target.fromBits(blockService.getNextBits(Collections.emptyList())).shiftLeft(1);
+		List<BlockHeader> chain = new ArrayList<>();
+		long timestamp = 0;
+		for (int height = 0; height < 20 * windowSize; height++) {
+			int bits = blockService.getNextBits(chain.subList(Math.max(0, chain.size() - windowSize), chain.size()));
+			BigInteger target = Target.fromBits(bits);
+			// never far beyond the settled target on the way
+			Assert.assertTrue(target.compareTo(settled.multiply(BigInteger.valueOf(5)).shiftRight(2)) < 0);
+			timestamp += BigInteger.valueOf(blockInterval).multiply(settled).divide(target).longValue();
+			BlockHeader header = new BlockHeader();
+			header.setVersion(HashEngine.VERSION_TARGET);
+			header.setBits(bits);
+			header.setTimestamp(timestamp);
+			chain.add(header);
+		}
+		for (BlockHeader header : chain.subList(chain.size() - windowSize, chain.size())) {
+			BigInteger deviation = Target.fromBits(header.getBits()).subtract(settled).abs();
+			Assert.assertTrue(deviation.compareTo(settled.divide(BigInteger.valueOf(100))) < 0);
+		}
+	}
+
+	private Block mineBlock(byte[] previousBlockHash, List<Transaction> transactions, int version, int bits)
+			throws Exception {
+		byte[] target = HashEngine.forVersion(version).hasTarget() ? Target.toBytes(bits)
+				: Target.fromLeadingZeroBytes(1);
+		for (long nonce = 0;; nonce++) {
+			Block block = new Block(previousBlockHash, transactions, nonce, version, bits);
+			if (Target.meets(block.getHash(), target)) {
+				return block;
+			}
+		}
+	}
+
 	@Ignore
 	@Test
 	public void addBlock_generateBlock() throws Exception {
@@ -0,0 +1,91 @@
+package de.pk.jblockchain.node.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.Transaction;
+
+public class BlockValidationPipelineTests {
+
+	private ExecutorService executor;
+	private BlockValidationPipeline pipeline;
+	private List<String> calls;
+	private Block block;
+
+	@Before
+	public void setUp() throws Exception {
+		executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "expensive"));
+		pipeline = new BlockValidationPipeline(executor);
+		calls = Collections.synchronizedList(new ArrayList<>());
+		block = new Block(null, Collections.singletonList(new Transaction("Hello", new byte[32], new byte[46])), 42);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void stopAtFirstRejection() throws Exception {
+		addStage("cheap", false, null);
+		addStage("size", false, "too large");
+		addStage("expensive", true, null);
+
+		BlockValidationResult result = pipeline.validate(block, new BlockValidationContext(null, 0, true));
+		Assert.assertFalse(result.isValid());
+		Assert.assertEquals("size", result.getRejectedStage());
+		Assert.assertEquals("too large", result.getReason());
+		Assert.assertEquals(Arrays.asList("cheap on main", "size on main"), calls);
+		Assert.assertEquals(Arrays.asList("cheap", "size"), new ArrayList<>(result.getStageNanos().keySet()));
+
+		@SuppressWarnings("unchecked")
+		Map<String, Object> size = (Map<String, Object>) pipeline.getStatistics().get("size");
+		Assert.assertEquals(1L, size.get("rejected"));
+		Assert.assertEquals(0L, size.get("passed"));
+	}
+
+	@Test
+	public void expensiveStagesOffCallingThread() throws Exception {
+		addStage("cheap", false, null);
+		addStage("expensive", true, null);
+		addStage("link", false, null);
+
+		BlockValidationResult result = pipeline.validateAsync(block, new BlockValidationContext(null, 0, true)).get();
+		Assert.assertTrue(result.isValid());
+		// all stages from the first expensive one on leave the calling thread
+		Assert.assertEquals(Arrays.asList("cheap on main", "expensive on expensive", "link on expensive"), calls);
+		Assert.assertEquals(3, result.getStageNanos().size());
+	}
+
+	@Test
+	public void cheapRejectionCompletesOnCallingThread() throws Exception {
+		addStage("structure", false, "missing hash");
+		addStage("expensive", true, null);
+
+		Assert.assertTrue(pipeline.validateAsync(block, new BlockValidationContext(null, 0, true)).isDone());
+		Assert.assertEquals(Collections.singletonList("structure on main"), calls);
+	}
+
+	/**
+	 * Add a stage recording its call and thread
+	 */
+	private void addStage(String name, boolean expensive, String reason) {
+		pipeline.addStage(name, expensive, (block, context) -> {
+			calls.add(name + " on " + Thread.currentThread().getName());
+			return reason;
+		});
+	}
+}
@@ -0,0 +1,165 @@
+package de.pk.jblockchain.node.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.pk.jblockchain.common.SignatureUtils;
+import de.pk.jblockchain.common.codec.BinaryCodec;
+import de.pk.jblockchain.common.domain.Address;
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockHeader;
+import de.pk.jblockchain.common.domain.Target;
+import de.pk.jblockchain.common.domain.Transaction;
+import de.pk.jblockchain.common.hash.HashEngine;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class ChainValidatorTests {
+
+	@Autowired
+	private BlockService blockService;
+	@Autowired
+	private AddressService addressService;
+
+	private Address address;
+	private byte[] privateKey;
+
+	/**
+	 * Valid chain shared by all tests, mining it takes a while
+	 */
+	private static List<Block> validChain;
+
+	@Before
+	public void setUp() throws Exception {
+		privateKey = IOUtils
+				.toByteArray(Thread.currentThread().getContextClassLoader().getResourceAsStream("key.priv"));
+		byte[] publicKey = IOUtils
+				.toByteArray(Thread.currentThread().getContextClassLoader().getResourceAsStream("key.pub"));
+		address = new Address(publicKey);
+		addressService.add(address);
+		if (validChain == null) {
+			validChain = generateChain(new ArrayList<>(), 8, -1);
+		}
+	}
+
+	@Test
+	public void validChain() throws Exception {
+		List<Block> chain = validChain;
+		try (ChainValidator validator = new ChainValidator(blockService, pipeline(), 4, 3)) {
+			Assert.assertEquals(8, validate(validator, chain));
+			Assert.assertEquals(8L, validator.getStatistics().get("validatedBlocks"));
+			Assert.assertEquals(-1L, validator.getStatistics().get("invalidHeight"));
+
+			// continue behind a valid part of the chain
+			List<BlockHeader> window = new ArrayList<>();
+			for (Block block : chain.subList(0, 4)) {
+				window.add(new BlockHeader(block));
+			}
+			Assert.assertEquals(8, validator.validate(window,
+					(fromHeight, toHeight) -> chain.subList((int) fromHeight, (int) toHeight), 4, 8));
+		}
+	}
+
+	@Test
+	public void stopAtInvalidSignature() throws Exception {
+		List<Block> chain = generateChain(new ArrayList<>(validChain.subList(0, 5)), 8, 6);
+		try (ChainValidator validator = new ChainValidator(blockService, pipeline(), 4, 3)) {
+			Assert.assertEquals(6, validate(validator, chain));
+			Assert.assertEquals(6L, validator.getStatistics().get("invalidHeight"));
+		}
+	}
+
+	@Test
+	public void stopAtBrokenLink() throws Exception {
+		List<Block> chain = new ArrayList<>(validChain);
+		chain.add(3, chain.get(4));
+		try (ChainValidator validator = new ChainValidator(blockService, pipeline(), 2, 4)) {
+			Assert.assertEquals(3, validate(validator, chain));
+		}
+	}
+
+	@Test
+	public void stopAtInvalidProofOfWork() throws Exception {
+		List<Block> chain = new ArrayList<>(validChain);
+		Block block = BinaryCodec.decode(BinaryCodec.encode(chain.get(2)), Block.class);
+		block.setTries(block.getTries() + 1);
+		chain.set(2, block);
+		try (ChainValidator validator = new ChainValidator(blockService, pipeline(), 2, 4)) {
+			Assert.assertEquals(2, validate(validator, chain));
+		}
+	}
+
+	/**
+	 * Blocks per second validated with a growing number of threads. Mining
+	 * the chain takes a while, run manually.
+	 */
+	@Ignore
+	@Test
+	public void compareThreadCount() throws Exception {
+		List<Block> chain = generateChain(new ArrayList<>(), 500, -1);
+		for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+			try (ChainValidator validator = new ChainValidator(blockService, pipeline(), threads, 100)) {
+				for (int warmup = 0; warmup < 2; warmup++) {
+					long start = System.nanoTime();
+					Assert.assertEquals(chain.size(), validate(validator, chain));
+					long millis = (System.nanoTime() - start) / 1000000;
+					System.out.println(threads + " threads: " + chain.size() * 1000 / Math.max(millis, 1)
+							+ " blocks/s");
+				}
+			}
+		}
+	}
+
+	private BlockValidationPipeline pipeline() {
+		return (BlockValidationPipeline) ReflectionTestUtils.getField(blockService, "validationPipeline");
+	}
+
+	private long validate(ChainValidator validator, List<Block> chain) throws Exception {
+		return validator.validate(new ArrayList<>(), (fromHeight, toHeight) -> chain.subList((int) fromHeight,
+				(int) toHeight), 0, chain.size());
+	}
+
+	/**
+	 * Mine Blocks with three signed Transactions each
+	 *
+	 * @param chain
+	 *            Blocks to extend
+	 * @param length
+	 *            length of the extended chain
+	 * @param invalidHeight
+	 *            height of a Block with a forged signature or -1
+	 */
+	private List<Block> generateChain(List<Block> chain, int length, int invalidHeight) throws Exception {
+		byte[] previousBlockHash = chain.isEmpty() ? null : chain.get(chain.size() - 1).getHash();
+		byte[] target = Target.fromLeadingZeroBytes(1);
+		for (int height = chain.size(); height < length; height++) {
+			List<Transaction> transactions = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				String text = "Hello " + height + " " + i;
+				byte[] signature = SignatureUtils.sign((height == invalidHeight ? "forged" : text).getBytes(),
+						privateKey);
+				transactions.add(new Transaction(text, address.getHash(), signature));
+			}
+			for (long nonce = 0;; nonce++) {
+				Block block = new Block(previousBlockHash, transactions, nonce, HashEngine.VERSION_SCRYPT, 0);
+				if (Target.meets(block.getHash(), target)) {
+					chain.add(block);
+					previousBlockHash = block.getHash();
+					break;
+				}
+			}
+		}
+		return chain;
+	}
+}
@@ -3,21 +3,34 @@ package de.pk.jblockchain.node.service;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.KeyPair;
+import java.util.Collections;
 
+import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
 
 import de.pk.jblockchain.common.SignatureUtils;
 import de.pk.jblockchain.common.domain.Address;
+import de.pk.jblockchain.common.domain.Block;
 import de.pk.jblockchain.common.domain.Transaction;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@DirtiesContext
 public class MiningServiceTests {
 
 	@Autowired
@@ -30,6 +43,15 @@ public class MiningServiceTests {
 	private Address address;
 	private KeyPair keyPair;
 
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Value("${blockchain.mining.difficulty}")
+	private int miningDifficulty;
+
+	@Value("${storage.path}")
+	private String storePath;
+
 	@Before
 	public void setUp() throws Exception {
 		AddressService addressServiceMock = mock(AddressService.class);
@@ -46,6 +68,18 @@ public class MiningServiceTests {
 		addressService.add(address);
 	}
 
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "transaction.json.gz"));
+		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "transaction.wal"));
+		FileSystemUtils.deleteRecursively(new File(System.getProperty("user.home") + this.storePath + "blocks"));
+		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "address.json.gz"));
+		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "address.log"));
+		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "address.idx"));
+		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "node.json.gz"));
+		Files.deleteIfExists(Paths.get(System.getProperty("user.home") + this.storePath + "checkpoint.bin"));
+	}
+
 	@Test
 	public void startStopMiner() throws Exception {
 		final int initalTransactions = 100;
@@ -60,6 +94,47 @@ public class MiningServiceTests {
 		miningService.stopMiner();
 	}
 
+	@Test
+	public void wakeOnTransaction() throws Exception {
+		miningService.startMiner();
+		try {
+			// the idle miner starts as soon as a Transaction arrives
+			Thread.sleep(500);
+			addTransactions(1);
+			long start = System.currentTimeMillis();
+			while (!transactionService.getTransactionPool().isEmpty()) {
+				Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+				Thread.sleep(50);
+			}
+		} finally {
+			miningService.stopMiner();
+		}
+	}
+
+	@Test
+	public void abortStaleTemplate() throws Exception {
+		addTransactions(3);
+		// unreachable difficulty, the search only ends by an abort
+		ReflectionTestUtils.setField(miningService, "miningDifficulty", 33);
+		try {
+			miningService.startMiner();
+			long aborted = getStaleTemplates();
+			Block tip = new Block(new byte[32], Collections.emptyList(), 0);
+			tip.setHash(new byte[] { 1 });
+			while (getStaleTemplates() == aborted) {
+				eventPublisher.publishEvent(new ChainTipEvent(this, tip));
+				Thread.sleep(100);
+			}
+		} finally {
+			miningService.stopMiner();
+			ReflectionTestUtils.setField(miningService, "miningDifficulty", miningDifficulty);
+		}
+	}
+
+	private long getStaleTemplates() {
+		return (Long) miningService.getStatistics().get("staleTemplates");
+	}
+
 	private void addTransactions(int count) throws Exception {
 		for (int i = 0; i < count; i++) {
 			String text = "Demo Transaction " + i;
@@ -0,0 +1,106 @@
+package de.pk.jblockchain.node.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockTemplate;
+import de.pk.jblockchain.common.domain.Target;
+import de.pk.jblockchain.common.domain.Transaction;
+import de.pk.jblockchain.common.hash.HashEngine;
+
+public class ParallelMinerTests {
+
+	@Test
+	public void mineWithSeveralWorkers() throws Exception {
+		ParallelMiner miner = new ParallelMiner(3);
+		try {
+			List<Transaction> transactions = generateTransactions(2);
+			Block block = miner.mine(new BlockTemplate(null, transactions), Target.fromLeadingZeroBytes(1),
+					() -> true);
+
+			Assert.assertNotNull(block);
+			Assert.assertTrue(block.getLeadingZerosCount() >= 1);
+			Assert.assertArrayEquals(block.calculateHash(), block.getHash());
+			Assert.assertArrayEquals(block.calculateMerkleRoot(), block.getMerkleRoot());
+			Assert.assertEquals(transactions, block.getTransactions());
+
+			Map<String, Object> statistics = miner.getStatistics();
+			Assert.assertEquals(1L, statistics.get("blocksFound"));
+			Assert.assertEquals(3, ((List<?>) statistics.get("perWorker")).size());
+			Assert.assertTrue((Long) statistics.get("totalHashes") > 0);
+		} finally {
+			miner.close();
+		}
+	}
+
+	@Test
+	public void mineWithCompactTarget() throws Exception {
+		ParallelMiner miner = new ParallelMiner(2);
+		try {
+			// one hash in 16 meets the target
+			int bits = Target.toBits(Target.MAX.shiftRight(4));
+			List<Transaction> transactions = generateTransactions(2);
+			BlockTemplate template = new BlockTemplate(HashEngine.VERSION_TARGET, null, transactions,
+					new Block(null, transactions, 0, HashEngine.VERSION_TARGET).getMerkleRoot(), 42, bits);
+			Block block = miner.mine(template, Target.toBytes(bits), () -> true);
+
+			Assert.assertNotNull(block);
+			Assert.assertEquals(bits, block.getBits());
+			Assert.assertTrue(Target.meets(block.getHash(), Target.toBytes(bits)));
+			Assert.assertArrayEquals(block.calculateHash(), block.getHash());
+			Assert.assertArrayEquals(block.calculateMerkleRoot(), block.getMerkleRoot());
+		} finally {
+			miner.close();
+		}
+	}
+
+	@Test
+	public void abortSearch() throws Exception {
+		ParallelMiner miner = new ParallelMiner(2);
+		try {
+			// no hash has that many leading zeros
+			Assert.assertNull(miner.mine(new BlockTemplate(null, generateTransactions(1)),
+					Target.fromLeadingZeroBytes(33), () -> false));
+		} finally {
+			miner.close();
+		}
+	}
+
+	/**
+	 * Measures the aggregate hashrate with a growing number of workers, it
+	 * should grow roughly linear up to the number of cores. Run manually.
+	 */
+	@Ignore
+	@Test
+	public void hashrateScaling() throws Exception {
+		List<Transaction> transactions = generateTransactions(4);
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int workers : Arrays.asList(1, 2, 4, 8, 16, 32)) {
+			if (workers > cores) {
+				break;
+			}
+			ParallelMiner miner = new ParallelMiner(workers);
+			long end = System.currentTimeMillis() + 5000;
+			// an unreachable difficulty, the search ends after 5 seconds
+			miner.mine(new BlockTemplate(null, transactions), Target.fromLeadingZeroBytes(33),
+					() -> System.currentTimeMillis() < end);
+			System.out.println(workers + " workers: " + miner.getStatistics().get("hashrate") + " hashes/s");
+			miner.close();
+		}
+	}
+
+	private List<Transaction> generateTransactions(int count) {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			transactions.add(new Transaction("Hello " + i, new byte[32], new byte[46]));
+		}
+		return transactions;
+	}
+}
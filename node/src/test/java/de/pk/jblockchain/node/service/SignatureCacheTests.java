@@ -0,0 +1,63 @@
+package de.pk.jblockchain.node.service;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SignatureCacheTests {
+
+	@Test
+	public void hitsAndMisses() {
+		SignatureCache cache = new SignatureCache(16, 4);
+		byte[] transactionHash = hash(1);
+		byte[] senderHash = hash(2);
+		Assert.assertNull(cache.get(transactionHash, senderHash));
+
+		cache.put(transactionHash, senderHash, true);
+		cache.put(hash(3), senderHash, false);
+		Assert.assertTrue(cache.get(transactionHash, senderHash));
+		Assert.assertFalse(cache.get(hash(3), senderHash));
+		// same Transaction hash, other sender key
+		Assert.assertNull(cache.get(transactionHash, hash(4)));
+
+		Map<String, Object> statistics = cache.getStatistics();
+		Assert.assertEquals(2L, statistics.get("hits"));
+		Assert.assertEquals(2L, statistics.get("misses"));
+		Assert.assertEquals(0.5, (Double) statistics.get("hitRatio"), 0.0);
+		Assert.assertEquals(2, statistics.get("entries"));
+	}
+
+	@Test
+	public void leastRecentlyUsedDropped() {
+		// a single segment, so the order of use is global
+		SignatureCache cache = new SignatureCache(4, 1);
+		for (int i = 0; i < 4; i++) {
+			cache.put(hash(i), hash(100), true);
+		}
+		Assert.assertTrue(cache.get(hash(0), hash(100)));
+		cache.put(hash(4), hash(100), true);
+
+		Assert.assertEquals(4, cache.size());
+		Assert.assertNull(cache.get(hash(1), hash(100)));
+		Assert.assertTrue(cache.get(hash(0), hash(100)));
+		Assert.assertTrue(cache.get(hash(4), hash(100)));
+	}
+
+	@Test
+	public void boundedOverAllSegments() {
+		SignatureCache cache = new SignatureCache(64, 8);
+		for (int i = 0; i < 10000; i++) {
+			cache.put(hash(i), hash(-1), true);
+		}
+		Assert.assertTrue(cache.size() <= 64);
+	}
+
+	private static byte[] hash(int seed) {
+		byte[] hash = new byte[32];
+		for (int i = 0; i < hash.length; i++) {
+			hash[i] = (byte) (seed * 31 + i * seed + (seed >> 8));
+		}
+		return hash;
+	}
+}
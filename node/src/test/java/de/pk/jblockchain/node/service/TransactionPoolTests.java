@@ -0,0 +1,235 @@
+package de.pk.jblockchain.node.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import de.pk.jblockchain.common.domain.Transaction;
+
+public class TransactionPoolTests {
+
+	@Test
+	public void arrivalOrderAndMembership() {
+		List<Transaction> transactions = generateTransactions("order", 4);
+		TransactionPool pool = new TransactionPool(4);
+		for (Transaction transaction : transactions) {
+			Assert.assertTrue(pool.add(transaction));
+		}
+		Assert.assertFalse(pool.add(transactions.get(0)));
+		Assert.assertEquals(transactions, new ArrayList<>(pool));
+
+		Assert.assertTrue(pool.remove(transactions.get(1)));
+		Assert.assertFalse(pool.remove(transactions.get(1)));
+		Assert.assertFalse(pool.contains(transactions.get(1).getHash()));
+		Assert.assertTrue(pool.contains(transactions.get(2).getHash()));
+		Assert.assertTrue(pool.containsAll(Arrays.asList(transactions.get(0), transactions.get(3))));
+		Assert.assertEquals(Arrays.asList(transactions.get(0), transactions.get(2)), pool.getOldest(2));
+
+		// added again it is the newest one
+		pool.add(transactions.get(1));
+		Assert.assertEquals(Arrays.asList(transactions.get(0), transactions.get(2), transactions.get(3),
+				transactions.get(1)), new ArrayList<>(pool));
+		pool.clear();
+		Assert.assertTrue(pool.isEmpty());
+	}
+
+	/**
+	 * Writers add and remove Transactions while readers iterate: no
+	 * Transaction is lost or seen twice, and every reader sees the
+	 * Transactions of a writer in the order it added them
+	 */
+	@Test
+	public void concurrentWritersAndReaders() throws Exception {
+		int writers = 8;
+		int perWriter = 2000;
+		TransactionPool pool = new TransactionPool(16);
+		List<List<Transaction>> transactions = new ArrayList<>();
+		Map<Transaction, int[]> positions = new HashMap<>();
+		for (int writer = 0; writer < writers; writer++) {
+			transactions.add(generateTransactions("writer " + writer, perWriter));
+			for (int i = 0; i < perWriter; i++) {
+				positions.put(transactions.get(writer).get(i), new int[] { writer, i });
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		try {
+			List<Future<?>> writes = new ArrayList<>();
+			for (List<Transaction> own : transactions) {
+				writes.add(executor.submit((Callable<Void>) () -> {
+					start.await();
+					for (int i = 0; i < own.size(); i++) {
+						Assert.assertTrue(pool.add(own.get(i)));
+						if (i % 2 == 1) {
+							Assert.assertTrue(pool.remove(own.get(i - 1)));
+						}
+					}
+					return null;
+				}));
+			}
+			List<Future<Integer>> reads = new ArrayList<>();
+			for (int reader = 0; reader < 2; reader++) {
+				reads.add(executor.submit(() -> {
+					start.await();
+					int iterations = 0;
+					while (writing.get()) {
+						int[] last = new int[writers];
+						Arrays.fill(last, -1);
+						Set<Transaction> seen = new HashSet<>();
+						for (Transaction transaction : pool) {
+							Assert.assertTrue(seen.add(transaction));
+							int[] position = positions.get(transaction);
+							Assert.assertTrue(position[1] > last[position[0]]);
+							last[position[0]] = position[1];
+						}
+						iterations++;
+					}
+					return iterations;
+				}));
+			}
+			start.countDown();
+			for (Future<?> write : writes) {
+				write.get();
+			}
+			writing.set(false);
+			for (Future<Integer> read : reads) {
+				Assert.assertTrue(read.get() > 0);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// every odd Transaction is left
+		Assert.assertEquals(writers * perWriter / 2, pool.size());
+		Assert.assertEquals(pool.size(), new LinkedHashSet<>(pool).size());
+		for (List<Transaction> own : transactions) {
+			for (int i = 0; i < perWriter; i++) {
+				Assert.assertEquals(i % 2 == 1, pool.contains(own.get(i).getHash()));
+			}
+		}
+	}
+
+	/**
+	 * Threads add and remove the same Transactions: the callbacks, which
+	 * write the TransactionLog, see the changes of a Transaction in the order
+	 * they happened
+	 */
+	@Test
+	public void callbacksInOrderOfChanges() throws Exception {
+		List<Transaction> shared = generateTransactions("shared", 8);
+		TransactionPool pool = new TransactionPool(4);
+		Map<Transaction, Queue<Boolean>> changes = new HashMap<>();
+		for (Transaction transaction : shared) {
+			changes.put(transaction, new ConcurrentLinkedQueue<>());
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int thread = 0; thread < 4; thread++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 5000; i++) {
+						Transaction transaction = shared.get(i % shared.size());
+						pool.add(transaction, added -> changes.get(added).add(true));
+						pool.remove(transaction, removed -> changes.get(removed).add(false));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		for (Transaction transaction : shared) {
+			boolean pooled = false;
+			for (boolean added : changes.get(transaction)) {
+				Assert.assertNotEquals(pooled, added);
+				pooled = added;
+			}
+			Assert.assertEquals(pooled, pool.contains(transaction));
+		}
+	}
+
+	/**
+	 * Transactions added per second by a growing number of concurrent
+	 * submitters, to a synchronized LinkedHashSet as used before and to the
+	 * TransactionPool. Run manually.
+	 */
+	@Ignore
+	@Test
+	public void compareConcurrentSubmitters() throws Exception {
+		int perThread = 200000;
+		int maxThreads = Math.max(8, Runtime.getRuntime().availableProcessors());
+		List<List<Transaction>> transactions = new ArrayList<>();
+		for (int thread = 0; thread < maxThreads; thread++) {
+			transactions.add(generateTransactions("submitter " + thread, perThread));
+		}
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			for (int warmup = 0; warmup < 3; warmup++) {
+				Set<Transaction> locked = Collections.synchronizedSet(new LinkedHashSet<>());
+				long lockedRate = measure(threads, transactions, locked::add);
+				TransactionPool pool = new TransactionPool(64);
+				long poolRate = measure(threads, transactions, pool::add);
+				System.out.println(threads + " submitters: synchronized LinkedHashSet " + lockedRate
+						+ " adds/s, TransactionPool " + poolRate + " adds/s");
+			}
+		}
+	}
+
+	private long measure(int threads, List<List<Transaction>> transactions, Predicate<Transaction> add)
+			throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int thread = 0; thread < threads; thread++) {
+				List<Transaction> own = transactions.get(thread);
+				futures.add(executor.submit((Callable<Void>) () -> {
+					start.await();
+					for (Transaction transaction : own) {
+						add.test(transaction);
+					}
+					return null;
+				}));
+			}
+			long begin = System.nanoTime();
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			long nanos = System.nanoTime() - begin;
+			return threads * (long) transactions.get(0).size() * 1000000000L / nanos;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private List<Transaction> generateTransactions(String prefix, int count) {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			transactions.add(new Transaction(prefix + " " + i, new byte[32], new byte[46]));
+		}
+		return transactions;
+	}
+}
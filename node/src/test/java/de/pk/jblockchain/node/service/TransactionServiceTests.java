@@ -4,6 +4,7 @@ import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 
 import java.security.KeyPair;
+import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -77,4 +78,45 @@ public class TransactionServiceTests {
 		boolean success = transactionService.add(transaction);
 		Assert.assertFalse(success);
 	}
+
+	@Test
+	public void verify_signatureCached() throws Exception {
+		String text = "Cached Ipsum";
+		byte[] signature = SignatureUtils.sign(text.getBytes(), keyPair.getPrivate().getEncoded());
+		Transaction transaction = new Transaction(text, address.getHash(), signature);
+
+		long hits = signatureCacheHits();
+		Assert.assertTrue(transactionService.verify(transaction));
+		Assert.assertEquals(hits, signatureCacheHits());
+
+		// delivered again by another Node
+		Transaction copy = new Transaction(text, address.getHash(), signature);
+		copy.setTimestamp(transaction.getTimestamp());
+		copy.setHash(transaction.getHash());
+		Assert.assertTrue(transactionService.verify(copy));
+		Assert.assertEquals(hits + 1, signatureCacheHits());
+	}
+
+	@Test
+	public void verify_forgedSignatureWithCachedHash() throws Exception {
+		String text = "Forged Ipsum";
+		byte[] signature = SignatureUtils.sign(text.getBytes(), keyPair.getPrivate().getEncoded());
+		Transaction transaction = new Transaction(text, address.getHash(), signature);
+		Assert.assertTrue(transactionService.verify(transaction));
+
+		// claims the hash of the verified Transaction, but has another signature
+		byte[] forgedSignature = signature.clone();
+		forgedSignature[forgedSignature.length - 1] ^= 1;
+		Transaction forged = new Transaction(text, address.getHash(), forgedSignature);
+		forged.setTimestamp(transaction.getTimestamp());
+		forged.setHash(transaction.getHash());
+		long hits = signatureCacheHits();
+		Assert.assertFalse(transactionService.verify(forged));
+		Assert.assertEquals(hits, signatureCacheHits());
+	}
+
+	private long signatureCacheHits() {
+		Map<String, Object> statistics = transactionService.getSignatureCacheStatistics();
+		return (Long) statistics.get("hits");
+	}
 }
@@ -0,0 +1,82 @@
+package de.pk.jblockchain.node.storage;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.primitives.Ints;
+
+import de.pk.jblockchain.common.domain.Address;
+
+public class AddressRegistryTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void addAndGet() throws Exception {
+		AddressRegistry registry = createRegistry();
+		List<Address> addresses = generateAddresses(1000);
+		for (Address address : addresses) {
+			Assert.assertTrue(registry.add(address));
+		}
+		Assert.assertFalse(registry.add(addresses.get(3)));
+		registry.close();
+
+		registry = createRegistry();
+		Assert.assertEquals(1000, registry.load());
+		Assert.assertEquals(addresses.get(42), registry.get(addresses.get(42).getHash()));
+		Assert.assertArrayEquals(addresses.get(42).getPublicKey(),
+				registry.get(addresses.get(42).getHash()).getPublicKey());
+		Assert.assertTrue(registry.contains(addresses.get(999).getHash()));
+		Assert.assertNull(registry.get(new Address(Ints.toByteArray(4242)).getHash()));
+		Assert.assertEquals(addresses, registry.readAll());
+		registry.close();
+	}
+
+	@Test
+	public void recoverTornRecord() throws Exception {
+		AddressRegistry registry = createRegistry();
+		List<Address> addresses = generateAddresses(3);
+		for (Address address : addresses) {
+			registry.add(address);
+		}
+		registry.close();
+
+		// simulate a crash in the middle of the last append
+		Path log = folder.getRoot().toPath().resolve("address.log");
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+
+		registry = createRegistry();
+		Assert.assertEquals(addresses.subList(0, 2), registry.readAll());
+		Assert.assertTrue(registry.add(addresses.get(2)));
+		registry.close();
+
+		registry = createRegistry();
+		Assert.assertEquals(3, registry.load());
+		Assert.assertEquals(addresses, registry.readAll());
+		Assert.assertEquals(addresses.get(2), registry.get(addresses.get(2).getHash()));
+		registry.close();
+	}
+
+	private AddressRegistry createRegistry() {
+		return new AddressRegistry(folder.getRoot().toPath(), 16);
+	}
+
+	private List<Address> generateAddresses(int count) {
+		List<Address> addresses = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			addresses.add(new Address(Ints.toByteArray(i)));
+		}
+		return addresses;
+	}
+}
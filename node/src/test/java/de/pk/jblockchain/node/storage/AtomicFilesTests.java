@@ -0,0 +1,45 @@
+package de.pk.jblockchain.node.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AtomicFilesTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replaceFile() throws Exception {
+		Path target = folder.getRoot().toPath().resolve("node.json");
+		AtomicFiles.write(target, out -> out.write("first".getBytes(StandardCharsets.UTF_8)));
+		AtomicFiles.write(target, out -> out.write("second".getBytes(StandardCharsets.UTF_8)));
+
+		Assert.assertEquals("second", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+		Assert.assertFalse(Files.exists(folder.getRoot().toPath().resolve("node.json.tmp")));
+	}
+
+	@Test
+	public void recoverInterruptedWrite() throws Exception {
+		Path target = folder.getRoot().toPath().resolve("node.json");
+		AtomicFiles.write(target, out -> out.write("complete".getBytes(StandardCharsets.UTF_8)));
+		try {
+			AtomicFiles.write(target, out -> {
+				out.write("torn".getBytes(StandardCharsets.UTF_8));
+				throw new IllegalStateException("crash");
+			});
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		Assert.assertEquals(1, AtomicFiles.recover(folder.getRoot().toPath()));
+		Assert.assertEquals("complete", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+		Assert.assertEquals(0, AtomicFiles.recover(folder.getRoot().toPath()));
+	}
+}
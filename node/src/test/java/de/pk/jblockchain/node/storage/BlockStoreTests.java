@@ -0,0 +1,356 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.primitives.Longs;
+
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.BlockHeader;
+import de.pk.jblockchain.common.domain.Transaction;
+
+public class BlockStoreTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void appendAndLoad() throws Exception {
+		BlockStore store = createStore(1024 * 1024);
+		List<Block> blocks = generateBlocks(10);
+		for (Block block : blocks) {
+			store.append(block);
+		}
+		store.close();
+
+		Assert.assertEquals(blocks, createStore(1024 * 1024).load());
+	}
+
+	@Test
+	public void rollSegments() throws Exception {
+		BlockStore store = createStore(512);
+		List<Block> blocks = generateBlocks(20);
+		for (Block block : blocks) {
+			store.append(block);
+		}
+		store.close();
+
+		Assert.assertTrue(folder.getRoot().toPath().resolve("blocks").toFile().list().length > 1);
+		Assert.assertEquals(blocks, createStore(512).load());
+	}
+
+	@Test
+	public void truncateTornRecord() throws Exception {
+		BlockStore store = createStore(1024 * 1024);
+		List<Block> blocks = generateBlocks(3);
+		for (Block block : blocks) {
+			store.append(block);
+		}
+		store.close();
+
+		// simulate a crash in the middle of the last append
+		Path segment = folder.getRoot().toPath().resolve("blocks").resolve("segment-00000000.log");
+		long size = segment.toFile().length();
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.truncate(size - 5);
+		}
+
+		store = createStore(1024 * 1024);
+		Assert.assertEquals(blocks.subList(0, 2), store.load());
+
+		// appending continues behind the last valid record
+		store.append(blocks.get(2));
+		store.close();
+		Assert.assertEquals(blocks, createStore(1024 * 1024).load());
+	}
+
+	@Test
+	public void truncateCorruptRecord() throws Exception {
+		BlockStore store = createStore(512);
+		List<Block> blocks = generateBlocks(20);
+		for (Block block : blocks) {
+			store.append(block);
+		}
+		store.close();
+
+		// flip a byte in the payload of the first record of the second segment
+		Path segment = folder.getRoot().toPath().resolve("blocks").resolve("segment-00000001.log");
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer data = ByteBuffer.allocate(1);
+			channel.read(data, 12);
+			data.put(0, (byte) (data.get(0) ^ 0xff));
+			data.rewind();
+			channel.write(data, 12);
+		}
+
+		store = createStore(512);
+		List<Block> recovered = store.load();
+		Assert.assertTrue(recovered.size() > 0 && recovered.size() < 20);
+		Assert.assertEquals(blocks.subList(0, recovered.size()), recovered);
+		Assert.assertEquals(recovered.size(), store.size());
+		Assert.assertNull(store.read(recovered.size()));
+
+		// the chain continues behind the last valid Block
+		store.append(blocks.get(recovered.size()));
+		store.close();
+		Assert.assertEquals(blocks.subList(0, recovered.size() + 1), createStore(512).load());
+	}
+
+	@Test
+	public void readByHeightAndHash() throws Exception {
+		BlockStore store = createStore(512);
+		List<Block> blocks = generateBlocks(20);
+		for (Block block : blocks) {
+			store.append(block);
+		}
+		store.close();
+
+		store = createStore(512);
+		store.load();
+		Assert.assertEquals(20, store.size());
+		Assert.assertEquals(blocks.get(13), store.read(13));
+		Assert.assertEquals(blocks.get(7), store.readByHash(blocks.get(7).getHash()));
+		Assert.assertNull(store.read(20));
+		Assert.assertNull(store.readByHash(Longs.toByteArray(42)));
+	}
+
+	@Test
+	public void replayBehindCheckpoint() throws Exception {
+		BlockStore store = createStore(512);
+		List<Block> blocks = generateBlocks(20);
+		for (Block block : blocks) {
+			store.append(block);
+		}
+		store.close();
+
+		store = createStore(512);
+		Assert.assertEquals(20, store.load(12, blocks.get(11).getHash()));
+		Assert.assertEquals(blocks.get(19), store.read(19));
+		store.close();
+
+		// a checkpoint which does not match the log leads to a full replay
+		store = createStore(512);
+		Assert.assertEquals(20, store.load(12, blocks.get(3).getHash()));
+		Assert.assertEquals(blocks.subList(5, 20), store.read(5, 25));
+		store.close();
+	}
+
+	@Test
+	public void repairHashIndex() throws Exception {
+		BlockStore store = createStore(512);
+		List<Block> blocks = generateBlocks(20);
+		for (Block block : blocks) {
+			store.append(block);
+		}
+		store.close();
+
+		// height.idx was forced, but the entries of hash.idx were lost
+		Path hashIndex = folder.getRoot().toPath().resolve("blocks").resolve("hash.idx");
+		Files.delete(hashIndex);
+		store = createStore(512);
+		Assert.assertEquals(20, store.load(12, blocks.get(11).getHash()));
+		Assert.assertEquals(blocks.get(15), store.readByHash(blocks.get(15).getHash()));
+		store.close();
+
+		Files.delete(hashIndex);
+		store = createStore(512);
+		store.load();
+		for (Block block : blocks) {
+			Assert.assertEquals(block, store.readByHash(block.getHash()));
+		}
+		store.close();
+	}
+
+	@Test
+	public void findBlockOfTransaction() throws Exception {
+		BlockStore store = createStore(512);
+		List<Block> blocks = generateBlocks(10);
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < blocks.size(); i++) {
+			Transaction transaction = new Transaction("Hello " + i, new byte[32], new byte[46]);
+			blocks.get(i).getTransactions().add(transaction);
+			transactions.add(transaction);
+			store.append(blocks.get(i));
+		}
+		Assert.assertEquals(4, store.heightOfTransaction(transactions.get(4).getHash()));
+		store.close();
+
+		// stores of older versions get their transactions indexed while loading
+		Files.delete(folder.getRoot().toPath().resolve("blocks").resolve("transaction.idx"));
+		store = createStore(512);
+		store.load(0, null);
+		for (int i = 0; i < transactions.size(); i++) {
+			Assert.assertEquals(i, store.heightOfTransaction(transactions.get(i).getHash()));
+		}
+		Assert.assertEquals(-1, store.heightOfTransaction(new byte[32]));
+		store.close();
+	}
+
+	@Test
+	public void readMixedFormats() throws Exception {
+		BlockStore store = createStore(1024 * 1024, false);
+		List<Block> blocks = generateBlocks(6);
+		for (Block block : blocks.subList(0, 3)) {
+			store.append(block);
+		}
+		store.close();
+		store = createStore(1024 * 1024, true);
+		store.load();
+		for (Block block : blocks.subList(3, 6)) {
+			store.append(block);
+		}
+		store.close();
+
+		Assert.assertEquals(blocks, createStore(1024 * 1024, false).load());
+	}
+
+	@Test
+	public void archiveOldSegments() throws Exception {
+		BlockStore store = createStore(512);
+		List<Block> blocks = generateBlocks(40);
+		for (Block block : blocks.subList(0, 30)) {
+			store.append(block);
+		}
+		int archived = store.archive(20);
+		Assert.assertTrue(archived > 0);
+		Path directory = folder.getRoot().toPath().resolve("blocks");
+		Assert.assertTrue(directory.resolve("segment-00000000.archive").toFile().exists());
+		Assert.assertTrue(directory.resolve("segment-00000000.archive.idx").toFile().exists());
+		Assert.assertFalse(directory.resolve("segment-00000000.log").toFile().exists());
+		Assert.assertEquals(0, store.archive(20));
+
+		// archived Blocks are read transparently
+		Assert.assertEquals(blocks.subList(0, 30), store.read(0, 30));
+		Assert.assertEquals(blocks.get(2), store.readByHash(blocks.get(2).getHash()));
+		store.close();
+
+		store = createStore(512);
+		Assert.assertEquals(blocks.subList(0, 30), store.load());
+		for (Block block : blocks.subList(30, 40)) {
+			store.append(block);
+		}
+		store.close();
+
+		store = createStore(512);
+		Assert.assertEquals(40, store.load(25, blocks.get(24).getHash()));
+		Assert.assertEquals(blocks, store.read(0, 40));
+		store.close();
+	}
+
+	@Test
+	public void readHeaders() throws Exception {
+		BlockStore store = createStore(1024 * 1024, false);
+		List<Block> blocks = generateBlocks(4);
+		blocks.get(1).getTransactions().add(new Transaction("Hello", new byte[32], new byte[46]));
+		for (Block block : blocks.subList(0, 2)) {
+			store.append(block);
+		}
+		store.close();
+		store = createStore(1024 * 1024, true);
+		store.load();
+		for (Block block : blocks.subList(2, 4)) {
+			store.append(block);
+		}
+
+		List<BlockHeader> headers = store.readHeaders(0, 10);
+		Assert.assertEquals(4, headers.size());
+		for (int i = 0; i < blocks.size(); i++) {
+			Assert.assertEquals(new BlockHeader(blocks.get(i)), headers.get(i));
+			Assert.assertEquals(blocks.get(i).getTimestamp(), headers.get(i).getTimestamp());
+		}
+		Assert.assertEquals(1, headers.get(1).getTransactionCount());
+		Assert.assertArrayEquals(blocks.get(2).getPreviousBlockHash(), headers.get(2).getPreviousBlockHash());
+		Assert.assertNull(store.readHeader(4));
+		store.close();
+	}
+
+	/**
+	 * Compares the heap needed to keep a chain of 1M Transactions in memory
+	 * with the heap needed for the headers only, run manually
+	 */
+	@Ignore
+	@Test
+	public void heapUsageOfHeaders() throws Exception {
+		BlockStore store = createStore(64 * 1024 * 1024);
+		byte[] previousBlockHash = null;
+		for (int i = 0; i < 10000; i++) {
+			Block block = new Block();
+			List<Transaction> transactions = new ArrayList<>();
+			for (int j = 0; j < 100; j++) {
+				transactions.add(new Transaction("Registry event " + i + "/" + j, new byte[32], new byte[46]));
+			}
+			block.setPreviousBlockHash(previousBlockHash);
+			block.setTransactions(transactions);
+			block.setMerkleRoot(new byte[32]);
+			block.setTries(i);
+			block.setTimestamp(42);
+			block.setHash(Longs.toByteArray(i));
+			store.append(block);
+			previousBlockHash = block.getHash();
+		}
+
+		long baseline = usedHeap();
+		List<Block> blocks = store.read(0, store.size());
+		long blockHeap = usedHeap() - baseline;
+		Assert.assertEquals(10000, blocks.size());
+		blocks = null;
+
+		baseline = usedHeap();
+		List<BlockHeader> headers = store.readHeaders(0, store.size());
+		long headerHeap = usedHeap() - baseline;
+		Assert.assertEquals(10000, headers.size());
+		store.close();
+
+		System.out.println("Heap for 10000 blocks with 1M transactions: " + blockHeap / 1024 + " KiB, headers only: "
+				+ headerHeap / 1024 + " KiB");
+	}
+
+	private long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private BlockStore createStore(long segmentSize) {
+		return createStore(segmentSize, true);
+	}
+
+	private BlockStore createStore(long segmentSize, boolean binaryFormat) {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		return new BlockStore(new File(folder.getRoot(), "blocks").toPath(), segmentSize, mapper, binaryFormat);
+	}
+
+	private List<Block> generateBlocks(int count) {
+		List<Block> blocks = new ArrayList<>();
+		byte[] previousBlockHash = null;
+		for (int i = 0; i < count; i++) {
+			Block block = new Block();
+			block.setPreviousBlockHash(previousBlockHash);
+			block.setTransactions(new ArrayList<>());
+			block.setTries(i);
+			block.setTimestamp(42);
+			block.setHash(Longs.toByteArray(i));
+			blocks.add(block);
+			previousBlockHash = block.getHash();
+		}
+		return blocks;
+	}
+}
@@ -0,0 +1,64 @@
+package de.pk.jblockchain.node.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.primitives.Longs;
+
+import de.pk.jblockchain.common.domain.Address;
+import de.pk.jblockchain.common.domain.Transaction;
+
+public class CheckpointStoreTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writeAndRead() throws Exception {
+		CheckpointStore store = new CheckpointStore(folder.getRoot().toPath());
+		Assert.assertNull(store.read());
+
+		Address address = new Address(new byte[] { 1, 2, 3 });
+		Transaction transaction = new Transaction("Hällo", address.getHash(), new byte[] { 4, 5 });
+		store.write(new Checkpoint(42, Longs.toByteArray(41), Collections.singletonList(address),
+				Collections.singletonList(transaction), true));
+
+		Checkpoint checkpoint = store.read();
+		Assert.assertEquals(42, checkpoint.getHeight());
+		Assert.assertArrayEquals(Longs.toByteArray(41), checkpoint.getTipHash());
+		Assert.assertTrue(checkpoint.isClean());
+		Address readAddress = checkpoint.getAddresses().iterator().next();
+		Assert.assertEquals(address, readAddress);
+		Assert.assertArrayEquals(address.getPublicKey(), readAddress.getPublicKey());
+		Transaction readTransaction = checkpoint.getTransactions().iterator().next();
+		Assert.assertEquals(transaction, readTransaction);
+		Assert.assertEquals(transaction.getText(), readTransaction.getText());
+		Assert.assertArrayEquals(transaction.getHash(), readTransaction.calculateHash());
+
+		store.markUnclean();
+		Assert.assertFalse(store.read().isClean());
+	}
+
+	@Test(expected = IOException.class)
+	public void detectCorruption() throws Exception {
+		CheckpointStore store = new CheckpointStore(folder.getRoot().toPath());
+		store.write(new Checkpoint(0, null, Arrays.asList(new Address(new byte[] { 1 })), Collections.emptyList(),
+				false));
+
+		Path file = folder.getRoot().toPath().resolve("checkpoint.bin");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 7 }), 10);
+		}
+		store.read();
+	}
+}
@@ -0,0 +1,35 @@
+package de.pk.jblockchain.node.storage;
+
+import java.nio.file.Path;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.primitives.Ints;
+
+public class MappedHashIndexTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void putGetAndResize() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("test.idx");
+		MappedHashIndex index = new MappedHashIndex(path, 32, 16);
+		for (int i = 0; i < 10000; i++) {
+			Assert.assertEquals(-1, index.put(DigestUtils.sha256(Ints.toByteArray(i)), i));
+		}
+		Assert.assertEquals(42, index.put(DigestUtils.sha256(Ints.toByteArray(42)), 4242));
+		index.close();
+
+		index = new MappedHashIndex(path, 32, 16);
+		Assert.assertEquals(10000, index.size());
+		Assert.assertEquals(4242, index.get(DigestUtils.sha256(Ints.toByteArray(42))));
+		Assert.assertEquals(9999, index.get(DigestUtils.sha256(Ints.toByteArray(9999))));
+		Assert.assertEquals(-1, index.get(DigestUtils.sha256(Ints.toByteArray(10000))));
+		index.close();
+	}
+}
@@ -0,0 +1,157 @@
+package de.pk.jblockchain.node.storage;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongFunction;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.Longs;
+
+import de.pk.jblockchain.common.codec.BinaryCodec;
+import de.pk.jblockchain.common.domain.Block;
+import de.pk.jblockchain.common.domain.Transaction;
+
+public class OffHeapBlockCacheTests {
+
+	@Test
+	public void getByHeightAndHash() throws Exception {
+		OffHeapBlockCache cache = new OffHeapBlockCache(64 * 1024, 256);
+		byte[] data = generateData(1000, 7);
+		cache.put(7, Longs.toByteArray(7), data);
+
+		Assert.assertArrayEquals(data, cache.get(7));
+		Assert.assertEquals(7, cache.heightOf(Longs.toByteArray(7)));
+		Assert.assertNull(cache.get(8));
+		Assert.assertEquals(-1, cache.heightOf(Longs.toByteArray(8)));
+
+		Map<String, Object> statistics = cache.getStatistics();
+		Assert.assertEquals(1L, statistics.get("hits"));
+		Assert.assertEquals(1L, statistics.get("misses"));
+		Assert.assertEquals(1000L, statistics.get("usedBytes"));
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() throws Exception {
+		// 8 pages of 256 bytes, every entry takes 2 pages
+		OffHeapBlockCache cache = new OffHeapBlockCache(2048, 256);
+		for (int height = 0; height < 4; height++) {
+			cache.put(height, Longs.toByteArray(height), generateData(400, height));
+		}
+		Assert.assertNotNull(cache.get(0));
+		cache.put(4, Longs.toByteArray(4), generateData(400, 4));
+
+		Assert.assertArrayEquals(generateData(400, 0), cache.get(0));
+		Assert.assertNull(cache.get(1));
+		Assert.assertEquals(-1, cache.heightOf(Longs.toByteArray(1)));
+		Assert.assertArrayEquals(generateData(400, 4), cache.get(4));
+		Assert.assertEquals(1L, cache.getStatistics().get("evictions"));
+
+		// bigger than the whole budget
+		cache.put(5, Longs.toByteArray(5), generateData(4096, 5));
+		Assert.assertNull(cache.get(5));
+		Assert.assertArrayEquals(generateData(400, 2), cache.get(2));
+
+		cache.clear();
+		Assert.assertNull(cache.get(0));
+		Assert.assertEquals(0L, cache.getStatistics().get("usedBytes"));
+	}
+
+	/**
+	 * Compares throughput and garbage collection of the off-heap cache with
+	 * an on-heap cache of decoded Blocks under concurrent reads, run manually
+	 */
+	@Ignore
+	@Test
+	public void compareWithOnHeapCache() throws Exception {
+		int blocks = 4000;
+		List<Block> chain = new ArrayList<>();
+		for (int height = 0; height < blocks; height++) {
+			chain.add(generateBlock(height));
+		}
+		OffHeapBlockCache offHeap = new OffHeapBlockCache(512L * 1024 * 1024, 4096);
+		Cache<Long, Block> onHeap = CacheBuilder.newBuilder().maximumSize(2 * blocks).build();
+		for (Block block : chain) {
+			long height = block.getTries();
+			offHeap.put(height, block.getHash(), BinaryCodec.encode(block));
+			onHeap.put(height, block);
+		}
+
+		for (int round = 0; round < 2; round++) {
+			measure("off-heap", blocks, height -> {
+				try {
+					return BinaryCodec.decode(offHeap.get(height), Block.class);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			measure("on-heap", blocks, onHeap::getIfPresent);
+		}
+	}
+
+	private void measure(String name, int blocks, LongFunction<Block> reader) throws Exception {
+		int threads = 8;
+		int reads = 20000;
+		long gcBefore = gcMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long start = System.nanoTime();
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < reads; j++) {
+					Assert.assertNotNull(reader.apply(ThreadLocalRandom.current().nextInt(blocks)));
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		executor.shutdown();
+		System.out.println(name + ": " + (int) (threads * reads / seconds) + " reads/s, " + (gcMillis() - gcBefore)
+				+ " ms gc, heap used " + (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory())
+						/ 1024 / 1024
+				+ " MiB");
+	}
+
+	private long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += gc.getCollectionTime();
+		}
+		return millis;
+	}
+
+	private Block generateBlock(long height) {
+		Block block = new Block();
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			transactions.add(new Transaction("Registry event " + height + "/" + i, new byte[32], new byte[46]));
+		}
+		block.setTransactions(transactions);
+		block.setMerkleRoot(new byte[32]);
+		block.setTries(height);
+		block.setTimestamp(42);
+		block.setHash(Longs.toByteArray(height));
+		return block;
+	}
+
+	private byte[] generateData(int length, int seed) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i * 31 + seed);
+		}
+		return data;
+	}
+}
@@ -0,0 +1,40 @@
+package de.pk.jblockchain.node.storage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PersistenceSchedulerTests {
+
+	@Test
+	public void coalesceChanges() throws Exception {
+		AtomicInteger flushes = new AtomicInteger();
+		PersistenceScheduler scheduler = new PersistenceScheduler(60000, 1000);
+		scheduler.register("test", flushes::incrementAndGet);
+		for (int i = 0; i < 10; i++) {
+			scheduler.markDirty("test");
+		}
+		Assert.assertEquals(0, flushes.get());
+
+		scheduler.close();
+		Assert.assertEquals(1, flushes.get());
+		Assert.assertEquals(10L, scheduler.getStatistics().get("test").get("flushedChanges"));
+	}
+
+	@Test
+	public void flushOnThreshold() throws Exception {
+		AtomicInteger flushes = new AtomicInteger();
+		PersistenceScheduler scheduler = new PersistenceScheduler(60000, 5);
+		scheduler.register("test", flushes::incrementAndGet);
+		for (int i = 0; i < 5; i++) {
+			scheduler.markDirty("test");
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (flushes.get() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(1, flushes.get());
+		scheduler.close();
+	}
+}
@@ -0,0 +1,110 @@
+package de.pk.jblockchain.node.storage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.pk.jblockchain.common.domain.Transaction;
+
+public class TransactionLogTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replayAddAndRemove() throws Exception {
+		List<Transaction> transactions = generateTransactions(10);
+		TransactionLog log = createLog(1024 * 1024);
+		CompletableFuture<Void> written = null;
+		for (Transaction transaction : transactions) {
+			written = log.add(transaction);
+		}
+		written = log.remove(transactions.get(3));
+		written.get();
+		log.close();
+
+		transactions.remove(3);
+		Assert.assertEquals(new HashSet<>(transactions), createLog(1024 * 1024).load());
+	}
+
+	@Test
+	public void compactIntoSnapshot() throws Exception {
+		List<Transaction> transactions = generateTransactions(50);
+		TransactionLog log = createLog(256);
+		for (Transaction transaction : transactions) {
+			log.add(transaction).get();
+		}
+		Assert.assertTrue(log.needsCompaction());
+		log.compact(new HashSet<>(transactions.subList(0, 40))).get();
+		log.add(transactions.get(40)).get();
+		log.close();
+
+		Assert.assertTrue(folder.getRoot().toPath().resolve("transaction.json.gz").toFile().exists());
+		Assert.assertEquals(new HashSet<>(transactions.subList(0, 41)), createLog(256).load());
+	}
+
+	@Test
+	public void loadInOrderOfArrival() throws Exception {
+		List<Transaction> transactions = generateTransactions(30);
+		TransactionLog log = createLog(256);
+		for (Transaction transaction : transactions.subList(0, 20)) {
+			log.add(transaction).get();
+		}
+		log.compact(new LinkedHashSet<>(transactions.subList(0, 20))).get();
+		for (Transaction transaction : transactions.subList(20, 30)) {
+			log.add(transaction).get();
+		}
+		log.remove(transactions.get(5)).get();
+		// added again it arrived last
+		log.add(transactions.get(5)).get();
+		log.close();
+
+		List<Transaction> expected = new ArrayList<>(transactions);
+		expected.add(expected.remove(5));
+		Assert.assertEquals(expected, new ArrayList<>(createLog(256).load()));
+	}
+
+	@Test
+	public void replayMixedFormats() throws Exception {
+		List<Transaction> transactions = generateTransactions(4);
+		TransactionLog log = createLog(1024 * 1024, false);
+		log.add(transactions.get(0)).get();
+		log.add(transactions.get(1)).get();
+		log.close();
+		log = createLog(1024 * 1024, true);
+		log.load();
+		log.add(transactions.get(2)).get();
+		log.add(transactions.get(3)).get();
+		log.close();
+
+		Assert.assertEquals(new HashSet<>(transactions), createLog(1024 * 1024).load());
+	}
+
+	private TransactionLog createLog(long compactionThreshold) {
+		return createLog(compactionThreshold, true);
+	}
+
+	private TransactionLog createLog(long compactionThreshold, boolean binaryFormat) {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		return new TransactionLog(folder.getRoot().toPath(), 16, compactionThreshold, mapper, binaryFormat);
+	}
+
+	private List<Transaction> generateTransactions(int count) {
+		List<Transaction> transactions = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			transactions.add(new Transaction("Hello " + i, new byte[32], new byte[46]));
+		}
+		return transactions;
+	}
+}